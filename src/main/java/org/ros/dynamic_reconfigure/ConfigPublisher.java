@@ -0,0 +1,189 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure;
+
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * Reactive Streams publisher of configurations, with conflation :
+ * a subscriber without demand does not queue values, it receives the
+ * latest one when it requests again.
+ * A new subscriber receives the latest value first (like a latched topic).
+ *
+ * Values are emitted on the thread offering them, or requesting them.
+ *
+ * @param <T> type of value.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ConfigPublisher<T> implements Publisher<T> {
+
+    private final CopyOnWriteArrayList<ConflatingSubscription> subscriptions =
+            new CopyOnWriteArrayList<ConflatingSubscription>();
+    /**
+     * Lock of the latest value and of the pending values : a new subscriber
+     * gets the latest value, or a newer one, never an older one.
+     */
+    private final Object lock = new Object();
+    private T latest;
+    private boolean completed;
+
+    @Override
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new NullPointerException("Subscriber is null !");
+        }
+
+        ConflatingSubscription subscription = new ConflatingSubscription(subscriber);
+        synchronized (this.lock) {
+            subscription.pending.set(this.latest);
+            subscription.done = this.completed;
+            this.subscriptions.add(subscription);
+        }
+
+        // Nothing is emitted before onSubscribe has returned (rule 1.9).
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * Publish a value to all subscribers.
+     * @param value new value.
+     */
+    public void offer(T value) {
+        synchronized (this.lock) {
+            this.latest = value;
+            for (ConflatingSubscription subscription : this.subscriptions) {
+                subscription.pending.set(value);
+            }
+        }
+        for (ConflatingSubscription subscription : this.subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    /** Complete all subscribers, after their pending value. */
+    public void complete() {
+        synchronized (this.lock) {
+            this.completed = true;
+            for (ConflatingSubscription subscription : this.subscriptions) {
+                subscription.done = true;
+            }
+        }
+        for (ConflatingSubscription subscription : this.subscriptions) {
+            subscription.drain();
+        }
+    }
+
+    /**
+     * Number of current subscribers.
+     * @return count.
+     */
+    public int getSubscriberCount() {
+        return this.subscriptions.size();
+    }
+
+    /** Subscription keeping only the latest undelivered value. */
+    private final class ConflatingSubscription implements Subscription {
+
+        private final Subscriber<? super T> subscriber;
+        private final AtomicReference<T> pending = new AtomicReference<T>();
+        private final AtomicLong requested = new AtomicLong();
+        /** Serialize emissions : count of drain requests. */
+        private final AtomicInteger wip = new AtomicInteger();
+        /** onSubscribe has returned. */
+        private volatile boolean started;
+        private volatile boolean done;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        ConflatingSubscription(Subscriber<? super T> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            this.started = true;
+            this.drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                this.error = new IllegalArgumentException("Request must be positive (rule 3.9) : " + n);
+                this.done = true;
+            } else {
+                long current;
+                long next;
+                do {
+                    current = this.requested.get();
+                    next = current + n < 0 ? Long.MAX_VALUE : current + n;
+                } while (!this.requested.compareAndSet(current, next));
+            }
+            this.drain();
+        }
+
+        @Override
+        public void cancel() {
+            this.cancelled = true;
+            ConfigPublisher.this.subscriptions.remove(this);
+        }
+
+        private void drain() {
+            if (!this.started || this.wip.getAndIncrement() != 0) {
+                return;
+            }
+
+            int missed = 1;
+            do {
+                while (!this.cancelled && this.error == null && this.requested.get() > 0) {
+                    T value = this.pending.getAndSet(null);
+                    if (value == null) {
+                        break;
+                    }
+                    if (this.requested.get() != Long.MAX_VALUE) {
+                        this.requested.decrementAndGet();
+                    }
+
+                    try {
+                        this.subscriber.onNext(value);
+                    } catch (RuntimeException e) {
+                        // Subscriber must not throw (rule 2.13) : consider it cancelled.
+                        this.cancel();
+                    }
+                }
+
+                if (!this.cancelled && this.done && (this.error != null || this.pending.get() == null)) {
+                    this.cancel();
+                    if (this.error != null) {
+                        this.subscriber.onError(this.error);
+                    } else {
+                        this.subscriber.onComplete();
+                    }
+                }
+
+                missed = this.wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,382 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.Group;
+import dynamic_reconfigure.GroupState;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.ParamDescription;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Index of a config description by parameter name, and by group path
+ * (eg. "Default/arm/gripper") for lookup of a group with its subgroups.
+ * Used to validate and clamp a config before sending it.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ConfigSchema {
+
+    /** Separator of group names in a group path. */
+    public static final char GROUP_SEPARATOR = '/';
+
+    private final Map<String, Param> params;
+    /** Path of each group, by id. */
+    private final Map<Integer, String> groupPaths = new HashMap<Integer, String>();
+    /** Path of each group, by name. */
+    private final Map<String, String> groupPathsByName = new HashMap<String, String>();
+    /** Parameters of each group (without subgroups), sorted by path. */
+    private final NavigableMap<String, List<Param>> groupParams = new TreeMap<String, List<Param>>();
+
+    public ConfigSchema(ConfigDescription description) {
+        Config min = description.getMin();
+        Config max = description.getMax();
+        Map<String, Double> intMin = ConfigSchema.intBounds(min);
+        Map<String, Double> intMax = ConfigSchema.intBounds(max);
+        Map<String, Double> doubleMin = ConfigSchema.doubleBounds(min);
+        Map<String, Double> doubleMax = ConfigSchema.doubleBounds(max);
+
+        this.params = new LinkedHashMap<String, Param>();
+
+        Map<Integer, Group> groups = new HashMap<Integer, Group>();
+        for (Group group : description.getGroups()) {
+            groups.put(group.getId(), group);
+        }
+
+        for (Group group : description.getGroups()) {
+            String path = ConfigSchema.path(group, groups);
+            List<Param> members = new ArrayList<Param>(group.getParameters().size());
+            this.groupPaths.put(group.getId(), path);
+            this.groupPathsByName.put(group.getName(), path);
+            this.groupParams.put(path, members);
+
+            for (ParamDescription param : group.getParameters()) {
+                Double minValue = ConfigSchema.bound(param, intMin, doubleMin);
+                Double maxValue = ConfigSchema.bound(param, intMax, doubleMax);
+
+                Param indexed = new Param(
+                        param.getName(),
+                        param.getType(),
+                        param.getLevel(),
+                        group.getId(),
+                        minValue != null ? minValue : Double.NEGATIVE_INFINITY,
+                        maxValue != null ? maxValue : Double.POSITIVE_INFINITY);
+                this.params.put(param.getName(), indexed);
+                members.add(indexed);
+            }
+        }
+    }
+
+    /**
+     * Path of a group : names from the root group, separated by {@link #GROUP_SEPARATOR}.
+     * The root group is its own parent (or has an unknown parent).
+     */
+    private static String path(Group group, Map<Integer, Group> groups) {
+        StringBuilder result = new StringBuilder(group.getName());
+        Group current = group;
+
+        // Bounded by the number of groups, against a cycle in the description.
+        for (int depth = 0; depth < groups.size(); depth++) {
+            Group parent = groups.get(current.getParent());
+            if (parent == null || parent == current) {
+                break;
+            }
+            result.insert(0, GROUP_SEPARATOR).insert(0, parent.getName());
+            current = parent;
+        }
+
+        return result.toString();
+    }
+
+    /**
+     * Bound of a parameter : bound of its type wins, else bound of the other type
+     * (bounds of double parameters can be sent as int).
+     * @param param description of the parameter.
+     * @param ints int bounds by name.
+     * @param doubles double bounds by name.
+     * @return the bound, null if none.
+     */
+    private static Double bound(ParamDescription param, Map<String, Double> ints, Map<String, Double> doubles) {
+        Map<String, Double> typed = Utils.TYPE_DBL.equals(param.getType()) ? doubles : ints;
+        Map<String, Double> other = typed == doubles ? ints : doubles;
+
+        Double result = typed.get(param.getName());
+        if (result == null) {
+            result = other.get(param.getName());
+        }
+
+        return result;
+    }
+
+    /**
+     * Int bounds by name.
+     * @param config min or max config of description.
+     * @return bounds.
+     */
+    private static Map<String, Double> intBounds(Config config) {
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (IntParameter param : config.getInts()) {
+            result.put(param.getName(), (double) param.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Double bounds by name.
+     * @param config min or max config of description.
+     * @return bounds.
+     */
+    private static Map<String, Double> doubleBounds(Config config) {
+        Map<String, Double> result = new HashMap<String, Double>();
+
+        for (DoubleParameter param : config.getDoubles()) {
+            result.put(param.getName(), param.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Description of a parameter.
+     * @param name of the parameter.
+     * @return the description, null if unknown.
+     */
+    public Param get(String name) {
+        return this.params.get(name);
+    }
+
+    public boolean contains(String name) {
+        return this.params.containsKey(name);
+    }
+
+    public Collection<Param> getParams() {
+        return Collections.unmodifiableCollection(this.params.values());
+    }
+
+    /**
+     * Path of a group (eg. "Default/arm/gripper").
+     * @param group name or path of the group.
+     * @return the path, null if unknown.
+     */
+    public String getGroupPath(String group) {
+        String result = this.groupPathsByName.get(group);
+
+        if (result == null && this.groupParams.containsKey(group)) {
+            result = group;
+        }
+
+        return result;
+    }
+
+    /**
+     * Parameters of a group and all its subgroups, by prefix of the group path.
+     * @param group name or path of the group.
+     * @return parameters, in description order of the groups.
+     * @throws DynamicReconfigureParameterException if the group is unknown.
+     */
+    public List<Param> getGroupParams(String group) {
+        String path = this.getGroupPath(group);
+
+        if (path == null) {
+            throw new DynamicReconfigureParameterException("Group " + group + " not found !");
+        }
+
+        List<Param> result = new ArrayList<Param>(this.groupParams.get(path));
+        String prefix = path + GROUP_SEPARATOR;
+        for (List<Param> members : this.groupParams.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values()) {
+            result.addAll(members);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if a group is a given group or one of its subgroups.
+     * @param groupId id of the group (eg. of a parameter).
+     * @param group name or path of the given group.
+     * @return true if in the group, false if not or unknown.
+     */
+    public boolean isInGroup(int groupId, String group) {
+        String path = this.groupPaths.get(groupId);
+        String parent = this.getGroupPath(group);
+
+        return path != null && parent != null
+                && (path.equals(parent) || path.startsWith(parent + GROUP_SEPARATOR));
+    }
+
+    /**
+     * Validate a config against this schema, and clamp numeric values to their bounds.
+     * Reserved parameters (eg. revision) are not checked.
+     * @param config to validate (updated in place : pass a copy, see {@link Utils#copyConfig}).
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type.
+     */
+    public void validate(Config config) {
+        this.validate(config, Collections.<GroupState>emptyList());
+    }
+
+    /**
+     * Validate a config against this schema, and clamp numeric values to their bounds.
+     * Reserved parameters and parameters of disabled groups (or their subgroups) are not checked.
+     * @param config to validate (updated in place : pass a copy, see {@link Utils#copyConfig}).
+     * @param states group states (eg. of the current config of the server, then of the request).
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type.
+     */
+    public void validate(Config config, List<GroupState> states) {
+        Set<Integer> disabled = this.disabledGroups(states);
+
+        for (BoolParameter param : config.getBools()) {
+            if (!Utils.isReserved(param.getName()) && !this.isSkipped(param.getName(), disabled)) {
+                this.check(param.getName(), Utils.TYPE_BOOL);
+            }
+        }
+        for (StrParameter param : config.getStrs()) {
+            if (!Utils.isReserved(param.getName()) && !this.isSkipped(param.getName(), disabled)) {
+                this.check(param.getName(), Utils.TYPE_STR);
+            }
+        }
+        for (IntParameter param : config.getInts()) {
+            if (!Utils.isReserved(param.getName()) && !this.isSkipped(param.getName(), disabled)) {
+                Param desc = this.check(param.getName(), Utils.TYPE_INT);
+                param.setValue((int) desc.clamp(param.getValue()));
+            }
+        }
+        for (DoubleParameter param : config.getDoubles()) {
+            if (!Utils.isReserved(param.getName()) && !this.isSkipped(param.getName(), disabled)) {
+                Param desc = this.check(param.getName(), Utils.TYPE_DBL);
+                param.setValue(desc.clamp(param.getValue()));
+            }
+        }
+    }
+
+    /** Ids of disabled groups and their subgroups (a later state of a group wins). */
+    private Set<Integer> disabledGroups(List<GroupState> states) {
+        Set<Integer> result = new HashSet<Integer>();
+        Map<String, Boolean> enabled = new HashMap<String, Boolean>();
+
+        for (GroupState state : states) {
+            enabled.put(state.getName(), state.getState());
+        }
+
+        for (Map.Entry<String, Boolean> state : enabled.entrySet()) {
+            if (!state.getValue() && this.groupPathsByName.containsKey(state.getKey())) {
+                for (Integer id : this.groupPaths.keySet()) {
+                    if (this.isInGroup(id, state.getKey())) {
+                        result.add(id);
+                    }
+                }
+            }
+        }
+
+        return result;
+    }
+
+    private boolean isSkipped(String name, Set<Integer> disabled) {
+        Param param = this.params.get(name);
+        return !disabled.isEmpty() && param != null && disabled.contains(param.getGroupId());
+    }
+
+    private Param check(String name, String type) {
+        Param result = this.params.get(name);
+
+        if (result == null) {
+            throw new DynamicReconfigureParameterException("Parameter " + name + " not found !");
+        }
+        if (!result.getType().equals(type)) {
+            throw new DynamicReconfigureParameterException(String.format(
+                    "Parameter %s has type %s, not %s !", name, result.getType(), type));
+        }
+
+        return result;
+    }
+
+    /** Indexed description of one parameter. */
+    public static class Param {
+
+        private final String name;
+        private final String type;
+        private final int level;
+        private final int groupId;
+        private final double min;
+        private final double max;
+
+        public Param(String name, String type, int level, int groupId, double min, double max) {
+            this.name = name;
+            this.type = type;
+            this.level = level;
+            this.groupId = groupId;
+            this.min = min;
+            this.max = max;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public int getLevel() {
+            return this.level;
+        }
+
+        public int getGroupId() {
+            return this.groupId;
+        }
+
+        public double getMin() {
+            return this.min;
+        }
+
+        public double getMax() {
+            return this.max;
+        }
+
+        /**
+         * Clamp a value to the bounds (only if min is lower than max).
+         * @param value to clamp.
+         * @return value in bounds.
+         */
+        public double clamp(double value) {
+            double result = value;
+
+            if (this.min < this.max) {
+                result = Math.max(this.min, Math.min(this.max, value));
+            }
+
+            return result;
+        }
+    }
+}
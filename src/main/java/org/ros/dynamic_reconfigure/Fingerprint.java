@@ -0,0 +1,117 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * 64-bit fingerprint of config values.
+ *
+ * The fingerprint of a config is the XOR of the hash of each (name, value),
+ * so it can be updated in O(1) on each change :
+ * fingerprint ^= of(name, oldValue) ^ of(name, newValue).
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class Fingerprint {
+
+    private static final long SEED_INT     = 0x9E3779B97F4A7C15L;
+    private static final long SEED_DBL     = 0xC2B2AE3D27D4EB4FL;
+    private static final long SEED_BOOL    = 0x165667B19E3779F9L;
+    private static final long SEED_STR     = 0x27D4EB2F165667C5L;
+
+    private Fingerprint() {
+    }
+
+    public static long of(String name, int value) {
+        return Fingerprint.mix(Fingerprint.hash(name) ^ SEED_INT ^ Fingerprint.mix(value));
+    }
+
+    public static long of(String name, double value) {
+        return Fingerprint.mix(Fingerprint.hash(name) ^ SEED_DBL
+                ^ Fingerprint.mix(Double.doubleToLongBits(value)));
+    }
+
+    public static long of(String name, boolean value) {
+        return Fingerprint.mix(Fingerprint.hash(name) ^ SEED_BOOL ^ (value ? 1L : 2L));
+    }
+
+    public static long of(String name, String value) {
+        return Fingerprint.mix(Fingerprint.hash(name) ^ SEED_STR ^ Fingerprint.mix(Fingerprint.hash(value)));
+    }
+
+    /**
+     * Full fingerprint of a config (reserved parameters are ignored).
+     * @param config to hash.
+     * @return fingerprint.
+     */
+    public static long of(Config config) {
+        long result = 0;
+
+        for (BoolParameter param : config.getBools()) {
+            if (!Utils.isReserved(param.getName())) {
+                result ^= Fingerprint.of(param.getName(), param.getValue());
+            }
+        }
+        for (IntParameter param : config.getInts()) {
+            if (!Utils.isReserved(param.getName())) {
+                result ^= Fingerprint.of(param.getName(), param.getValue());
+            }
+        }
+        for (StrParameter param : config.getStrs()) {
+            if (!Utils.isReserved(param.getName())) {
+                result ^= Fingerprint.of(param.getName(), param.getValue());
+            }
+        }
+        for (DoubleParameter param : config.getDoubles()) {
+            if (!Utils.isReserved(param.getName())) {
+                result ^= Fingerprint.of(param.getName(), param.getValue());
+            }
+        }
+
+        return result;
+    }
+
+    /** 64-bit FNV-1a of a string. */
+    private static long hash(String value) {
+        long result = 0xCBF29CE484222325L;
+
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                result ^= value.charAt(i);
+                result *= 0x100000001B3L;
+            }
+        }
+
+        return result;
+    }
+
+    /** Finalizer of murmur3 (64-bit avalanche). */
+    private static long mix(long value) {
+        long result = value;
+        result ^= result >>> 33;
+        result *= 0xFF51AFD7ED558CCDL;
+        result ^= result >>> 33;
+        result *= 0xC4CEB9FE1A85EC53L;
+        result ^= result >>> 33;
+        return result;
+    }
+}
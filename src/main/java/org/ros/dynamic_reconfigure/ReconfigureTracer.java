@@ -0,0 +1,139 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Export of reconfigure propagation spans to a local file, one JSON object by line :
+ *   {"trace":"5f0c...","span":"server.callback","node":"/robot/controller",
+ *    "start":1413712345123456,"end":1413712345123789,"revision":12}
+ * Times are wall clock microseconds, so files of several nodes (on synchronized hosts)
+ * can be merged and sorted by trace.
+ *
+ * The trace id is carried by the reserved {@link Utils#TRACE} str parameter,
+ * from the request of the Client to the configuration published by the Server
+ * on parameter_revisions (parameter_updates carries no reserved parameter).
+ * Spans are :
+ * <ul>
+ * <li>client.call : service call, from request to reply (calling Client).</li>
+ * <li>server.build : service handler (Server).</li>
+ * <li>server.merge, server.callback, server.persist, server.publish : steps of the reconfigure (Server).</li>
+ * <li>client.update : receipt of the configuration on parameter_revisions (each subscribing Client, end only).</li>
+ * </ul>
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ReconfigureTracer implements Closeable {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final Writer writer;
+    /** Wall clock at creation, in microseconds. */
+    private final long baseMicros;
+    /** Monotonic clock at creation, in nanoseconds. */
+    private final long baseNanos;
+
+    /**
+     * Open (or append to) a span file.
+     * @param path of the file.
+     * @throws IOException
+     */
+    public ReconfigureTracer(Path path) throws IOException {
+        this.writer = Files.newBufferedWriter(path, UTF8,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        this.baseMicros = System.currentTimeMillis() * 1000;
+        this.baseNanos = System.nanoTime();
+    }
+
+    /**
+     * New random trace id.
+     * @return 16 hexadecimal digits.
+     */
+    public String newTrace() {
+        return String.format("%016x", ThreadLocalRandom.current().nextLong());
+    }
+
+    /**
+     * Current wall clock time, with the resolution of the monotonic clock.
+     * @return time in microseconds.
+     */
+    public long now() {
+        return this.baseMicros + (System.nanoTime() - this.baseNanos) / 1000;
+    }
+
+    /**
+     * Record a span (write errors are ignored, tracing must not fail a reconfigure).
+     * @param trace Trace id.
+     * @param span Name of the span (eg. "server.callback").
+     * @param node Name of the node.
+     * @param start Start time, see {@link #now()}.
+     * @param end End time, see {@link #now()}.
+     * @param revision Revision of the configuration, -1 if unknown.
+     */
+    public void span(String trace, String span, String node, long start, long end, int revision) {
+        StringBuilder line = new StringBuilder(160);
+        line.append("{\"trace\":");
+        ReconfigureTracer.quote(trace, line);
+        line.append(",\"span\":");
+        ReconfigureTracer.quote(span, line);
+        line.append(",\"node\":");
+        ReconfigureTracer.quote(node, line);
+        line.append(",\"start\":").append(start)
+            .append(",\"end\":").append(end)
+            .append(",\"revision\":").append(revision)
+            .append("}\n");
+
+        try {
+            synchronized (this.writer) {
+                this.writer.write(line.toString());
+                this.writer.flush();
+            }
+        } catch (IOException e) {
+            // Dropped span.
+        }
+    }
+
+    private static void quote(String value, StringBuilder result) {
+        result.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                result.append('\\').append(c);
+            } else if (c < 0x20) {
+                result.append(String.format("\\u%04x", (int) c));
+            } else {
+                result.append(c);
+            }
+        }
+        result.append('"');
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this.writer) {
+            this.writer.close();
+        }
+    }
+}
@@ -0,0 +1,195 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collect field definitions, to build description and config in one pass
+ * with {@link Utils#addFields(SchemaBuilder)}.
+ *
+ * <pre>
+ * this.addFields(new SchemaBuilder(3)
+ *         .add("kp", Utils.TYPE_DBL, 0, "Gain", 1.0d, 0, 10)
+ *         .add("rate", Utils.TYPE_INT, 1, "Rate", 10, 1, 100)
+ *         .add("frame", Utils.TYPE_STR, 2, "Frame", "map", 0, 0));
+ * </pre>
+ *
+ * Fields are added to the {@link Utils#GROUP_DEFAULT} group, until {@link #group(String)}
+ * selects another one (declared before with {@link Utils#addGroup}).
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class SchemaBuilder {
+
+    private final List<Field> fields;
+    private int bools;
+    private int ints;
+    private int strs;
+    private int doubles;
+    private String group = Utils.GROUP_DEFAULT;
+
+    public SchemaBuilder() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize : expected number of fields.
+     */
+    public SchemaBuilder(int expectedSize) {
+        this.fields = new ArrayList<Field>(expectedSize);
+    }
+
+    /**
+     * Select the group of the next fields.
+     * @param name : name of the group.
+     * @return this builder.
+     */
+    public SchemaBuilder group(String name) {
+        this.group = name;
+        return this;
+    }
+
+    /**
+     * Add field definition (in the current group), see {@link Utils#addField}.
+     * @param name : name of the parameter
+     * @param type : type of the parameter
+     * @param level : level of the parameter
+     * @param description : Textual description of the parameter
+     * @param defaultValue : Default value of the parameter
+     * @param minValue : Minimum value of the parameter
+     * @param maxValue : Maximum value of the parameter
+     * @return this builder.
+     */
+    public SchemaBuilder add(
+            String name,
+            String type,
+            int level,
+            String description,
+            Object defaultValue,
+            int minValue,
+            int maxValue) {
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            this.bools++;
+        } else if (Utils.TYPE_INT.equals(type)) {
+            this.ints++;
+        } else if (Utils.TYPE_STR.equals(type)) {
+            this.strs++;
+        } else if (Utils.TYPE_DBL.equals(type)) {
+            this.doubles++;
+        } else {
+            throw new DynamicReconfigureParameterException(String.format(
+                    "parameter %s has unknown type: %s.", name, type));
+        }
+
+        this.fields.add(new Field(name, type, level, description, defaultValue, minValue, maxValue, this.group));
+        return this;
+    }
+
+    public List<Field> getFields() {
+        return this.fields;
+    }
+
+    public int size() {
+        return this.fields.size();
+    }
+
+    /**
+     * Number of fields of a type.
+     * @param type : type of the parameter.
+     * @return count.
+     */
+    public int count(String type) {
+        int result = 0;
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            result = this.bools;
+        } else if (Utils.TYPE_INT.equals(type)) {
+            result = this.ints;
+        } else if (Utils.TYPE_STR.equals(type)) {
+            result = this.strs;
+        } else if (Utils.TYPE_DBL.equals(type)) {
+            result = this.doubles;
+        }
+
+        return result;
+    }
+
+    /** Definition of one field. */
+    public static class Field {
+
+        private final String name;
+        private final String type;
+        private final int level;
+        private final String description;
+        private final Object defaultValue;
+        private final int minValue;
+        private final int maxValue;
+        private final String group;
+
+        public Field(String name, String type, int level, String description,
+                Object defaultValue, int minValue, int maxValue) {
+            this(name, type, level, description, defaultValue, minValue, maxValue, Utils.GROUP_DEFAULT);
+        }
+
+        public Field(String name, String type, int level, String description,
+                Object defaultValue, int minValue, int maxValue, String group) {
+            this.name = name;
+            this.type = type;
+            this.level = level;
+            this.description = description;
+            this.defaultValue = defaultValue;
+            this.minValue = minValue;
+            this.maxValue = maxValue;
+            this.group = group;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public int getLevel() {
+            return this.level;
+        }
+
+        public String getDescription() {
+            return this.description;
+        }
+
+        public Object getDefaultValue() {
+            return this.defaultValue;
+        }
+
+        public int getMinValue() {
+            return this.minValue;
+        }
+
+        public int getMaxValue() {
+            return this.maxValue;
+        }
+
+        public String getGroup() {
+            return this.group;
+        }
+    }
+}
@@ -16,6 +16,13 @@
 
 package org.ros.dynamic_reconfigure;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.ros.message.MessageFactory;
 import org.ros.node.ConnectedNode;
 
@@ -24,7 +31,6 @@ import dynamic_reconfigure.Config;
 import dynamic_reconfigure.ConfigDescription;
 import dynamic_reconfigure.DoubleParameter;
 import dynamic_reconfigure.Group;
-import dynamic_reconfigure.GroupState;
 import dynamic_reconfigure.IntParameter;
 import dynamic_reconfigure.ParamDescription;
 import dynamic_reconfigure.StrParameter;
@@ -43,28 +49,45 @@ public class Utils {
     public static final String TYPE_STR        = "str";
     public static final String TYPE_DBL        = "double";
 
+    /** Prefix of reserved parameters (not part of the description). */
+    public static final String RESERVED_PREFIX = "__";
+    /**
+     * Reserved int parameter : revision of the config, set by the server
+     * (in replies and on parameter_revisions, not on parameter_updates).
+     */
+    public static final String REVISION        = "__revision__";
+    /** Reserved int parameter : revision the request is based on (compare-and-set). */
+    public static final String BASE_REVISION   = "__base_revision__";
+    /** Reserved bool parameter : request rejected as based on a stale revision. */
+    public static final String CONFLICT        = "__conflict__";
+    /** Reserved str parameter : name of a preset to load, see Server#loadPreset. */
+    public static final String PRESET          = "__preset__";
+    /** Reserved str parameter : trace id of the request, see ReconfigureTracer. */
+    public static final String TRACE           = "__trace__";
+    /** Reserved str parameter : name the calling node reports about itself (advisory), see AdmissionControl. */
+    public static final String CALLER          = "__caller__";
+    /** Reserved bool parameter : request rejected by admission control. */
+    public static final String REJECTED        = "__rejected__";
+
     private MessageFactory factory;
     private ConfigDescription descConfig;
     private Config updateConfig;
-    private final Group defaultGroup;
-    private final GroupState activeGroupState;
+    private final Map<String, Group> groups = new HashMap<String, Group>();
+    private final Map<String, ParamDescription> params = new HashMap<String, ParamDescription>();
 
     public Utils(ConnectedNode node, Config currentUpdateConfig) {
         this.updateConfig = currentUpdateConfig;
         this.factory = node.getTopicMessageFactory();
         this.descConfig = this.factory.newFromType(ConfigDescription._TYPE);
 
-        // Group
-        this.defaultGroup = this.factory.newFromType(Group._TYPE);
-        this.defaultGroup.setId(0);
-        this.defaultGroup.setName(GROUP_DEFAULT);
-        this.descConfig.getGroups().add(this.defaultGroup);
-
-        // GroupState
-        this.activeGroupState = this.factory.newFromType(GroupState._TYPE);
-        this.activeGroupState.setId(0);
-        this.activeGroupState.setName(GROUP_DEFAULT);
-        this.activeGroupState.setState(true);
+        // Root group (its own parent, as in dynamic_reconfigure python)
+        Group root = this.factory.newFromType(Group._TYPE);
+        root.setId(0);
+        root.setParent(0);
+        root.setName(GROUP_DEFAULT);
+        root.setType("");
+        this.descConfig.getGroups().add(root);
+        this.groups.put(GROUP_DEFAULT, root);
     }
 
     public void updateField(String name, String type, String value) {
@@ -72,7 +95,50 @@ public class Utils {
     }
 
     /**
-     * Add fields to config (description).
+     * Add group to config (description), no-op if already defined with the same parent.
+     * Id of the group is its index in the description groups.
+     * @param name : name of the group (unique in the description)
+     * @param parent : name of the parent group (eg. {@link #GROUP_DEFAULT})
+     * @return the group.
+     */
+    public Group addGroup(String name, String parent) {
+        Group parentGroup = this.getGroup(parent);
+        Group result = this.groups.get(name);
+
+        if (result == null) {
+            result = this.factory.newFromType(Group._TYPE);
+            result.setId(this.descConfig.getGroups().size());
+            result.setParent(parentGroup.getId());
+            result.setName(name);
+            result.setType("");
+            this.descConfig.getGroups().add(result);
+            this.groups.put(name, result);
+        } else if (result.getParent() != parentGroup.getId() || result.getId() == 0) {
+            throw new DynamicReconfigureParameterException(
+                    "Group " + name + " already defined in another parent !");
+        }
+
+        return result;
+    }
+
+    /**
+     * Group of the description.
+     * @param name : name of the group.
+     * @return the group.
+     * @throws DynamicReconfigureParameterException if not defined.
+     */
+    public Group getGroup(String name) {
+        Group result = this.groups.get(name);
+
+        if (result == null) {
+            throw new DynamicReconfigureParameterException("Group " + name + " not found !");
+        }
+
+        return result;
+    }
+
+    /**
+     * Add fields to config (description), in the default group.
      * @param name : name of the parameter
      * @param type : type of the parameter
      * @param level : level of the parameter
@@ -89,19 +155,38 @@ public class Utils {
             Object defaultValue,
             int minValue,
             int maxValue) {
+        this.addField(name, type, level, description, defaultValue, minValue, maxValue, GROUP_DEFAULT);
+    }
 
-        ParamDescription descParam = null;
-        for (ParamDescription param : this.defaultGroup.getParameters()) {
-            if (param.getName().equals(name)) {
-                descParam = param;
-                break;
-            }
-        }
+    /**
+     * Add fields to config (description).
+     * An already defined parameter is updated, and stays in its group.
+     * @param name : name of the parameter
+     * @param type : type of the parameter
+     * @param level : level of the parameter
+     * @param description : Textual description of the parameter
+     * @param defaultValue : Default value of the parameter
+     * @param minValue : Minimum value of the parameter
+     * @param maxValue : Maximum value of the parameter
+     * @param group : name of the group of the parameter (see {@link #addGroup})
+     */
+    public void addField(
+            String name,
+            String type,
+            int level,
+            String description,
+            Object defaultValue,
+            int minValue,
+            int maxValue,
+            String group) {
+
+        ParamDescription descParam = this.params.get(name);
 
         if (descParam == null) {
             descParam = this.factory.newFromType(ParamDescription._TYPE);
             descParam.setName(name);
-            this.defaultGroup.getParameters().add(descParam);
+            this.getGroup(group).getParameters().add(descParam);
+            this.params.put(name, descParam);
         }
 
         descParam.setDescription(description);
@@ -127,7 +212,6 @@ public class Utils {
                 "int",
                 maxValue,
                 this.descConfig.getMax());
-        // TODO group case...
 
         // Update Current config message
         Utils.encodeConfig(
@@ -138,6 +222,112 @@ public class Utils {
                 this.updateConfig);
     }
 
+    /**
+     * Add fields to config (description) in one pass, with presized lists.
+     * Same result as {@link #addField} for each field, in O(number of fields).
+     * @param fields : definitions of fields.
+     * @throws DynamicReconfigureParameterException if a field is already defined (or twice in
+     * the builder), its group is not, or its default value is not of its type. Fields are checked
+     * before any change : the description is left unchanged.
+     */
+    public void addFields(SchemaBuilder fields) {
+        int size = fields.size();
+        this.checkFields(fields);
+
+        // Presize parameters of each group of the fields
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (SchemaBuilder.Field field : fields.getFields()) {
+            Integer count = counts.get(field.getGroup());
+            counts.put(field.getGroup(), count == null ? 1 : count + 1);
+        }
+        for (Map.Entry<String, Integer> count : counts.entrySet()) {
+            Group group = this.getGroup(count.getKey());
+            group.setParameters(Utils.presized(group.getParameters(), count.getValue()));
+        }
+
+        Config dflt = this.descConfig.getDflt();
+        Config min = this.descConfig.getMin();
+        Config max = this.descConfig.getMax();
+
+        Utils.presize(dflt, fields);
+        Utils.presize(this.updateConfig, fields);
+        min.setInts(Utils.presized(min.getInts(), size));
+        max.setInts(Utils.presized(max.getInts(), size));
+
+        for (SchemaBuilder.Field field : fields.getFields()) {
+            ParamDescription descParam = this.factory.newFromType(ParamDescription._TYPE);
+            descParam.setName(field.getName());
+            descParam.setDescription(field.getDescription());
+            descParam.setLevel(field.getLevel());
+            descParam.setType(field.getType());
+            this.groups.get(field.getGroup()).getParameters().add(descParam);
+            this.params.put(field.getName(), descParam);
+
+            // Update Description message
+            Utils.appendConfig(this.factory, field.getName(), field.getType(), field.getDefaultValue(), dflt);
+            Utils.appendConfig(this.factory, field.getName(), TYPE_INT, field.getMinValue(), min);
+            Utils.appendConfig(this.factory, field.getName(), TYPE_INT, field.getMaxValue(), max);
+
+            // Update Current config message
+            Utils.appendConfig(this.factory, field.getName(), field.getType(), field.getDefaultValue(), this.updateConfig);
+        }
+    }
+
+    /**
+     * Check fields can be added.
+     * @throws DynamicReconfigureParameterException on the first invalid field.
+     */
+    private void checkFields(SchemaBuilder fields) {
+        Set<String> names = new HashSet<String>(fields.size() * 2);
+
+        for (SchemaBuilder.Field field : fields.getFields()) {
+            if (this.params.containsKey(field.getName()) || !names.add(field.getName())) {
+                throw new DynamicReconfigureParameterException(
+                        "Parameter " + field.getName() + " already defined !");
+            }
+
+            this.getGroup(field.getGroup());
+
+            if (!Utils.isOfType(field.getType(), field.getDefaultValue())) {
+                throw new DynamicReconfigureParameterException(String.format(
+                        "Default value of %s is not a %s : %s",
+                        field.getName(), field.getType(), field.getDefaultValue()));
+            }
+        }
+    }
+
+    /** Value is of the java type of a parameter type. */
+    private static boolean isOfType(String type, Object value) {
+        boolean result;
+
+        if (TYPE_BOOL.equals(type)) {
+            result = value instanceof Boolean;
+        } else if (TYPE_INT.equals(type)) {
+            result = value instanceof Integer;
+        } else if (TYPE_DBL.equals(type)) {
+            result = value instanceof Double;
+        } else {
+            result = value == null || value instanceof String;
+        }
+
+        return result;
+    }
+
+    /** Copy of a list with room for more elements. */
+    private static <E> List<E> presized(List<E> current, int extra) {
+        List<E> result = new ArrayList<E>(current.size() + extra);
+        result.addAll(current);
+        return result;
+    }
+
+    /** Replace lists of a config with presized copies for the fields. */
+    private static void presize(Config config, SchemaBuilder fields) {
+        config.setBools(Utils.presized(config.getBools(), fields.count(TYPE_BOOL)));
+        config.setInts(Utils.presized(config.getInts(), fields.count(TYPE_INT)));
+        config.setStrs(Utils.presized(config.getStrs(), fields.count(TYPE_STR)));
+        config.setDoubles(Utils.presized(config.getDoubles(), fields.count(TYPE_DBL)));
+    }
+
     public ConfigDescription makeConfigDescription() {
         return this.descConfig;
     }
@@ -146,6 +336,232 @@ public class Utils {
         return this.updateConfig;
     }
 
+    /**
+     * Check if a parameter is reserved (eg. revision).
+     * @param name : name of the parameter.
+     * @return true if reserved.
+     */
+    public static boolean isReserved(String name) {
+        return name.startsWith(RESERVED_PREFIX);
+    }
+
+    /**
+     * Value of an int parameter of a config.
+     * @param config : the config.
+     * @param name : name of the parameter.
+     * @param defaultValue : value if not found.
+     * @return the value.
+     */
+    public static int getInt(Config config, String name, int defaultValue) {
+        int result = defaultValue;
+
+        for (IntParameter param : config.getInts()) {
+            if (param.getName().equals(name)) {
+                result = param.getValue();
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Value of a str parameter of a config.
+     * @param config : the config.
+     * @param name : name of the parameter.
+     * @param defaultValue : value if not found.
+     * @return the value.
+     */
+    public static String getString(Config config, String name, String defaultValue) {
+        String result = defaultValue;
+
+        for (StrParameter param : config.getStrs()) {
+            if (param.getName().equals(name)) {
+                result = param.getValue();
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Revision of a config (published or replied by a server).
+     * @param config : the config.
+     * @return the revision, -1 if none.
+     */
+    public static int getRevision(Config config) {
+        return Utils.getInt(config, REVISION, -1);
+    }
+
+    /**
+     * Check if a reply is a compare-and-set conflict.
+     * @param config : config replied by the server.
+     * @return true if the request was rejected.
+     */
+    public static boolean isConflict(Config config) {
+        return Utils.getBool(config, CONFLICT, false);
+    }
+
+    /**
+     * Check if a reply is an admission control rejection.
+     * @param config : config replied by the server.
+     * @return true if the request was rejected.
+     */
+    public static boolean isRejected(Config config) {
+        return Utils.getBool(config, REJECTED, false);
+    }
+
+    /**
+     * Value of a bool parameter of a config.
+     * @param config : the config.
+     * @param name : name of the parameter.
+     * @param defaultValue : value if not found.
+     * @return the value.
+     */
+    public static boolean getBool(Config config, String name, boolean defaultValue) {
+        boolean result = defaultValue;
+
+        for (BoolParameter param : config.getBools()) {
+            if (param.getName().equals(name)) {
+                result = param.getValue();
+                break;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Deep copy of a config message (parameters only).
+     * @param factory : for make new Ros message.
+     * @param source : the config to copy.
+     * @return the copy.
+     */
+    public static Config copyConfig(MessageFactory factory, Config source) {
+        Config result = factory.newFromType(Config._TYPE);
+
+        for (BoolParameter param : source.getBools()) {
+            BoolParameter copy = factory.newFromType(BoolParameter._TYPE);
+            copy.setName(param.getName());
+            copy.setValue(param.getValue());
+            result.getBools().add(copy);
+        }
+        for (IntParameter param : source.getInts()) {
+            IntParameter copy = factory.newFromType(IntParameter._TYPE);
+            copy.setName(param.getName());
+            copy.setValue(param.getValue());
+            result.getInts().add(copy);
+        }
+        for (StrParameter param : source.getStrs()) {
+            StrParameter copy = factory.newFromType(StrParameter._TYPE);
+            copy.setName(param.getName());
+            copy.setValue(param.getValue());
+            result.getStrs().add(copy);
+        }
+        for (DoubleParameter param : source.getDoubles()) {
+            DoubleParameter copy = factory.newFromType(DoubleParameter._TYPE);
+            copy.setName(param.getName());
+            copy.setValue(param.getValue());
+            result.getDoubles().add(copy);
+        }
+
+        return result;
+    }
+
+    /**
+     * Config without its reserved parameters, as published on parameter_updates
+     * (tools unaware of them, eg. rqt_reconfigure, see only the description ones).
+     * Parameters and group states are shared with the source, not copied.
+     * @param factory : for make new Ros message.
+     * @param source : the config.
+     * @return the config without reserved parameters.
+     */
+    public static Config withoutReserved(MessageFactory factory, Config source) {
+        Config result = factory.newFromType(Config._TYPE);
+
+        for (BoolParameter param : source.getBools()) {
+            if (!Utils.isReserved(param.getName())) {
+                result.getBools().add(param);
+            }
+        }
+        for (IntParameter param : source.getInts()) {
+            if (!Utils.isReserved(param.getName())) {
+                result.getInts().add(param);
+            }
+        }
+        for (StrParameter param : source.getStrs()) {
+            if (!Utils.isReserved(param.getName())) {
+                result.getStrs().add(param);
+            }
+        }
+        for (DoubleParameter param : source.getDoubles()) {
+            if (!Utils.isReserved(param.getName())) {
+                result.getDoubles().add(param);
+            }
+        }
+        result.getGroups().addAll(source.getGroups());
+
+        return result;
+    }
+
+    /**
+     * Convert a raw value (eg. from parameter server) to the java type of the config key.
+     * @param type : type of the config key (eg. "int")
+     * @param value : raw value (eg. 2.0d for an "int" key)
+     * @return value typed as expected by {@link #encodeConfig}.
+     */
+    public static Object decodeValue(String type, Object value) {
+        Object result = null;
+
+        if (TYPE_INT.equals(type) && value instanceof Number) {
+            result = ((Number) value).intValue();
+        } else if (TYPE_DBL.equals(type) && value instanceof Number) {
+            result = ((Number) value).doubleValue();
+        } else if (TYPE_BOOL.equals(type) && value instanceof Boolean) {
+            result = value;
+        } else if (TYPE_STR.equals(type) && value != null) {
+            result = value.toString();
+        } else {
+            throw new DynamicReconfigureParameterException(String.format(
+                    "value %s is not compatible with type %s.", value, type));
+        }
+
+        return result;
+    }
+
+    /**
+     * Append value to config object, without search of an existing key.
+     * @param factory : for make new Ros message (sub-message typed of config).
+     * @param name : name of the config key (eg. "rate")
+     * @param type : type of the config key (eg. "int")
+     * @param value : value of the config key (eg. "20" )
+     * @param current : the config to update
+     */
+    public static void appendConfig(MessageFactory factory, String name, String type, Object value, Config current) {
+        if (TYPE_INT.equals(type)) {
+            IntParameter param = factory.newFromType(IntParameter._TYPE);
+            param.setName(name);
+            param.setValue((Integer) value);
+            current.getInts().add(param);
+        } else if (TYPE_BOOL.equals(type)) {
+            BoolParameter param = factory.newFromType(BoolParameter._TYPE);
+            param.setName(name);
+            param.setValue((Boolean) value);
+            current.getBools().add(param);
+        } else if (TYPE_STR.equals(type)) {
+            StrParameter param = factory.newFromType(StrParameter._TYPE);
+            param.setName(name);
+            param.setValue((String) value);
+            current.getStrs().add(param);
+        } else if (TYPE_DBL.equals(type)) {
+            DoubleParameter param = factory.newFromType(DoubleParameter._TYPE);
+            param.setName(name);
+            param.setValue((Double) value);
+            current.getDoubles().add(param);
+        }
+    }
+
     /**
      * Encode value to config object
      * @param factory : for make new Ros message (sub-message typed of config).
@@ -0,0 +1,219 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.aggregator;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.ros.master.client.MasterStateClient;
+import org.ros.master.client.TopicSystemState;
+import org.ros.message.MessageListener;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.Node;
+import org.ros.node.topic.Subscriber;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+
+/**
+ * Node aggregating the configurations of all Dynamic-Reconfiguration servers
+ * of the graph into a {@link FleetIndex}.
+ *
+ * Servers are discovered periodically from the master, by their
+ * parameter_updates topic, and forgotten when it disappears.
+ * Configurations are read from parameter_revisions (with their revision)
+ * once the server publishes it, else from parameter_updates.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ConfigAggregator extends AbstractNodeMain {
+
+    private static final String UPDATES = "/parameter_updates";
+    private static final String REVISIONS = "/parameter_revisions";
+    private static final String DESCRIPTIONS = "/parameter_descriptions";
+    /** Default period of discovery, in milliseconds. */
+    private static final long PERIOD_DEFAULT = 5000;
+
+    private final FleetIndex index = new FleetIndex();
+    private final long period;
+
+    private ConnectedNode node;
+    private MasterStateClient master;
+    private ScheduledFuture<?> discovery;
+    /** Subscribers (updates, descriptions then revisions) by server name. */
+    private final Map<String, Subscriber<?>[]> subscribers = new HashMap<String, Subscriber<?>[]>();
+
+    public ConfigAggregator() {
+        this(PERIOD_DEFAULT, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param period period of discovery of servers.
+     * @param unit unit of period.
+     */
+    public ConfigAggregator(long period, TimeUnit unit) {
+        this.period = unit.toMillis(period);
+    }
+
+    @Override
+    public GraphName getDefaultNodeName() {
+        return GraphName.of("dynamic_reconfigure_aggregator");
+    }
+
+    @Override
+    public void onStart(ConnectedNode connectedNode) {
+        this.node = connectedNode;
+        this.master = new MasterStateClient(connectedNode, connectedNode.getMasterUri());
+        this.discovery = connectedNode.getScheduledExecutorService().scheduleWithFixedDelay(
+                new Runnable() {
+                    @Override
+                    public void run() {
+                        ConfigAggregator.this.discover();
+                    }
+                }, 0, this.period, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void onShutdown(Node node) {
+        if (this.discovery != null) {
+            this.discovery.cancel(false);
+        }
+
+        synchronized (this.subscribers) {
+            for (Subscriber<?>[] subscribed : this.subscribers.values()) {
+                ConfigAggregator.shutdown(subscribed);
+            }
+            this.subscribers.clear();
+        }
+    }
+
+    /**
+     * Index of all discovered servers.
+     * @return the index.
+     */
+    public FleetIndex getIndex() {
+        return this.index;
+    }
+
+    /** Subscribe to new servers, and forget the vanished ones. */
+    protected void discover() {
+        Set<String> found = new HashSet<String>();
+
+        try {
+            for (TopicSystemState topic : this.master.getSystemState().getTopics()) {
+                String name = topic.getTopicName();
+                if (name.endsWith(UPDATES) && !topic.getPublishers().isEmpty()) {
+                    found.add(name.substring(0, name.length() - UPDATES.length()));
+                }
+            }
+        } catch (RuntimeException e) {
+            this.node.getLog().error("Discovery of servers failed : " + e.getMessage());
+            return;
+        }
+
+        synchronized (this.subscribers) {
+            for (String server : found) {
+                if (!this.subscribers.containsKey(server)) {
+                    this.node.getLog().info("Aggregate server : " + server);
+                    this.subscribers.put(server, this.subscribe(server));
+                }
+            }
+
+            Iterator<Map.Entry<String, Subscriber<?>[]>> it = this.subscribers.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Subscriber<?>[]> entry = it.next();
+                if (!found.contains(entry.getKey())) {
+                    this.node.getLog().info("Forget server : " + entry.getKey());
+                    ConfigAggregator.shutdown(entry.getValue());
+                    this.index.remove(entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private Subscriber<?>[] subscribe(final String server) {
+        final Subscriber<?>[] result = new Subscriber<?>[3];
+        // Configurations are received on parameter_revisions (guarded by the subscribers lock).
+        final boolean[] revisioned = new boolean[1];
+
+        Subscriber<Config> updates = this.node.newSubscriber(server + UPDATES, Config._TYPE);
+        updates.addMessageListener(new MessageListener<Config>() {
+            @Override
+            public void onNewMessage(Config msg) {
+                synchronized (ConfigAggregator.this.subscribers) {
+                    if (ConfigAggregator.this.isLive(server, result) && !revisioned[0]) {
+                        ConfigAggregator.this.index.update(server, msg);
+                    }
+                }
+            }
+        });
+
+        Subscriber<Config> revisions = this.node.newSubscriber(server + REVISIONS, Config._TYPE);
+        revisions.addMessageListener(new MessageListener<Config>() {
+            @Override
+            public void onNewMessage(Config msg) {
+                synchronized (ConfigAggregator.this.subscribers) {
+                    if (ConfigAggregator.this.isLive(server, result)) {
+                        revisioned[0] = true;
+                        ConfigAggregator.this.index.update(server, msg);
+                    }
+                }
+            }
+        });
+
+        Subscriber<ConfigDescription> descriptions =
+                this.node.newSubscriber(server + DESCRIPTIONS, ConfigDescription._TYPE);
+        descriptions.addMessageListener(new MessageListener<ConfigDescription>() {
+            @Override
+            public void onNewMessage(ConfigDescription msg) {
+                synchronized (ConfigAggregator.this.subscribers) {
+                    if (ConfigAggregator.this.isLive(server, result)) {
+                        ConfigAggregator.this.index.describe(server, msg);
+                    }
+                }
+            }
+        });
+
+        result[0] = updates;
+        result[1] = descriptions;
+        result[2] = revisions;
+        return result;
+    }
+
+    private static void shutdown(Subscriber<?>[] subscribed) {
+        for (Subscriber<?> subscriber : subscribed) {
+            subscriber.shutdown();
+        }
+    }
+
+    /**
+     * Check if subscribers of a server are still registered (not forgotten),
+     * so that an in-flight message does not index a forgotten server again.
+     * Called with the subscribers lock held.
+     */
+    private boolean isLive(String server, Subscriber<?>[] subscribed) {
+        return this.subscribers.get(server) == subscribed;
+    }
+}
@@ -0,0 +1,438 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.aggregator;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ros.dynamic_reconfigure.ConfigSchema;
+import org.ros.dynamic_reconfigure.Utils;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.Group;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.ParamDescription;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * In-memory index of the configurations of many servers, by (server, parameter).
+ *
+ * Servers with the same parameters share one {@link Layout} (names and slots),
+ * so each server only costs its values, in primitive arrays.
+ * Descriptions are shared the same way.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class FleetIndex {
+
+    /** Layouts by signature. */
+    private final ConcurrentMap<String, Layout> layouts = new ConcurrentHashMap<String, Layout>();
+    /** Schemas by description. */
+    private final ConcurrentMap<String, ConfigSchema> schemas = new ConcurrentHashMap<String, ConfigSchema>();
+    /** Current state by server name. */
+    private final ConcurrentMap<String, Entry> servers = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Index the configuration published by a server.
+     * @param server name of the server.
+     * @param config configuration (from parameter_revisions, or parameter_updates).
+     */
+    public void update(String server, Config config) {
+        Entry current;
+        Entry next;
+
+        do {
+            current = this.servers.get(server);
+            // Entry of a description received first has no layout yet.
+            Layout layout = current != null && current.layout != null && current.layout.matches(config)
+                    ? current.layout
+                    : this.intern(config);
+            next = new Entry(layout, config, current != null ? current.schema : null);
+        } while (current == null
+                ? this.servers.putIfAbsent(server, next) != null
+                : !this.servers.replace(server, current, next));
+    }
+
+    /**
+     * Index the description published by a server.
+     * @param server name of the server.
+     * @param description description (from parameter_descriptions).
+     */
+    public void describe(String server, ConfigDescription description) {
+        String key = FleetIndex.signature(description);
+        ConfigSchema schema = this.schemas.get(key);
+        if (schema == null) {
+            this.schemas.putIfAbsent(key, new ConfigSchema(description));
+            schema = this.schemas.get(key);
+        }
+
+        Entry current;
+        Entry next;
+        do {
+            current = this.servers.get(server);
+            next = current != null ? current.withSchema(schema) : new Entry(schema);
+        } while (current == null
+                ? this.servers.putIfAbsent(server, next) != null
+                : !this.servers.replace(server, current, next));
+    }
+
+    /**
+     * Forget a server.
+     * @param server name of the server.
+     */
+    public void remove(String server) {
+        this.servers.remove(server);
+    }
+
+    public Set<String> getServers() {
+        return Collections.unmodifiableSet(new TreeSet<String>(this.servers.keySet()));
+    }
+
+    /**
+     * Description of a server.
+     * @param server name of the server.
+     * @return the schema, null if none has been received.
+     */
+    public ConfigSchema getSchema(String server) {
+        Entry entry = this.servers.get(server);
+        return entry != null ? entry.schema : null;
+    }
+
+    /**
+     * Revision of the configuration of a server.
+     * @param server name of the server.
+     * @return the revision, -1 if unknown.
+     */
+    public int getRevision(String server) {
+        Entry entry = this.servers.get(server);
+        return entry != null ? entry.revision : -1;
+    }
+
+    /**
+     * Value of a parameter on a server.
+     * @param server name of the server.
+     * @param parameter name of the parameter.
+     * @return the value, null if unknown.
+     */
+    public Object getValue(String server, String parameter) {
+        Entry entry = this.servers.get(server);
+        return entry != null ? entry.get(parameter) : null;
+    }
+
+    /**
+     * All values of a parameter.
+     * @param parameter name of the parameter.
+     * @return values by server name, for servers having this parameter.
+     */
+    public SortedMap<String, Object> getValues(String parameter) {
+        SortedMap<String, Object> result = new TreeMap<String, Object>();
+
+        for (Map.Entry<String, Entry> server : this.servers.entrySet()) {
+            Object value = server.getValue().get(parameter);
+            if (value != null) {
+                result.put(server.getKey(), value);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Servers whose parameter differs from a reference value.
+     * Servers without this parameter (or without configuration yet) differ.
+     * @param parameter name of the parameter.
+     * @param reference reference value.
+     * @return names of differing servers.
+     */
+    public SortedSet<String> getDifferences(String parameter, Object reference) {
+        SortedSet<String> result = new TreeSet<String>();
+
+        for (Map.Entry<String, Entry> server : this.servers.entrySet()) {
+            Object value = server.getValue().get(parameter);
+            if (value == null || !value.equals(reference)) {
+                result.add(server.getKey());
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Servers whose parameter differs from the one of a reference server.
+     * @param parameter name of the parameter.
+     * @param referenceServer name of the reference server.
+     * @return names of differing servers.
+     */
+    public SortedSet<String> getDifferencesFrom(String parameter, String referenceServer) {
+        return this.getDifferences(parameter, this.getValue(referenceServer, parameter));
+    }
+
+    /**
+     * Signature of a description : parameters, groups, bounds and defaults.
+     */
+    private static String signature(ConfigDescription description) {
+        StringBuilder result = new StringBuilder();
+
+        for (Group group : description.getGroups()) {
+            result.append(group.getId()).append(group.getName()).append('{');
+            for (ParamDescription param : group.getParameters()) {
+                result.append(param.getName()).append(':').append(param.getType())
+                    .append(':').append(param.getLevel()).append(';');
+            }
+            result.append('}');
+        }
+        FleetIndex.signature(description.getMin(), result.append("min"));
+        FleetIndex.signature(description.getMax(), result.append("max"));
+        FleetIndex.signature(description.getDflt(), result.append("dflt"));
+
+        return result.toString();
+    }
+
+    private static void signature(Config config, StringBuilder result) {
+        for (BoolParameter param : config.getBools()) {
+            result.append(param.getName()).append('=').append(param.getValue()).append(';');
+        }
+        for (IntParameter param : config.getInts()) {
+            result.append(param.getName()).append('=').append(param.getValue()).append(';');
+        }
+        for (StrParameter param : config.getStrs()) {
+            result.append(param.getName()).append('=').append(param.getValue()).append(';');
+        }
+        for (DoubleParameter param : config.getDoubles()) {
+            result.append(param.getName()).append('=').append(param.getValue()).append(';');
+        }
+    }
+
+    /**
+     * Shared layout of a config.
+     */
+    private Layout intern(Config config) {
+        Layout layout = new Layout(config);
+        Layout result = this.layouts.putIfAbsent(layout.signature, layout);
+        return result != null ? result : layout;
+    }
+
+    /** Names and slots of parameters, shared by servers with the same parameters. */
+    static final class Layout {
+
+        private final String signature;
+        private final String[] bools;
+        private final String[] ints;
+        private final String[] strs;
+        private final String[] doubles;
+        /** Slot by name : type in the 2 lower bits, index in the others. */
+        private final Map<String, Integer> slots = new HashMap<String, Integer>();
+
+        Layout(Config config) {
+            StringBuilder signature = new StringBuilder();
+
+            this.bools = new String[config.getBools().size()];
+            for (int i = 0; i < this.bools.length; i++) {
+                this.bools[i] = this.slot(config.getBools().get(i).getName(), 0, i, signature);
+            }
+            int count = 0;
+            for (IntParameter param : config.getInts()) {
+                if (!Utils.isReserved(param.getName())) {
+                    count++;
+                }
+            }
+            this.ints = new String[count];
+            count = 0;
+            for (IntParameter param : config.getInts()) {
+                if (!Utils.isReserved(param.getName())) {
+                    this.ints[count] = this.slot(param.getName(), 1, count, signature);
+                    count++;
+                }
+            }
+            count = 0;
+            for (StrParameter param : config.getStrs()) {
+                if (!Utils.isReserved(param.getName())) {
+                    count++;
+                }
+            }
+            this.strs = new String[count];
+            count = 0;
+            for (StrParameter param : config.getStrs()) {
+                if (!Utils.isReserved(param.getName())) {
+                    this.strs[count] = this.slot(param.getName(), 2, count, signature);
+                    count++;
+                }
+            }
+            this.doubles = new String[config.getDoubles().size()];
+            for (int i = 0; i < this.doubles.length; i++) {
+                this.doubles[i] = this.slot(config.getDoubles().get(i).getName(), 3, i, signature);
+            }
+
+            this.signature = signature.toString();
+        }
+
+        private String slot(String name, int type, int index, StringBuilder signature) {
+            this.slots.put(name, (index << 2) | type);
+            signature.append(type).append(name).append('\n');
+            return name;
+        }
+
+        /**
+         * Check if a config has this layout, without allocation.
+         */
+        boolean matches(Config config) {
+            boolean result = this.bools.length == config.getBools().size()
+                    && this.doubles.length == config.getDoubles().size();
+
+            for (int i = 0; result && i < this.bools.length; i++) {
+                result = this.bools[i].equals(config.getBools().get(i).getName());
+            }
+            int index = 0;
+            for (IntParameter param : config.getInts()) {
+                if (!result) {
+                    break;
+                }
+                if (!Utils.isReserved(param.getName())) {
+                    result = index < this.ints.length && this.ints[index].equals(param.getName());
+                    index++;
+                }
+            }
+            result &= index == this.ints.length;
+            index = 0;
+            for (StrParameter param : config.getStrs()) {
+                if (!result) {
+                    break;
+                }
+                if (!Utils.isReserved(param.getName())) {
+                    result = index < this.strs.length && this.strs[index].equals(param.getName());
+                    index++;
+                }
+            }
+            result &= index == this.strs.length;
+            for (int i = 0; result && i < this.doubles.length; i++) {
+                result = this.doubles[i].equals(config.getDoubles().get(i).getName());
+            }
+
+            return result;
+        }
+
+        Integer slot(String name) {
+            return this.slots.get(name);
+        }
+    }
+
+    /** Immutable state of one server. */
+    private static final class Entry {
+
+        private final Layout layout;
+        private final boolean[] bools;
+        private final int[] ints;
+        private final String[] strs;
+        private final double[] doubles;
+        private final int revision;
+        private final ConfigSchema schema;
+
+        Entry(ConfigSchema schema) {
+            this.layout = null;
+            this.bools = null;
+            this.ints = null;
+            this.strs = null;
+            this.doubles = null;
+            this.revision = -1;
+            this.schema = schema;
+        }
+
+        Entry(Layout layout, Config config, ConfigSchema schema) {
+            this.layout = layout;
+            this.schema = schema;
+            this.revision = Utils.getRevision(config);
+
+            this.bools = new boolean[layout.bools.length];
+            int i = 0;
+            for (BoolParameter param : config.getBools()) {
+                this.bools[i++] = param.getValue();
+            }
+            this.ints = new int[layout.ints.length];
+            i = 0;
+            for (IntParameter param : config.getInts()) {
+                if (!Utils.isReserved(param.getName())) {
+                    this.ints[i++] = param.getValue();
+                }
+            }
+            this.strs = new String[layout.strs.length];
+            i = 0;
+            for (StrParameter param : config.getStrs()) {
+                if (!Utils.isReserved(param.getName())) {
+                    this.strs[i++] = param.getValue();
+                }
+            }
+            this.doubles = new double[layout.doubles.length];
+            i = 0;
+            for (DoubleParameter param : config.getDoubles()) {
+                this.doubles[i++] = param.getValue();
+            }
+        }
+
+        private Entry(Entry values, ConfigSchema schema) {
+            this.layout = values.layout;
+            this.bools = values.bools;
+            this.ints = values.ints;
+            this.strs = values.strs;
+            this.doubles = values.doubles;
+            this.revision = values.revision;
+            this.schema = schema;
+        }
+
+        Entry withSchema(ConfigSchema newSchema) {
+            return new Entry(this, newSchema);
+        }
+
+        /**
+         * Boxed value of a parameter, null if not found.
+         */
+        Object get(String name) {
+            Object result = null;
+            Integer slot = this.layout != null ? this.layout.slot(name) : null;
+
+            if (slot != null) {
+                int index = slot >>> 2;
+                switch (slot & 3) {
+                case 0:
+                    result = this.bools[index];
+                    break;
+                case 1:
+                    result = this.ints[index];
+                    break;
+                case 2:
+                    result = this.strs[index];
+                    break;
+                default:
+                    result = this.doubles[index];
+                    break;
+                }
+            }
+
+            return result;
+        }
+    }
+}
@@ -0,0 +1,462 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+package org.ros.dynamic_reconfigure.benchmark;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ros.RosCore;
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.server.Server;
+import org.ros.dynamic_reconfigure.server.Server.ReconfigureListener;
+import org.ros.message.MessageFactory;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.DefaultNodeMainExecutor;
+import org.ros.node.Node;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.NodeMainExecutor;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Concurrency stress of Server : writer threads reconfigure in parallel
+ * (as concurrent set_parameters calls do) while reader threads read the
+ * configuration, for each thread count.
+ *
+ * Each write sets all the parameters of {@link LoadConfig} from one stamp
+ * (kp = rate = stamp, frame = "s" + stamp, enable = stamp is even), so
+ * a configuration mixing two writes is detected. Checked invariants :
+ * <ul>
+ * <li>torn : a snapshot (reply or current configuration) mixes two writes.</li>
+ * <li>stale : the reply of a write does not show that write.</li>
+ * <li>revision : two snapshots of the same revision have different values.</li>
+ * <li>monotonic : a reader, or the replies of a writer, see the revision go backward.</li>
+ * <li>callback : the callback sees a config mixing two writes.</li>
+ * <li>final : once writers are done, the configuration (snapshot and live config)
+ * is not the write of the last revision replied.</li>
+ * </ul>
+ * Torn reads of the live config from user threads (field by field) are
+ * reported, but not counted as a violation.
+ *
+ * Usage : ConcurrencyStress [-threads 1,2,4,8,16,32] [-readers N]
+ *         [-duration SEC] [-master URI]
+ *
+ * Exit status is 1 if any invariant is violated.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ConcurrencyStress {
+
+    private static final String SERVER_NAME = "stress_server";
+    private static final long CONNECT_TIMEOUT = 30;
+
+    private int[] threads = new int[] { 1, 2, 4, 8, 16, 32 };
+    private int readers = 2;
+    private int duration = 5;
+    private URI masterUri;
+
+    private ServerNode serverNode;
+
+    // Counters of the current round.
+    private final AtomicInteger stamps = new AtomicInteger();
+    private final AtomicLong writes = new AtomicLong();
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong torn = new AtomicLong();
+    private final AtomicLong stale = new AtomicLong();
+    private final AtomicLong revisionMismatch = new AtomicLong();
+    private final AtomicLong nonMonotonic = new AtomicLong();
+    private final AtomicLong callbackTorn = new AtomicLong();
+    private final AtomicLong liveTorn = new AtomicLong();
+    private final AtomicLong finalMismatch = new AtomicLong();
+    /** Stamp of each revision seen. */
+    private final ConcurrentMap<Integer, Integer> revisions = new ConcurrentHashMap<Integer, Integer>();
+    private volatile boolean running;
+
+    public static void main(String[] args) throws Exception {
+        ConcurrencyStress stress = new ConcurrencyStress();
+        stress.parse(args);
+        System.exit(stress.run() ? 0 : 1);
+    }
+
+    /**
+     * Parse command line options.
+     * @param args command line.
+     */
+    public void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String key = args[i];
+            String value = args[i + 1];
+
+            if ("-threads".equals(key)) {
+                String[] counts = value.split(",");
+                this.threads = new int[counts.length];
+                for (int j = 0; j < counts.length; j++) {
+                    this.threads[j] = Integer.parseInt(counts[j].trim());
+                }
+            } else if ("-readers".equals(key)) {
+                this.readers = Integer.parseInt(value);
+            } else if ("-duration".equals(key)) {
+                this.duration = Integer.parseInt(value);
+            } else if ("-master".equals(key)) {
+                this.masterUri = URI.create(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option : " + key);
+            }
+        }
+    }
+
+    /**
+     * Start the server, run one round by thread count and print the report.
+     * @return true if no invariant has been violated.
+     * @throws InterruptedException
+     */
+    public boolean run() throws InterruptedException {
+        RosCore rosCore = null;
+        if (this.masterUri == null) {
+            rosCore = RosCore.newPrivate();
+            rosCore.start();
+            rosCore.awaitStart(CONNECT_TIMEOUT, TimeUnit.SECONDS);
+            this.masterUri = rosCore.getUri();
+        }
+
+        NodeMainExecutor executor = DefaultNodeMainExecutor.newDefault();
+        boolean result = true;
+
+        try {
+            CountDownLatch ready = new CountDownLatch(1);
+            this.serverNode = new ServerNode(ready);
+            executor.execute(this.serverNode, NodeConfiguration.newPrivate(this.masterUri));
+            if (!ready.await(CONNECT_TIMEOUT, TimeUnit.SECONDS)) {
+                throw new DynamicReconfigureException("Timeout on start of server !");
+            }
+
+            System.out.println(String.format("%7s %10s %10s %6s %6s %8s %9s %8s %6s %9s",
+                    "threads", "writes/s", "reads/s", "torn", "stale",
+                    "revision", "monotonic", "callback", "final", "live-torn"));
+            for (int count : this.threads) {
+                result &= this.round(count);
+            }
+        } finally {
+            executor.shutdown();
+            if (rosCore != null) {
+                rosCore.shutdown();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * One round : writers and readers for the duration.
+     * @param writers number of writer threads.
+     * @return true if no invariant has been violated.
+     * @throws InterruptedException
+     */
+    private boolean round(int writers) throws InterruptedException {
+        this.reset();
+
+        // Start from a consistent configuration.
+        this.check(this.serverNode.server.reconfigure(this.request(this.stamps.incrementAndGet())));
+
+        final CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<Thread>(writers + this.readers);
+        for (int i = 0; i < writers; i++) {
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ConcurrencyStress.this.await(start);
+                    ConcurrencyStress.this.write();
+                }
+            }, "stress-writer-" + i));
+        }
+        for (int i = 0; i < this.readers; i++) {
+            workers.add(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ConcurrencyStress.this.await(start);
+                    ConcurrencyStress.this.read();
+                }
+            }, "stress-reader-" + i));
+        }
+
+        this.running = true;
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(this.duration));
+        this.running = false;
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9d;
+        this.checkFinal();
+
+        System.out.println(String.format("%7d %10.1f %10.1f %6d %6d %8d %9d %8d %6d %9d",
+                writers,
+                this.writes.get() / seconds,
+                this.reads.get() / seconds,
+                this.torn.get(),
+                this.stale.get(),
+                this.revisionMismatch.get(),
+                this.nonMonotonic.get(),
+                this.callbackTorn.get(),
+                this.finalMismatch.get(),
+                this.liveTorn.get()));
+
+        return this.torn.get() == 0
+                && this.stale.get() == 0
+                && this.revisionMismatch.get() == 0
+                && this.nonMonotonic.get() == 0
+                && this.callbackTorn.get() == 0
+                && this.finalMismatch.get() == 0;
+    }
+
+    /**
+     * Check the configuration once writers are done : its revision is the last
+     * one replied, and the snapshot and the live config hold the write of it.
+     */
+    private void checkFinal() {
+        int lastRevision = -1;
+        for (Integer revision : this.revisions.keySet()) {
+            lastRevision = Math.max(lastRevision, revision.intValue());
+        }
+
+        Config current = this.serverNode.server.getConfiguration();
+        Integer lastStamp = this.revisions.get(lastRevision);
+        int currentStamp = ConcurrencyStress.stamp(current);
+
+        if (Utils.getRevision(current) != lastRevision
+                || lastStamp == null
+                || currentStamp != lastStamp.intValue()
+                || ConcurrencyStress.stamp(this.serverNode.config) != currentStamp) {
+            this.finalMismatch.incrementAndGet();
+        }
+    }
+
+    private void reset() {
+        this.writes.set(0);
+        this.reads.set(0);
+        this.torn.set(0);
+        this.stale.set(0);
+        this.revisionMismatch.set(0);
+        this.nonMonotonic.set(0);
+        this.callbackTorn.set(0);
+        this.liveTorn.set(0);
+        this.finalMismatch.set(0);
+        this.revisions.clear();
+    }
+
+    private void await(CountDownLatch start) {
+        try {
+            start.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Writer loop : reconfigure with a new stamp, and check the reply. */
+    private void write() {
+        int lastRevision = -1;
+
+        while (this.running) {
+            int stamp = this.stamps.incrementAndGet();
+            Config reply = this.serverNode.server.reconfigure(this.request(stamp));
+            this.writes.incrementAndGet();
+
+            int replied = this.check(reply);
+            if (replied >= 0 && replied != stamp) {
+                this.stale.incrementAndGet();
+            }
+            int replyRevision = Utils.getRevision(reply);
+            if (replyRevision <= lastRevision) {
+                this.nonMonotonic.incrementAndGet();
+            }
+            lastRevision = replyRevision;
+        }
+    }
+
+    /** Reader loop : check the current snapshot and the live config. */
+    private void read() {
+        int lastRevision = -1;
+
+        while (this.running) {
+            Config current = this.serverNode.server.getConfiguration();
+            this.reads.incrementAndGet();
+
+            this.check(current);
+            int currentRevision = Utils.getRevision(current);
+            if (currentRevision < lastRevision) {
+                this.nonMonotonic.incrementAndGet();
+            }
+            lastRevision = currentRevision;
+
+            if (ConcurrencyStress.stamp(this.serverNode.config) < 0) {
+                this.liveTorn.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Check a snapshot : not torn, and same values as other snapshots of its revision.
+     * @param config snapshot.
+     * @return its stamp, -1 if torn.
+     */
+    private int check(Config config) {
+        int result = ConcurrencyStress.stamp(config);
+
+        if (result < 0) {
+            this.torn.incrementAndGet();
+        } else {
+            Integer previous = this.revisions.putIfAbsent(Utils.getRevision(config), result);
+            if (previous != null && previous.intValue() != result) {
+                this.revisionMismatch.incrementAndGet();
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Request setting all parameters from a stamp.
+     * @param stamp of the request.
+     * @return the request.
+     */
+    private Config request(int stamp) {
+        MessageFactory factory = this.serverNode.node.getTopicMessageFactory();
+        Config result = factory.newFromType(Config._TYPE);
+
+        Utils.appendConfig(factory, LoadConfig.KP, Utils.TYPE_DBL, (double) stamp, result);
+        Utils.appendConfig(factory, LoadConfig.RATE, Utils.TYPE_INT, stamp, result);
+        Utils.appendConfig(factory, LoadConfig.ENABLE, Utils.TYPE_BOOL, stamp % 2 == 0, result);
+        Utils.appendConfig(factory, LoadConfig.FRAME, Utils.TYPE_STR, "s" + stamp, result);
+
+        return result;
+    }
+
+    /**
+     * Stamp of a config message.
+     * @param config message.
+     * @return the stamp, -1 if the parameters are from different stamps.
+     */
+    private static int stamp(Config config) {
+        double kp = -1;
+        int rate = -2;
+        boolean enable = false;
+        String frame = null;
+
+        for (DoubleParameter param : config.getDoubles()) {
+            if (LoadConfig.KP.equals(param.getName())) {
+                kp = param.getValue();
+            }
+        }
+        for (IntParameter param : config.getInts()) {
+            if (LoadConfig.RATE.equals(param.getName())) {
+                rate = param.getValue();
+            }
+        }
+        for (BoolParameter param : config.getBools()) {
+            if (LoadConfig.ENABLE.equals(param.getName())) {
+                enable = param.getValue();
+            }
+        }
+        for (StrParameter param : config.getStrs()) {
+            if (LoadConfig.FRAME.equals(param.getName())) {
+                frame = param.getValue();
+            }
+        }
+
+        return ConcurrencyStress.stamp(kp, rate, enable, frame);
+    }
+
+    /**
+     * Stamp of the live config, read field by field.
+     * @param config live config.
+     * @return the stamp, -1 if the fields are from different stamps.
+     */
+    private static int stamp(LoadConfig config) {
+        return ConcurrencyStress.stamp(
+                config.getDouble(LoadConfig.KP, -1),
+                config.getInteger(LoadConfig.RATE, -2),
+                config.getBool(LoadConfig.ENABLE, false),
+                config.getString(LoadConfig.FRAME, null));
+    }
+
+    private static int stamp(double kp, int rate, boolean enable, String frame) {
+        boolean consistent = kp == rate
+                && enable == (rate % 2 == 0)
+                && ("s" + rate).equals(frame);
+        return consistent ? rate : -1;
+    }
+
+    /** Node hosting the stressed Server. */
+    private class ServerNode extends AbstractNodeMain implements ReconfigureListener<LoadConfig> {
+
+        private final CountDownLatch ready;
+        private ConnectedNode node;
+        private LoadConfig config;
+        private Server<LoadConfig> server;
+
+        public ServerNode(CountDownLatch ready) {
+            this.ready = ready;
+        }
+
+        @Override
+        public GraphName getDefaultNodeName() {
+            return GraphName.of(SERVER_NAME);
+        }
+
+        @Override
+        public void onStart(ConnectedNode connectedNode) {
+            this.node = connectedNode;
+            this.config = new LoadConfig(connectedNode);
+            this.server = new Server<LoadConfig>(connectedNode, this.config, this);
+            this.ready.countDown();
+        }
+
+        @Override
+        public void onShutdown(Node node) {
+            if (this.server != null) {
+                this.server.close();
+            }
+        }
+
+        @Override
+        public LoadConfig onReconfigure(LoadConfig config, int level) {
+            // The initial configuration is the default one (not stamped).
+            if (ConcurrencyStress.stamp(config) < 0
+                    && ConcurrencyStress.this.stamps.get() > 0) {
+                ConcurrencyStress.this.callbackTorn.incrementAndGet();
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.benchmark;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Fixed capacity latency samples, safe to record from many threads.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class LatencyRecorder {
+
+    /** Samples in nanoseconds. */
+    private final long[] samples;
+    /** Next free slot. */
+    private final AtomicInteger cursor = new AtomicInteger();
+    /** Failed requests. */
+    private final AtomicInteger failures = new AtomicInteger();
+
+    public LatencyRecorder(int capacity) {
+        this.samples = new long[capacity];
+    }
+
+    /**
+     * Record a successful request.
+     * @param latency in nanoseconds.
+     */
+    public void record(long latency) {
+        int index = this.cursor.getAndIncrement();
+        if (index < this.samples.length) {
+            this.samples[index] = latency;
+        }
+    }
+
+    /** Record a failed request. */
+    public void fail() {
+        this.failures.incrementAndGet();
+    }
+
+    /** @return number of successful requests (including dropped samples). */
+    public int getCount() {
+        return this.cursor.get();
+    }
+
+    /** @return number of failed requests. */
+    public int getFailures() {
+        return this.failures.get();
+    }
+
+    /**
+     * Sorted copy of recorded samples (to call once the load is stopped).
+     * @return samples in nanoseconds.
+     */
+    public long[] sorted() {
+        long[] result = Arrays.copyOf(
+                this.samples,
+                Math.min(this.cursor.get(), this.samples.length));
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Percentile of sorted samples.
+     * @param sorted samples returned by {@link #sorted()}.
+     * @param percentile between 0 and 100 (eg. 99.9).
+     * @return the sample in nanoseconds, 0 if no sample.
+     */
+    public static long percentile(long[] sorted, double percentile) {
+        long result = 0;
+
+        if (sorted.length > 0) {
+            int index = (int) Math.ceil(percentile / 100d * sorted.length) - 1;
+            result = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,48 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.benchmark;
+
+import org.ros.dynamic_reconfigure.SchemaBuilder;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.server.BaseConfig;
+import org.ros.node.ConnectedNode;
+
+/**
+ * Configuration served by the load generator.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class LoadConfig extends BaseConfig {
+
+    public static final String KP           = "kp";
+    public static final String RATE         = "rate";
+    public static final String ENABLE       = "enable";
+    public static final String FRAME        = "frame";
+
+    public static final int KP_MIN          = 0;
+    public static final int KP_MAX          = 1000;
+
+    public LoadConfig(ConnectedNode connectedNode) {
+        super(connectedNode);
+
+        this.addFields(new SchemaBuilder(4)
+                .add(KP,        Utils.TYPE_DBL,     0, "Proportional gain", 1.0d, KP_MIN, KP_MAX)
+                .add(RATE,      Utils.TYPE_INT,     1, "Loop rate", 10, 0, 1000)
+                .add(ENABLE,    Utils.TYPE_BOOL,    2, "Enable loop", true, 0, 1)
+                .add(FRAME,     Utils.TYPE_STR,     4, "Frame id", "base_link", 0, 0));
+    }
+}
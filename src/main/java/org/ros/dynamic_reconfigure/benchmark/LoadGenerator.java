@@ -0,0 +1,382 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.benchmark;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.ros.RosCore;
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.client.Client;
+import org.ros.dynamic_reconfigure.server.Server;
+import org.ros.dynamic_reconfigure.server.Server.ReconfigureListener;
+import org.ros.exception.RemoteException;
+import org.ros.message.MessageFactory;
+import org.ros.namespace.GraphName;
+import org.ros.node.AbstractNodeMain;
+import org.ros.node.ConnectedNode;
+import org.ros.node.DefaultNodeMainExecutor;
+import org.ros.node.Node;
+import org.ros.node.NodeConfiguration;
+import org.ros.node.NodeMainExecutor;
+import org.ros.node.service.ServiceResponseListener;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ReconfigureResponse;
+
+/**
+ * Load generator of Dynamic-Reconfiguration.
+ * Drive N concurrent clients against M servers at a target request rate,
+ * and report throughput, latency percentiles and GC activity.
+ *
+ * Usage : LoadGenerator [-clients N] [-servers M] [-rate REQ_PER_SEC]
+ *         [-duration SEC] [-mode sync|async] [-master URI]
+ *
+ * Without master URI, an in-process private master is started.
+ * Latency is measured from the intended send time, so a stalled server
+ * is not hidden by a client waiting for it.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class LoadGenerator {
+
+    /** Send modes. */
+    public enum Mode {
+        /** Each client waits the response before next request (closed loop). */
+        SYNC,
+        /** Each client sends at the target rate whatever the responses (open loop). */
+        ASYNC
+    }
+
+    private static final String SERVER_PREFIX = "load_server_";
+    private static final String CLIENT_PREFIX = "load_client_";
+    private static final long CONNECT_TIMEOUT = 30;
+
+    private int clients = 8;
+    private int servers = 2;
+    private double rate = 200d;
+    private int duration = 30;
+    private Mode mode = Mode.ASYNC;
+    private URI masterUri;
+
+    private LatencyRecorder recorder;
+    /** Request counter shared by all clients, source of the sent values. */
+    private final AtomicLong requests = new AtomicLong();
+
+    public static void main(String[] args) throws Exception {
+        LoadGenerator generator = new LoadGenerator();
+        generator.parse(args);
+        generator.run();
+    }
+
+    /**
+     * Parse command line options.
+     * @param args command line.
+     */
+    public void parse(String[] args) {
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String key = args[i];
+            String value = args[i + 1];
+
+            if ("-clients".equals(key)) {
+                this.clients = Integer.parseInt(value);
+            } else if ("-servers".equals(key)) {
+                this.servers = Integer.parseInt(value);
+            } else if ("-rate".equals(key)) {
+                this.rate = Double.parseDouble(value);
+            } else if ("-duration".equals(key)) {
+                this.duration = Integer.parseInt(value);
+            } else if ("-mode".equals(key)) {
+                this.mode = Mode.valueOf(value.toUpperCase());
+            } else if ("-master".equals(key)) {
+                this.masterUri = URI.create(value);
+            } else {
+                throw new IllegalArgumentException("Unknown option : " + key);
+            }
+        }
+    }
+
+    /**
+     * Start servers and clients, apply the load and print the report.
+     * @throws InterruptedException
+     */
+    public void run() throws InterruptedException {
+        RosCore rosCore = null;
+        if (this.masterUri == null) {
+            rosCore = RosCore.newPrivate();
+            rosCore.start();
+            rosCore.awaitStart(CONNECT_TIMEOUT, TimeUnit.SECONDS);
+            this.masterUri = rosCore.getUri();
+        }
+
+        NodeMainExecutor executor = DefaultNodeMainExecutor.newDefault();
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(this.clients);
+
+        try {
+            // Servers.
+            CountDownLatch serversReady = new CountDownLatch(this.servers);
+            for (int i = 0; i < this.servers; i++) {
+                executor.execute(
+                        new ServerNode(SERVER_PREFIX + i, serversReady),
+                        NodeConfiguration.newPrivate(this.masterUri));
+            }
+            this.await(serversReady, "servers");
+
+            // Clients.
+            CountDownLatch clientsReady = new CountDownLatch(this.clients);
+            List<ClientNode> clientNodes = new ArrayList<ClientNode>(this.clients);
+            for (int i = 0; i < this.clients; i++) {
+                ClientNode clientNode = new ClientNode(
+                        CLIENT_PREFIX + i,
+                        "/" + SERVER_PREFIX + (i % this.servers),
+                        clientsReady);
+                clientNodes.add(clientNode);
+                executor.execute(clientNode, NodeConfiguration.newPrivate(this.masterUri));
+            }
+            this.await(clientsReady, "clients");
+
+            // Load.
+            this.recorder = new LatencyRecorder((int) (this.rate * this.duration * 2) + 1024);
+            long period = (long) (TimeUnit.SECONDS.toNanos(1) * this.clients / this.rate);
+            long[] gcBefore = LoadGenerator.gcSnapshot();
+            long start = System.nanoTime();
+
+            for (ClientNode clientNode : clientNodes) {
+                scheduler.scheduleAtFixedRate(
+                        new LoadTask(clientNode, start, period),
+                        0,
+                        period,
+                        TimeUnit.NANOSECONDS);
+            }
+
+            Thread.sleep(TimeUnit.SECONDS.toMillis(this.duration));
+            scheduler.shutdownNow();
+            scheduler.awaitTermination(CONNECT_TIMEOUT, TimeUnit.SECONDS);
+
+            long elapsed = System.nanoTime() - start;
+            long[] gcAfter = LoadGenerator.gcSnapshot();
+
+            this.report(elapsed, gcBefore, gcAfter);
+        } finally {
+            scheduler.shutdownNow();
+            executor.shutdown();
+            if (rosCore != null) {
+                rosCore.shutdown();
+            }
+        }
+    }
+
+    private void await(CountDownLatch latch, String what) throws InterruptedException {
+        if (!latch.await(CONNECT_TIMEOUT, TimeUnit.SECONDS)) {
+            throw new DynamicReconfigureException("Timeout on start of " + what + " !");
+        }
+    }
+
+    private void report(long elapsed, long[] gcBefore, long[] gcAfter) {
+        long[] sorted = this.recorder.sorted();
+        double seconds = elapsed / 1e9d;
+
+        System.out.println(String.format(
+                "mode=%s clients=%d servers=%d target=%.1f req/s duration=%.1f s",
+                this.mode, this.clients, this.servers, this.rate, seconds));
+        System.out.println(String.format(
+                "completed=%d failed=%d throughput=%.1f req/s",
+                this.recorder.getCount(),
+                this.recorder.getFailures(),
+                this.recorder.getCount() / seconds));
+        System.out.println(String.format(
+                "latency ms : p50=%.3f p99=%.3f p999=%.3f max=%.3f",
+                LatencyRecorder.percentile(sorted, 50) / 1e6d,
+                LatencyRecorder.percentile(sorted, 99) / 1e6d,
+                LatencyRecorder.percentile(sorted, 99.9) / 1e6d,
+                LatencyRecorder.percentile(sorted, 100) / 1e6d));
+        System.out.println(String.format(
+                "gc : collections=%d pause=%d ms",
+                gcAfter[0] - gcBefore[0],
+                gcAfter[1] - gcBefore[1]));
+    }
+
+    /**
+     * Sum of collections count and time over all collectors.
+     * @return [count, time in ms]
+     */
+    private static long[] gcSnapshot() {
+        long[] result = new long[2];
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            result[0] += Math.max(0, gc.getCollectionCount());
+            result[1] += Math.max(0, gc.getCollectionTime());
+        }
+
+        return result;
+    }
+
+    /**
+     * Value of the next request, cycling inside the bounds of {@link LoadConfig#KP}.
+     * Two consecutive requests never send the same value, so a server never
+     * takes the no-op path and every request runs its callback.
+     */
+    private double nextValue() {
+        return LoadConfig.KP_MIN + this.requests.getAndIncrement() % (LoadConfig.KP_MAX - LoadConfig.KP_MIN + 1);
+    }
+
+    /** Periodic request of one client. */
+    private class LoadTask implements Runnable {
+
+        private final ClientNode clientNode;
+        private final long start;
+        private final long period;
+        private long sequence;
+
+        public LoadTask(ClientNode clientNode, long start, long period) {
+            this.clientNode = clientNode;
+            this.start = start;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            final long intended = this.start + this.sequence * this.period;
+            final CountDownLatch done = new CountDownLatch(1);
+            this.sequence++;
+
+            MessageFactory factory = this.clientNode.node.getTopicMessageFactory();
+            Config config = factory.newFromType(Config._TYPE);
+            Utils.encodeConfig(
+                    factory,
+                    LoadConfig.KP,
+                    Utils.TYPE_DBL,
+                    LoadGenerator.this.nextValue(),
+                    config);
+
+            this.clientNode.client.updateConfiguration(config, new ServiceResponseListener<ReconfigureResponse>() {
+
+                @Override
+                public void onSuccess(ReconfigureResponse response) {
+                    LoadGenerator.this.recorder.record(System.nanoTime() - intended);
+                    done.countDown();
+                }
+
+                @Override
+                public void onFailure(RemoteException e) {
+                    LoadGenerator.this.recorder.fail();
+                    done.countDown();
+                }
+            });
+
+            if (LoadGenerator.this.mode == Mode.SYNC) {
+                try {
+                    done.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    /** Node hosting one Server. */
+    private static class ServerNode extends AbstractNodeMain implements ReconfigureListener<LoadConfig> {
+
+        private final String name;
+        private final CountDownLatch ready;
+        private Server<LoadConfig> server;
+
+        public ServerNode(String name, CountDownLatch ready) {
+            this.name = name;
+            this.ready = ready;
+        }
+
+        @Override
+        public GraphName getDefaultNodeName() {
+            return GraphName.of(this.name);
+        }
+
+        @Override
+        public void onStart(ConnectedNode connectedNode) {
+            this.server = new Server<LoadConfig>(connectedNode, new LoadConfig(connectedNode), this);
+            this.ready.countDown();
+        }
+
+        @Override
+        public void onShutdown(Node node) {
+            if (this.server != null) {
+                this.server.close();
+            }
+        }
+
+        @Override
+        public LoadConfig onReconfigure(LoadConfig config, int level) {
+            return config;
+        }
+    }
+
+    /** Node hosting one Client. */
+    private static class ClientNode extends AbstractNodeMain {
+
+        private final String name;
+        private final String serverName;
+        private final CountDownLatch ready;
+        private ConnectedNode node;
+        private Client<LoadConfig> client;
+
+        public ClientNode(String name, String serverName, CountDownLatch ready) {
+            this.name = name;
+            this.serverName = serverName;
+            this.ready = ready;
+        }
+
+        @Override
+        public GraphName getDefaultNodeName() {
+            return GraphName.of(this.name);
+        }
+
+        @Override
+        public void onStart(ConnectedNode connectedNode) {
+            this.node = connectedNode;
+            this.client = new Client<LoadConfig>(connectedNode, this.serverName);
+
+            try {
+                this.client.getReadyFuture().get(CONNECT_TIMEOUT, TimeUnit.SECONDS);
+                this.ready.countDown();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                connectedNode.getLog().error("Client not ready : " + e.getMessage());
+            } catch (TimeoutException e) {
+                connectedNode.getLog().error("Client not ready before timeout !");
+            }
+        }
+
+        @Override
+        public void onShutdown(Node node) {
+            if (this.client != null) {
+                this.client.close();
+            }
+        }
+    }
+}
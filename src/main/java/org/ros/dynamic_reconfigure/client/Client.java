@@ -15,22 +15,42 @@
  */
 package org.ros.dynamic_reconfigure.client;
 
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
+import org.ros.dynamic_reconfigure.ConfigPublisher;
+import org.ros.dynamic_reconfigure.ConfigSchema;
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
 import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.ReconfigureTracer;
+import org.ros.dynamic_reconfigure.Utils;
 import org.ros.exception.RemoteException;
-import org.ros.exception.ServiceNotFoundException;
-import org.ros.internal.message.Message;
 import org.ros.message.MessageListener;
 import org.ros.node.ConnectedNode;
 import org.ros.node.service.ServiceClient;
 import org.ros.node.service.ServiceResponseListener;
-import org.ros.node.topic.Subscriber;
 
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import dynamic_reconfigure.BoolParameter;
 import dynamic_reconfigure.Config;
 import dynamic_reconfigure.ConfigDescription;
+import dynamic_reconfigure.DoubleParameter;
 import dynamic_reconfigure.Group;
-import dynamic_reconfigure.Reconfigure;
+import dynamic_reconfigure.GroupState;
+import dynamic_reconfigure.IntParameter;
 import dynamic_reconfigure.ReconfigureRequest;
 import dynamic_reconfigure.ReconfigureResponse;
+import dynamic_reconfigure.StrParameter;
 
 /**
  * Java dynamic_reconfigure client API.
@@ -44,71 +64,191 @@ public class Client <TConfig> {
     /** Connected Node */
     private ConnectedNode node;
     private String name;
-    private ServiceClient<ReconfigureRequest, ReconfigureResponse> service;
+    private boolean closed = false;
+    /** Completed once service, description and configuration are available. */
+    private final SettableFuture<Client<TConfig>> ready = SettableFuture.create();
 
-    // Topics and Services
-    private Subscriber<ConfigDescription> descriptionSubscriber;
-    private Subscriber<Config> configSubscriber;
+    // Topics and Services, and received state (shared by handles of the registry)
+    private final ServerConnection connection;
+    /** Registry of the connection, null if the connection is owned by this client. */
+    private final ClientRegistry registry;
 
     private MessageListener<ConfigDescription> internalDescriptionCallback;
     private MessageListener<Config> internalConfigCallback;
 
-    private ConfigDescription description = null;
-    private Config config = null;
     private Group groupDescription = null;
 
+    /** Codec of TConfig, null if no config class is given. */
+    private final ConfigCodec<TConfig> codec;
+    /** Last config decoded as TConfig, and its message. */
+    private volatile TConfig typedConfig = null;
+    private volatile Config typedConfigSource = null;
+
+    /** Exporter of propagation spans of requests, null if not tracing. */
+    private volatile ReconfigureTracer tracer = null;
+
+    /** Reactive publisher of received configurations. */
+    private final ConfigPublisher<Config> configPublisher = new ConfigPublisher<Config>();
+
+    /** Subscribers of parameter changes, by parameter name. */
+    private final ConcurrentMap<String, List<Object>> parameterListeners =
+            new ConcurrentHashMap<String, List<Object>>();
+    /** Subscribers of group changes, by group name. */
+    private final ConcurrentMap<String, List<Object>> groupListeners =
+            new ConcurrentHashMap<String, List<Object>>();
+
     public Client(ConnectedNode node, String name) {
         this(node, name, null, null);
     }
 
+    public Client(ConnectedNode node, String name, Class<TConfig> configClass) {
+        this(node, name, configClass, null, null);
+    }
+
+    public Client(ConnectedNode node, String name,
+            MessageListener<ConfigDescription> descriptionCallback,
+            MessageListener<Config> configCallback) {
+        this(node, name, null, descriptionCallback, configCallback);
+    }
+
     /**
-     * Connect to dynamic_reconfigure server and return a client object
+     * Connect to dynamic_reconfigure server and return a client object.
+     * Connection to the service is done in background (retried until the
+     * server is up), see {@link #getReadyFuture()}.
      * @param node current node.
      * @param name name of the server to connect to (usually the node name).
+     * @param configClass plain java class of the configuration (can be null), see {@link ConfigCodec}.
      * @param descriptionCallback internal use only as the API has not stabilized.
      * @param configCallback callback for server parameter changes.
      */
     public Client(ConnectedNode node, String name,
+            Class<TConfig> configClass,
             MessageListener<ConfigDescription> descriptionCallback,
             MessageListener<Config> configCallback) {
+        this(node, name, configClass, descriptionCallback, configCallback, null, null);
+    }
+
+    /**
+     * Handle on a connection of a registry, see {@link ClientRegistry}.
+     */
+    Client(ClientRegistry registry, ServerConnection connection, ConnectedNode node, Class<TConfig> configClass) {
+        this(node, connection.getName(), configClass, null, null, registry, connection);
+    }
+
+    private Client(ConnectedNode node, String name,
+            Class<TConfig> configClass,
+            MessageListener<ConfigDescription> descriptionCallback,
+            MessageListener<Config> configCallback,
+            ClientRegistry registry,
+            ServerConnection connection) {
 
         this.node = node;
         this.name = name;
+        this.codec = configClass != null ? ConfigCodec.of(configClass) : null;
 
         this.internalDescriptionCallback = descriptionCallback;
         this.internalConfigCallback = configCallback;
 
-        this.service                = this.getService("set_parameters", Reconfigure._TYPE);
-        this.descriptionSubscriber  = this.getSubscriber("parameter_descriptions", ConfigDescription._TYPE);
-        this.configSubscriber       = this.getSubscriber("parameter_updates", Config._TYPE);
+        this.registry = registry;
+        if (connection != null) {
+            this.connection = connection;
+        } else {
+            this.connection = new ServerConnection(node, name);
+            this.connection.acquire();
+        }
+        this.connection.attach(this);
+    }
 
-//        this.internalDescriptionCallback = new MessageListener<ConfigDescription>() {
-//
-//            @Override
-//            public void onNewMessage(ConfigDescription msg) {
-//                Client.this.description = msg;
-//            }
-//        };
-//
-//        this.internalConfigCallback = new MessageListener<Config>() {
-//
-//            @Override
-//            public void onNewMessage(Config msg) {
-//                Client.this.config = msg;
-//            }
-//        };
+    /**
+     * On description received by the connection.
+     * @param msg description.
+     */
+    void onDescription(ConfigDescription msg) {
+        this.descriptionsMsg();
+        this.checkReady();
+    }
 
+    /**
+     * On configuration received by the connection.
+     * @param msg configuration.
+     * @param diff changes from the previous configuration, null if no client has change listeners.
+     */
+    void onConfig(Config msg, ConfigDiff diff) {
+        this.traceUpdate(msg);
 
-        this.descriptionSubscriber.addMessageListener(this.internalDescriptionCallback);
-        this.configSubscriber.addMessageListener(this.internalConfigCallback);
+        if (diff != null && this.hasChangeListeners()) {
+            this.changesMsg(diff);
+        }
+        this.updatesMsg(msg);
+        this.configPublisher.offer(msg);
+        this.checkReady();
+    }
+
+    boolean hasChangeListeners() {
+        return !this.parameterListeners.isEmpty() || !this.groupListeners.isEmpty();
     }
 
     /**
-     * Return the latest received server configuration (wait to receive one if none have been received).
-     * @return Configuration instance.
+     * Return the latest received server configuration.
+     * @return Configuration instance, null if none have been received.
      */
     public Config getConfiguration() {
-        return this.config;
+        return this.connection.getConfiguration();
+    }
+
+    /**
+     * Return the latest received server configuration (wait to receive one if none have been received).
+     * @param timeout maximum time to wait.
+     * @param unit unit of timeout.
+     * @return Configuration instance, null if none have been received before timeout.
+     * @throws InterruptedException
+     */
+    public Config getConfiguration(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.connection.getConfiguration(timeout, unit);
+    }
+
+    /**
+     * Received configurations as a Reactive Streams publisher.
+     * Slow subscribers receive the latest configuration, not all of them.
+     * @return the publisher.
+     */
+    public Publisher<Config> getConfigPublisher() {
+        return this.configPublisher;
+    }
+
+    /**
+     * Future completed once the service, the description and a first
+     * configuration of the server are all available.
+     * @return readiness future of this client.
+     */
+    public ListenableFuture<Client<TConfig>> getReadyFuture() {
+        return this.ready;
+    }
+
+    public boolean isReady() {
+        return this.ready.isDone();
+    }
+
+    /**
+     * Return the latest received server configuration decoded as TConfig.
+     * Each received configuration is decoded once, on first call.
+     * @return Configuration instance, null if none have been received.
+     */
+    public TConfig getTypedConfiguration() {
+        Config current = this.connection.getConfiguration();
+        TConfig result = null;
+
+        if (current != null) {
+            synchronized (this) {
+                if (this.typedConfigSource != current) {
+                    this.typedConfig = this.getCodec().decode(current);
+                    this.typedConfigSource = current;
+                }
+                result = this.typedConfig;
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -117,7 +257,15 @@ public class Client <TConfig> {
      * @return Configuration Description instance.
      */
     public ConfigDescription getConfigDescription() {
-        return this.description;
+        return this.connection.getDescription();
+    }
+
+    /**
+     * Index of the description of the parameters for the server.
+     * @return schema, null if no description have been received.
+     */
+    public ConfigSchema getSchema() {
+        return this.connection.getSchema();
     }
 
     public Group getGroupDescription() {
@@ -129,39 +277,430 @@ public class Client <TConfig> {
      * @param config
      */
     public void updateConfiguration(TConfig config) {
-        ReconfigureRequest request = this.service.newMessage();
-        //request.setConfig(config);
+        this.updateConfiguration(
+                this.getCodec().encode(this.node.getTopicMessageFactory(), config),
+                null);
+    }
+
+    /**
+     * Send a raw configuration to the server.
+     * Once the description is received, the configuration is validated and
+     * clamped locally, so an invalid one is rejected without network call.
+     * The reply is flagged with {@link Utils#isRejected(Config)} if the
+     * request is over the admission limit of the server.
+     * @param config Configuration message (can be partial, not modified).
+     * @param listener Response listener (can be null).
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type.
+     * @throws DynamicReconfigureException if the service is not connected.
+     */
+    public void updateConfiguration(Config config, final ServiceResponseListener<ReconfigureResponse> listener) {
+        Config request = this.copy(config);
+        this.validate(request);
+        this.call(request, listener);
+    }
+
+    /**
+     * Send a raw configuration to the server, only if the server is still at
+     * the revision the configuration is based on.
+     * The reply is the current configuration, flagged with
+     * {@link Utils#isConflict(Config)} if the revision is stale.
+     * @param config Configuration message (can be partial, not modified).
+     * @param baseRevision Revision the configuration is based on (eg. {@link #getRevision()}).
+     * @param listener Response listener (can be null).
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type.
+     * @throws DynamicReconfigureException if the service is not connected.
+     */
+    public void compareAndSetConfiguration(Config config, int baseRevision,
+            final ServiceResponseListener<ReconfigureResponse> listener) {
+        Config request = this.copy(config);
+        this.validate(request);
+        Utils.encodeConfig(
+                this.node.getTopicMessageFactory(),
+                Utils.BASE_REVISION,
+                Utils.TYPE_INT,
+                baseRevision,
+                request);
+        this.call(request, listener);
+    }
+
+    /**
+     * Switch the server to one of its registered presets (eg. "docking").
+     * The reply is the current configuration (unchanged if the preset is unknown).
+     * @param name Name of the preset.
+     * @param listener Response listener (can be null).
+     * @throws DynamicReconfigureException if the service is not connected.
+     */
+    public void loadPreset(String name, final ServiceResponseListener<ReconfigureResponse> listener) {
+        Config config = this.node.getTopicMessageFactory().newFromType(Config._TYPE);
+        Utils.encodeConfig(
+                this.node.getTopicMessageFactory(),
+                Utils.PRESET,
+                Utils.TYPE_STR,
+                name,
+                config);
+        this.call(config, listener);
+    }
+
+    /**
+     * Revision of the latest received server configuration.
+     * @return the revision, -1 if none have been received, or if the server
+     * does not publish parameter_revisions (not a server of this library).
+     */
+    public int getRevision() {
+        Config current = this.connection.getConfiguration();
+        return current != null ? Utils.getRevision(current) : -1;
+    }
+
+    /**
+     * Return the latest received values of a group and its subgroups, in one call.
+     * Parameters of a disabled group are not published by the server.
+     * @param group name or path of the group (eg. "arm" or "Default/arm").
+     * @return Configuration of the group, null if none have been received.
+     * @throws DynamicReconfigureParameterException if the group is unknown.
+     */
+    public Config getGroupConfiguration(String group) {
+        Config current = this.connection.getConfiguration();
+        ConfigSchema currentSchema = this.connection.getSchema();
+        Config result = null;
+
+        if (current != null && currentSchema != null) {
+            Set<String> names = new HashSet<String>();
+            for (ConfigSchema.Param param : currentSchema.getGroupParams(group)) {
+                names.add(param.getName());
+            }
+
+            result = this.node.getTopicMessageFactory().newFromType(Config._TYPE);
+            for (BoolParameter param : current.getBools()) {
+                if (names.contains(param.getName())) {
+                    result.getBools().add(param);
+                }
+            }
+            for (IntParameter param : current.getInts()) {
+                if (names.contains(param.getName())) {
+                    result.getInts().add(param);
+                }
+            }
+            for (StrParameter param : current.getStrs()) {
+                if (names.contains(param.getName())) {
+                    result.getStrs().add(param);
+                }
+            }
+            for (DoubleParameter param : current.getDoubles()) {
+                if (names.contains(param.getName())) {
+                    result.getDoubles().add(param);
+                }
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Send values of a group and its subgroups to the server, in one call.
+     * @param group name or path of the group (eg. "arm" or "Default/arm").
+     * @param config Configuration message, with only parameters of the group (can be partial).
+     * @param listener Response listener (can be null).
+     * @throws DynamicReconfigureParameterException on unknown group, or parameter not in the group.
+     * @throws DynamicReconfigureException if the service is not connected.
+     */
+    public void updateGroupConfiguration(String group, Config config,
+            final ServiceResponseListener<ReconfigureResponse> listener) {
+        ConfigSchema currentSchema = this.connection.getSchema();
+
+        if (currentSchema != null) {
+            if (currentSchema.getGroupPath(group) == null) {
+                throw new DynamicReconfigureParameterException("Group " + group + " not found !");
+            }
+
+            List<String> names = new ArrayList<String>();
+            for (BoolParameter param : config.getBools()) {
+                names.add(param.getName());
+            }
+            for (IntParameter param : config.getInts()) {
+                names.add(param.getName());
+            }
+            for (StrParameter param : config.getStrs()) {
+                names.add(param.getName());
+            }
+            for (DoubleParameter param : config.getDoubles()) {
+                names.add(param.getName());
+            }
+
+            for (String name : names) {
+                ConfigSchema.Param param = currentSchema.get(name);
+                if (!Utils.isReserved(name) && (param == null || !currentSchema.isInGroup(param.getGroupId(), group))) {
+                    throw new DynamicReconfigureParameterException("Parameter " + name + " not in group " + group + " !");
+                }
+            }
+        }
+
+        this.updateConfiguration(config, listener);
+    }
+
+    /**
+     * Copy of a configuration of the caller, with its group states : the request
+     * is clamped and tagged (caller, trace) without changing the caller's one.
+     * @param config Configuration message.
+     * @return the copy.
+     */
+    private Config copy(Config config) {
+        Config result = Utils.copyConfig(this.node.getTopicMessageFactory(), config);
+        result.getGroups().addAll(config.getGroups());
+        return result;
+    }
+
+    /**
+     * Validate and clamp a configuration against the description (if received).
+     * Parameters of groups disabled on the server (or by the configuration) are not checked.
+     * @param config Configuration message.
+     */
+    private void validate(Config config) {
+        ConfigSchema currentSchema = this.connection.getSchema();
+        if (currentSchema != null) {
+            Config current = this.connection.getConfiguration();
+            List<GroupState> states = new ArrayList<GroupState>();
+            if (current != null) {
+                states.addAll(current.getGroups());
+            }
+            states.addAll(config.getGroups());
+            currentSchema.validate(config, states);
+        }
+    }
+
+    /**
+     * Send a request built by this client (tagged in place).
+     * @param config Configuration message, owned by this client.
+     * @param listener Response listener (can be null).
+     */
+    private void call(Config config, final ServiceResponseListener<ReconfigureResponse> listener) {
+        ServiceClient<ReconfigureRequest, ReconfigureResponse> currentService = this.getConnectedService();
+        // Cooperative tag for admission control, not checked by the server.
+        Utils.encodeConfig(
+                this.node.getTopicMessageFactory(),
+                Utils.CALLER,
+                Utils.TYPE_STR,
+                this.node.getName().toString(),
+                config);
+
+        final ReconfigureTracer currentTracer = this.tracer;
+        final String trace = currentTracer != null ? currentTracer.newTrace() : null;
+        if (trace != null) {
+            Utils.encodeConfig(this.node.getTopicMessageFactory(), Utils.TRACE, Utils.TYPE_STR, trace, config);
+        }
+        final long start = trace != null ? currentTracer.now() : 0;
+
+        ReconfigureRequest request = currentService.newMessage();
+        request.setConfig(config);
 
-        this.service.call(request, new ServiceResponseListener<ReconfigureResponse>() {
+        currentService.call(request, new ServiceResponseListener<ReconfigureResponse>() {
 
             @Override
-            public void onFailure(RemoteException arg0) {
-                // TODO Auto-generated method stub
+            public void onFailure(RemoteException e) {
+                if (trace != null) {
+                    currentTracer.span(trace, "client.call", Client.this.node.getName().toString(),
+                            start, currentTracer.now(), -1);
+                }
+                if (listener != null) {
+                    listener.onFailure(e);
+                }
+            }
+
+            @Override
+            public void onSuccess(ReconfigureResponse response) {
+                if (trace != null) {
+                    currentTracer.span(trace, "client.call", Client.this.node.getName().toString(),
+                            start, currentTracer.now(), Utils.getRevision(response.getConfig()));
+                }
+                if (listener != null) {
+                    listener.onSuccess(response);
+                }
+            }
+        });
+    }
 
+    /**
+     * Trace the requests of this client : the trace id is sent with the request,
+     * and the call is recorded. Configurations received with a trace id
+     * (from any client) are recorded too, see {@link ReconfigureTracer}.
+     * @param tracer Tracer, null to stop tracing.
+     */
+    public void setTracer(ReconfigureTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Record the receipt of a traced configuration.
+     * @param msg Received configuration.
+     */
+    private void traceUpdate(Config msg) {
+        ReconfigureTracer currentTracer = this.tracer;
+
+        if (currentTracer != null) {
+            String trace = Utils.getString(msg, Utils.TRACE, null);
+            if (trace != null) {
+                long now = currentTracer.now();
+                currentTracer.span(trace, "client.update", this.node.getName().toString(),
+                        now, now, Utils.getRevision(msg));
             }
+        }
+    }
 
+    /**
+     * Subscribe to the changes of a parameter.
+     * The listener is called when the value differs from the previous
+     * received configuration (and on the first one : a listener added after
+     * a configuration is received is called with the latest one).
+     * @param parameter name of the parameter.
+     * @param listener listener.
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type (once description is received).
+     */
+    public void subscribe(String parameter, BoolListener listener) {
+        this.addListener(this.parameterListeners, this.check(parameter, Utils.TYPE_BOOL), listener);
+    }
+
+    /** See {@link #subscribe(String, BoolListener)}. */
+    public void subscribe(String parameter, IntListener listener) {
+        this.addListener(this.parameterListeners, this.check(parameter, Utils.TYPE_INT), listener);
+    }
+
+    /** See {@link #subscribe(String, BoolListener)}. */
+    public void subscribe(String parameter, StrListener listener) {
+        this.addListener(this.parameterListeners, this.check(parameter, Utils.TYPE_STR), listener);
+    }
+
+    /** See {@link #subscribe(String, BoolListener)}. */
+    public void subscribe(String parameter, DoubleListener listener) {
+        this.addListener(this.parameterListeners, this.check(parameter, Utils.TYPE_DBL), listener);
+    }
+
+    /**
+     * Subscribe to the changes of a group : the listener is called once
+     * per received configuration changing any parameter of the group or its subgroups.
+     * @param group name of the group.
+     * @param listener listener.
+     */
+    public void subscribeGroup(String group, GroupListener listener) {
+        this.addListener(this.groupListeners, group, listener);
+    }
+
+    /**
+     * Remove a parameter or group listener from all its subscriptions.
+     * @param listener listener to remove.
+     */
+    public void unsubscribe(final Object listener) {
+        // In order with the dispatches, as the subscription.
+        this.connection.dispatch(new MessageListener<Config>() {
             @Override
-            public void onSuccess(ReconfigureResponse arg0) {
-                // TODO Auto-generated method stub
+            public void onNewMessage(Config current) {
+                for (List<Object> listeners : Client.this.parameterListeners.values()) {
+                    listeners.remove(listener);
+                }
+                for (List<Object> listeners : Client.this.groupListeners.values()) {
+                    listeners.remove(listener);
+                }
+            }
+        });
+    }
 
+    private String check(String parameter, String type) {
+        ConfigSchema currentSchema = this.connection.getSchema();
+
+        if (currentSchema != null) {
+            ConfigSchema.Param param = currentSchema.get(parameter);
+            if (param == null) {
+                throw new DynamicReconfigureParameterException("Parameter " + parameter + " not found !");
+            }
+            if (!param.getType().equals(type)) {
+                throw new DynamicReconfigureParameterException(String.format(
+                        "Parameter %s has type %s, not %s !", parameter, param.getType(), type));
+            }
+        }
+
+        return parameter;
+    }
+
+    /**
+     * Register a listener in order with the dispatches, and replay it the
+     * latest received configuration : it sees each configuration once.
+     */
+    private void addListener(
+            final ConcurrentMap<String, List<Object>> listeners,
+            final String name,
+            final Object listener) {
+        this.connection.dispatch(new MessageListener<Config>() {
+            @Override
+            public void onNewMessage(Config current) {
+                List<Object> list = listeners.get(name);
+                if (list == null) {
+                    listeners.putIfAbsent(name, new CopyOnWriteArrayList<Object>());
+                    list = listeners.get(name);
+                }
+                list.add(listener);
+
+                if (current != null) {
+                    Client.this.changesMsg(new ConfigDiff(null, current), listener);
+                }
             }
         });
     }
 
     /**
-     * Changes the servers group configuration.
+     * Changes the servers group configuration : parameters of a disabled group
+     * (and its subgroups) are ignored by the server, do not trigger its callback
+     * and are not published, until the group is enabled again.
+     * @param states enabled state by group name (eg. "arm" : false).
+     * @param listener Response listener (can be null).
+     * @throws DynamicReconfigureParameterException on unknown group.
+     * @throws DynamicReconfigureException if the service is not connected.
      */
-    public void updateGroups() {
+    public void updateGroups(Map<String, Boolean> states, final ServiceResponseListener<ReconfigureResponse> listener) {
+        ConfigDescription currentDescription = this.connection.getDescription();
+        Config config = this.node.getTopicMessageFactory().newFromType(Config._TYPE);
+
+        for (Map.Entry<String, Boolean> entry : states.entrySet()) {
+            GroupState state = this.node.getTopicMessageFactory().newFromType(GroupState._TYPE);
+            state.setName(entry.getKey());
+            state.setState(entry.getValue());
+
+            if (currentDescription != null) {
+                Group group = null;
+                for (Group candidate : currentDescription.getGroups()) {
+                    if (candidate.getName().equals(entry.getKey())) {
+                        group = candidate;
+                        break;
+                    }
+                }
+                if (group == null) {
+                    throw new DynamicReconfigureParameterException("Group " + entry.getKey() + " not found !");
+                }
+                state.setId(group.getId());
+                state.setParent(group.getParent());
+            }
+
+            config.getGroups().add(state);
+        }
 
+        this.call(config, listener);
     }
 
     /**
      * Close connections to the server.
      */
     public void close() {
-        this.service.shutdown();
-        this.descriptionSubscriber.shutdown();
-        this.configSubscriber.shutdown();
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+
+        this.connection.detach(this);
+        if (this.registry != null) {
+            this.registry.release(this.connection);
+        } else {
+            this.connection.release();
+        }
+        this.configPublisher.complete();
     }
 
     /**
@@ -179,7 +718,7 @@ public class Client <TConfig> {
     public void setConfigCallback(MessageListener<Config> listener) {
         this.internalConfigCallback = listener;
         if (this.internalConfigCallback != null) {
-            this.internalConfigCallback.onNewMessage(this.config);
+            this.internalConfigCallback.onNewMessage(this.connection.getConfiguration());
         }
     }
 
@@ -197,36 +736,165 @@ public class Client <TConfig> {
     public void setDescriptionCallback(MessageListener<ConfigDescription> listener) {
         this.internalDescriptionCallback = listener;
         if (this.internalDescriptionCallback != null) {
-            this.internalDescriptionCallback.onNewMessage(this.description);
+            this.internalDescriptionCallback.onNewMessage(this.connection.getDescription());
+        }
+    }
+
+    /**
+     * Codec of TConfig.
+     * @return the codec.
+     */
+    protected ConfigCodec<TConfig> getCodec() {
+        if (this.codec == null) {
+            throw new DynamicReconfigureException("No configuration class given to the client !");
         }
+        return this.codec;
     }
 
-    protected <T extends Message, U extends Message> ServiceClient<T, U> getService(String suffix, String type) {
-        ServiceClient<T, U> result = null;
+    /**
+     * Connected service, or schedule a reconnection.
+     * @return the service.
+     * @throws DynamicReconfigureException if the service is not connected.
+     */
+    private ServiceClient<ReconfigureRequest, ReconfigureResponse> getConnectedService() {
+        return this.connection.getConnectedService();
+    }
 
-        try {
-            result = this.node.newServiceClient(name +"/" + suffix, type);
-        } catch (ServiceNotFoundException e) {
-            e.printStackTrace();
+    /** Complete the readiness future once service, description and configuration are available. */
+    void checkReady() {
+        if (!this.ready.isDone() && this.connection.isReady()) {
+            this.ready.set(this);
         }
+    }
 
-        return result;
+    protected void updatesMsg(Config config) {
+        if (this.internalConfigCallback != null) {
+            this.internalConfigCallback.onNewMessage(config);
+        }
     }
 
-    protected <T extends Message> Subscriber<T> getSubscriber(String suffix, String type) {
-        Subscriber<T> result = null;
+    /**
+     * Dispatch the changes of a received configuration to subscribers.
+     * @param diff changes, shared by all subscribers.
+     */
+    protected void changesMsg(ConfigDiff diff) {
+        this.changesMsg(diff, null);
+    }
 
-        result = this.node.newSubscriber(name + "/" + suffix, type);
+    /**
+     * Dispatch the changes of a configuration to subscribers.
+     * @param diff changes.
+     * @param only the single listener to call, null for all.
+     */
+    private void changesMsg(ConfigDiff diff, Object only) {
+        for (BoolParameter param : diff.getBools()) {
+            List<Object> listeners = this.parameterListeners.get(param.getName());
+            if (listeners != null) {
+                for (Object listener : listeners) {
+                    if (only != null && listener != only) {
+                        continue;
+                    }
+                    try {
+                        ((BoolListener) listener).onChange(param.getName(), param.getValue());
+                    } catch (RuntimeException e) {
+                        this.node.getLog().error("Listener of " + param.getName() + " failed.", e);
+                    }
+                }
+            }
+        }
+        for (IntParameter param : diff.getInts()) {
+            List<Object> listeners = this.parameterListeners.get(param.getName());
+            if (listeners != null) {
+                for (Object listener : listeners) {
+                    if (only != null && listener != only) {
+                        continue;
+                    }
+                    try {
+                        ((IntListener) listener).onChange(param.getName(), param.getValue());
+                    } catch (RuntimeException e) {
+                        this.node.getLog().error("Listener of " + param.getName() + " failed.", e);
+                    }
+                }
+            }
+        }
+        for (StrParameter param : diff.getStrs()) {
+            List<Object> listeners = this.parameterListeners.get(param.getName());
+            if (listeners != null) {
+                for (Object listener : listeners) {
+                    if (only != null && listener != only) {
+                        continue;
+                    }
+                    try {
+                        ((StrListener) listener).onChange(param.getName(), param.getValue());
+                    } catch (RuntimeException e) {
+                        this.node.getLog().error("Listener of " + param.getName() + " failed.", e);
+                    }
+                }
+            }
+        }
+        for (DoubleParameter param : diff.getDoubles()) {
+            List<Object> listeners = this.parameterListeners.get(param.getName());
+            if (listeners != null) {
+                for (Object listener : listeners) {
+                    if (only != null && listener != only) {
+                        continue;
+                    }
+                    try {
+                        ((DoubleListener) listener).onChange(param.getName(), param.getValue());
+                    } catch (RuntimeException e) {
+                        this.node.getLog().error("Listener of " + param.getName() + " failed.", e);
+                    }
+                }
+            }
+        }
 
-        return result;
+        ConfigSchema currentSchema = this.connection.getSchema();
+        ConfigDescription currentDescription = this.connection.getDescription();
+        if (!this.groupListeners.isEmpty() && currentSchema != null && currentDescription != null) {
+            Set<Integer> groups = new HashSet<Integer>();
+            for (String name : diff.getNames()) {
+                ConfigSchema.Param param = currentSchema.get(name);
+                if (param != null) {
+                    groups.add(param.getGroupId());
+                }
+            }
+
+            for (Group group : currentDescription.getGroups()) {
+                List<Object> listeners = this.groupListeners.get(group.getName());
+                if (listeners != null && this.changesGroup(currentSchema, groups, group.getName())) {
+                    for (Object listener : listeners) {
+                        if (only != null && listener != only) {
+                            continue;
+                        }
+                        try {
+                            ((GroupListener) listener).onChange(group.getName(), diff);
+                        } catch (RuntimeException e) {
+                            this.node.getLog().error("Listener of group " + group.getName() + " failed.", e);
+                        }
+                    }
+                }
+            }
+        }
     }
 
-    protected void updatesMsg(Config config) {
-        this.internalConfigCallback.onNewMessage(config);
+    /** Check if a changed parameter is in a group or its subgroups. */
+    private boolean changesGroup(ConfigSchema currentSchema, Set<Integer> changedGroups, String group) {
+        boolean result = false;
+
+        for (Integer id : changedGroups) {
+            if (currentSchema.isInGroup(id, group)) {
+                result = true;
+                break;
+            }
+        }
+
+        return result;
     }
 
     protected void descriptionsMsg() {
-
+        if (this.internalDescriptionCallback != null) {
+            this.internalDescriptionCallback.onNewMessage(this.connection.getDescription());
+        }
     }
 
     /**
@@ -251,4 +919,33 @@ public class Client <TConfig> {
         }
         return result;
     }
+
+    /** Listener of a bool parameter, see {@link Client#subscribe(String, BoolListener)}. */
+    public interface BoolListener {
+        void onChange(String name, boolean value);
+    }
+
+    /** Listener of an int parameter, see {@link Client#subscribe(String, IntListener)}. */
+    public interface IntListener {
+        void onChange(String name, int value);
+    }
+
+    /** Listener of a str parameter, see {@link Client#subscribe(String, StrListener)}. */
+    public interface StrListener {
+        void onChange(String name, String value);
+    }
+
+    /** Listener of a double parameter, see {@link Client#subscribe(String, DoubleListener)}. */
+    public interface DoubleListener {
+        void onChange(String name, double value);
+    }
+
+    /** Listener of a group, see {@link Client#subscribeGroup(String, GroupListener)}. */
+    public interface GroupListener {
+        /**
+         * @param group name of the group.
+         * @param diff all changes of the configuration (shared by all listeners).
+         */
+        void onChange(String group, ConfigDiff diff);
+    }
 }
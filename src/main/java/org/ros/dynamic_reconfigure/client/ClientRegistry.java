@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.client;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ros.node.ConnectedNode;
+
+/**
+ * Registry of the server connections of a node, shared by its {@link Client} handles :
+ * many components pointing at the same server use one pair of subscribers,
+ * one service client, and one received state. Each update is handled once
+ * and dispatched in memory to every handle.
+ *
+ *   Client<MyConfig> client = ClientRegistry.of(connectedNode).newClient("/controller", MyConfig.class);
+ *
+ * A connection is closed with its last handle ({@link Client#close()}).
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class ClientRegistry {
+
+    /** Registries by node. */
+    private static final ConcurrentMap<ConnectedNode, ClientRegistry> REGISTRIES =
+            new ConcurrentHashMap<ConnectedNode, ClientRegistry>();
+
+    private final ConnectedNode node;
+    /** Connections by resolved server name. */
+    private final Map<String, ServerConnection> connections = new HashMap<String, ServerConnection>();
+    /** Removed from the registries with its last connection : new clients go to the next registry. */
+    private boolean retired = false;
+
+    private ClientRegistry(ConnectedNode node) {
+        this.node = node;
+    }
+
+    /**
+     * Registry of a node.
+     * @param node current node.
+     * @return the registry (shared).
+     */
+    public static ClientRegistry of(ConnectedNode node) {
+        ClientRegistry result = REGISTRIES.get(node);
+
+        if (result == null) {
+            REGISTRIES.putIfAbsent(node, new ClientRegistry(node));
+            result = REGISTRIES.get(node);
+        }
+
+        return result;
+    }
+
+    /**
+     * New handle on a server, without config class.
+     * @param name name of the server (usually the node name).
+     * @return the client.
+     */
+    public Client<Object> newClient(String name) {
+        return this.newClient(name, null);
+    }
+
+    /**
+     * New handle on a server, sharing the connection of the other handles on this server.
+     * @param name name of the server (usually the node name).
+     * @param configClass plain java class of the configuration (can be null), see {@link ConfigCodec}.
+     * @return the client.
+     */
+    public <TConfig> Client<TConfig> newClient(String name, Class<TConfig> configClass) {
+        String key = this.node.resolveName(name).toString();
+        ServerConnection connection;
+
+        synchronized (this) {
+            if (this.retired) {
+                connection = null;
+            } else {
+                connection = this.connections.get(key);
+                if (connection == null || !connection.acquire()) {
+                    connection = new ServerConnection(this.node, name);
+                    connection.acquire();
+                    this.connections.put(key, connection);
+                }
+            }
+        }
+
+        if (connection == null) {
+            // Released concurrently with the last connection of this registry.
+            return ClientRegistry.of(this.node).newClient(name, configClass);
+        }
+
+        // Attach outside of the registry lock (attach replays the state to the client).
+        return new Client<TConfig>(this, connection, this.node, configClass);
+    }
+
+    /**
+     * Release a handle, and forget its connection if it was the last one.
+     * @param connection of the handle.
+     */
+    void release(ServerConnection connection) {
+        synchronized (this) {
+            if (connection.release()) {
+                String key = this.node.resolveName(connection.getName()).toString();
+                if (this.connections.get(key) == connection) {
+                    this.connections.remove(key);
+                }
+                if (this.connections.isEmpty()) {
+                    this.retired = true;
+                    REGISTRIES.remove(this.node, this);
+                }
+            }
+        }
+    }
+
+    /**
+     * Number of open server connections.
+     * @return count.
+     */
+    public synchronized int getConnectionCount() {
+        return this.connections.size();
+    }
+}
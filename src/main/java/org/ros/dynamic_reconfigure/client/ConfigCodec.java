@@ -0,0 +1,336 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.client;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Map a plain java config class to and from the Config message.
+ *
+ * Each field (not static, transient or final) of type int, double, boolean
+ * or String (or boxed) is the parameter of the same name.
+ * Accessors are resolved once per class as method handles.
+ *
+ * @param <T> Plain java config class, with a no-argument constructor.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class ConfigCodec<T> {
+
+    /** Codecs by config class. */
+    private static final ConcurrentMap<Class<?>, ConfigCodec<?>> CODECS =
+            new ConcurrentHashMap<Class<?>, ConfigCodec<?>>();
+
+    private final Class<T> type;
+    private final MethodHandle constructor;
+    private final Accessor[] accessors;
+    private final Map<String, Accessor> accessorsByName;
+
+    /**
+     * Codec of a config class.
+     * @param type Plain java config class.
+     * @return the codec (shared).
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ConfigCodec<T> of(Class<T> type) {
+        ConfigCodec<T> result = (ConfigCodec<T>) CODECS.get(type);
+
+        if (result == null) {
+            CODECS.putIfAbsent(type, new ConfigCodec<T>(type));
+            result = (ConfigCodec<T>) CODECS.get(type);
+        }
+
+        return result;
+    }
+
+    private ConfigCodec(Class<T> type) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        List<Accessor> fields = new ArrayList<Accessor>();
+
+        this.type = type;
+        this.accessorsByName = new HashMap<String, Accessor>();
+
+        try {
+            this.constructor = lookup.findConstructor(type, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+
+            for (Class<?> clazz = type; clazz != null && clazz != Object.class; clazz = clazz.getSuperclass()) {
+                for (Field field : clazz.getDeclaredFields()) {
+                    String paramType = ConfigCodec.paramType(field);
+                    if (paramType != null && !this.accessorsByName.containsKey(field.getName())) {
+                        field.setAccessible(true);
+                        Accessor accessor = new Accessor(
+                                field.getName(),
+                                paramType,
+                                lookup.unreflectGetter(field).asType(
+                                        MethodType.methodType(field.getType(), Object.class)),
+                                lookup.unreflectSetter(field).asType(
+                                        MethodType.methodType(void.class, Object.class, field.getType())));
+                        fields.add(accessor);
+                        this.accessorsByName.put(accessor.name, accessor);
+                    }
+                }
+            }
+        } catch (NoSuchMethodException e) {
+            throw new DynamicReconfigureParameterException(
+                    type.getName() + " has no constructor without argument !");
+        } catch (IllegalAccessException e) {
+            throw new DynamicReconfigureParameterException(
+                    type.getName() + " is not accessible : " + e.getMessage());
+        }
+
+        this.accessors = fields.toArray(new Accessor[fields.size()]);
+    }
+
+    /**
+     * Parameter type of a field.
+     * @param field of config class.
+     * @return type of parameter, or null if the field is not a parameter.
+     */
+    private static String paramType(Field field) {
+        String result = null;
+        int modifiers = field.getModifiers();
+
+        if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers) && !Modifier.isFinal(modifiers)) {
+            Class<?> clazz = field.getType();
+            if (clazz == int.class || clazz == Integer.class) {
+                result = Utils.TYPE_INT;
+            } else if (clazz == double.class || clazz == Double.class) {
+                result = Utils.TYPE_DBL;
+            } else if (clazz == boolean.class || clazz == Boolean.class) {
+                result = Utils.TYPE_BOOL;
+            } else if (clazz == String.class) {
+                result = Utils.TYPE_STR;
+            }
+        }
+
+        return result;
+    }
+
+    public Class<T> getType() {
+        return this.type;
+    }
+
+    /**
+     * Decode a config message into a new instance.
+     * @param config Config message.
+     * @return new instance with values of config.
+     */
+    public T decode(Config config) {
+        T result;
+
+        try {
+            result = this.type.cast(this.constructor.invokeExact());
+        } catch (Throwable e) {
+            throw new DynamicReconfigureParameterException(
+                    "Unable to create " + this.type.getName() + " : " + e);
+        }
+
+        return this.decode(config, result);
+    }
+
+    /**
+     * Decode a config message into an existing instance.
+     * Parameters of config without field (or with an other type) are ignored.
+     * @param config Config message.
+     * @param target Instance to update.
+     * @return target.
+     */
+    public T decode(Config config, T target) {
+        Object object = target;
+
+        try {
+            for (IntParameter param : config.getInts()) {
+                Accessor accessor = this.accessorsByName.get(param.getName());
+                if (accessor != null && Utils.TYPE_INT.equals(accessor.type)) {
+                    accessor.setInt(object, param.getValue());
+                }
+            }
+            for (DoubleParameter param : config.getDoubles()) {
+                Accessor accessor = this.accessorsByName.get(param.getName());
+                if (accessor != null && Utils.TYPE_DBL.equals(accessor.type)) {
+                    accessor.setDouble(object, param.getValue());
+                }
+            }
+            for (BoolParameter param : config.getBools()) {
+                Accessor accessor = this.accessorsByName.get(param.getName());
+                if (accessor != null && Utils.TYPE_BOOL.equals(accessor.type)) {
+                    accessor.setBool(object, param.getValue());
+                }
+            }
+            for (StrParameter param : config.getStrs()) {
+                Accessor accessor = this.accessorsByName.get(param.getName());
+                if (accessor != null && Utils.TYPE_STR.equals(accessor.type)) {
+                    accessor.setter.invokeExact(object, param.getValue());
+                }
+            }
+        } catch (Throwable e) {
+            throw new DynamicReconfigureParameterException(
+                    "Unable to decode " + this.type.getName() + " : " + e);
+        }
+
+        return target;
+    }
+
+    /**
+     * Encode an instance into a new config message.
+     * Null boxed or String fields are not encoded.
+     * @param factory for make new Ros message.
+     * @param source Instance to encode.
+     * @return config message with all fields.
+     */
+    public Config encode(MessageFactory factory, T source) {
+        Config result = factory.newFromType(Config._TYPE);
+        Object object = source;
+
+        try {
+            for (Accessor accessor : this.accessors) {
+                if (accessor.isNull(object)) {
+                    continue;
+                }
+
+                if (Utils.TYPE_INT.equals(accessor.type)) {
+                    IntParameter param = factory.newFromType(IntParameter._TYPE);
+                    param.setName(accessor.name);
+                    param.setValue(accessor.getInt(object));
+                    result.getInts().add(param);
+                } else if (Utils.TYPE_DBL.equals(accessor.type)) {
+                    DoubleParameter param = factory.newFromType(DoubleParameter._TYPE);
+                    param.setName(accessor.name);
+                    param.setValue(accessor.getDouble(object));
+                    result.getDoubles().add(param);
+                } else if (Utils.TYPE_BOOL.equals(accessor.type)) {
+                    BoolParameter param = factory.newFromType(BoolParameter._TYPE);
+                    param.setName(accessor.name);
+                    param.setValue(accessor.getBool(object));
+                    result.getBools().add(param);
+                } else {
+                    StrParameter param = factory.newFromType(StrParameter._TYPE);
+                    param.setName(accessor.name);
+                    param.setValue((String) accessor.getter.invokeExact(object));
+                    result.getStrs().add(param);
+                }
+            }
+        } catch (Throwable e) {
+            throw new DynamicReconfigureParameterException(
+                    "Unable to encode " + this.type.getName() + " : " + e);
+        }
+
+        return result;
+    }
+
+    /** Precompiled accessor of one field. */
+    private static final class Accessor {
+
+        private final String name;
+        private final String type;
+        private final boolean primitive;
+        /** Getter as (Object) field type. */
+        private final MethodHandle getter;
+        /** Setter as (Object, field type) void. */
+        private final MethodHandle setter;
+        /** Getter as (Object) Object, for null check of boxed fields. */
+        private final MethodHandle boxedGetter;
+        /** Setter as (Object, primitive) void. */
+        private final MethodHandle primitiveSetter;
+        /** Getter as (Object) primitive. */
+        private final MethodHandle primitiveGetter;
+
+        public Accessor(String name, String type, MethodHandle getter, MethodHandle setter) {
+            this.name = name;
+            this.type = type;
+            this.getter = getter;
+            this.setter = setter;
+
+            Class<?> fieldType = getter.type().returnType();
+            Class<?> primitiveType = Accessor.primitiveOf(type);
+            this.primitive = fieldType.isPrimitive();
+            this.boxedGetter = getter.asType(MethodType.methodType(Object.class, Object.class));
+
+            if (primitiveType != null) {
+                this.primitiveGetter = getter.asType(
+                        MethodType.methodType(primitiveType, Object.class));
+                this.primitiveSetter = setter.asType(
+                        MethodType.methodType(void.class, Object.class, primitiveType));
+            } else {
+                this.primitiveGetter = null;
+                this.primitiveSetter = null;
+            }
+        }
+
+        private static Class<?> primitiveOf(String type) {
+            Class<?> result = null;
+
+            if (Utils.TYPE_INT.equals(type)) {
+                result = int.class;
+            } else if (Utils.TYPE_DBL.equals(type)) {
+                result = double.class;
+            } else if (Utils.TYPE_BOOL.equals(type)) {
+                result = boolean.class;
+            }
+
+            return result;
+        }
+
+        private boolean isNull(Object target) throws Throwable {
+            return !this.primitive && this.boxedGetter.invokeExact(target) == null;
+        }
+
+        private int getInt(Object target) throws Throwable {
+            return (int) this.primitiveGetter.invokeExact(target);
+        }
+
+        private double getDouble(Object target) throws Throwable {
+            return (double) this.primitiveGetter.invokeExact(target);
+        }
+
+        private boolean getBool(Object target) throws Throwable {
+            return (boolean) this.primitiveGetter.invokeExact(target);
+        }
+
+        private void setInt(Object target, int value) throws Throwable {
+            this.primitiveSetter.invokeExact(target, value);
+        }
+
+        private void setDouble(Object target, double value) throws Throwable {
+            this.primitiveSetter.invokeExact(target, value);
+        }
+
+        private void setBool(Object target, boolean value) throws Throwable {
+            this.primitiveSetter.invokeExact(target, value);
+        }
+    }
+}
@@ -0,0 +1,209 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.ros.dynamic_reconfigure.Utils;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Parameters changed between two consecutive configurations
+ * (reserved parameters, eg. revision, are ignored).
+ * Computed once per received configuration, and shared by all subscribers.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ConfigDiff {
+
+    private final Config config;
+    private final List<BoolParameter> bools = new ArrayList<BoolParameter>();
+    private final List<IntParameter> ints = new ArrayList<IntParameter>();
+    private final List<StrParameter> strs = new ArrayList<StrParameter>();
+    private final List<DoubleParameter> doubles = new ArrayList<DoubleParameter>();
+    private final Set<String> names = new HashSet<String>();
+
+    /**
+     * Diff of two configurations.
+     * Parameters are compared by position while both configurations have
+     * the same names (the usual case), by name otherwise.
+     * @param previous previous configuration, null if none (all parameters changed).
+     * @param config new configuration.
+     */
+    public ConfigDiff(Config previous, Config config) {
+        this.config = config;
+
+        List<BoolParameter> previousBools = previous != null
+                ? previous.getBools() : Collections.<BoolParameter>emptyList();
+        Map<String, BoolParameter> boolsByName = null;
+        for (int i = 0; i < config.getBools().size(); i++) {
+            BoolParameter param = config.getBools().get(i);
+            if (Utils.isReserved(param.getName())) {
+                continue;
+            }
+            BoolParameter old = null;
+            if (boolsByName == null && i < previousBools.size()
+                    && previousBools.get(i).getName().equals(param.getName())) {
+                old = previousBools.get(i);
+            } else {
+                if (boolsByName == null) {
+                    boolsByName = new HashMap<String, BoolParameter>();
+                    for (BoolParameter p : previousBools) {
+                        boolsByName.put(p.getName(), p);
+                    }
+                }
+                old = boolsByName.get(param.getName());
+            }
+            if (old == null || old.getValue() != param.getValue()) {
+                this.bools.add(param);
+                this.names.add(param.getName());
+            }
+        }
+
+        List<IntParameter> previousInts = previous != null
+                ? previous.getInts() : Collections.<IntParameter>emptyList();
+        Map<String, IntParameter> intsByName = null;
+        for (int i = 0; i < config.getInts().size(); i++) {
+            IntParameter param = config.getInts().get(i);
+            if (Utils.isReserved(param.getName())) {
+                continue;
+            }
+            IntParameter old = null;
+            if (intsByName == null && i < previousInts.size()
+                    && previousInts.get(i).getName().equals(param.getName())) {
+                old = previousInts.get(i);
+            } else {
+                if (intsByName == null) {
+                    intsByName = new HashMap<String, IntParameter>();
+                    for (IntParameter p : previousInts) {
+                        intsByName.put(p.getName(), p);
+                    }
+                }
+                old = intsByName.get(param.getName());
+            }
+            if (old == null || old.getValue() != param.getValue()) {
+                this.ints.add(param);
+                this.names.add(param.getName());
+            }
+        }
+
+        List<StrParameter> previousStrs = previous != null
+                ? previous.getStrs() : Collections.<StrParameter>emptyList();
+        Map<String, StrParameter> strsByName = null;
+        for (int i = 0; i < config.getStrs().size(); i++) {
+            StrParameter param = config.getStrs().get(i);
+            if (Utils.isReserved(param.getName())) {
+                continue;
+            }
+            StrParameter old = null;
+            if (strsByName == null && i < previousStrs.size()
+                    && previousStrs.get(i).getName().equals(param.getName())) {
+                old = previousStrs.get(i);
+            } else {
+                if (strsByName == null) {
+                    strsByName = new HashMap<String, StrParameter>();
+                    for (StrParameter p : previousStrs) {
+                        strsByName.put(p.getName(), p);
+                    }
+                }
+                old = strsByName.get(param.getName());
+            }
+            if (old == null || !old.getValue().equals(param.getValue())) {
+                this.strs.add(param);
+                this.names.add(param.getName());
+            }
+        }
+
+        List<DoubleParameter> previousDoubles = previous != null
+                ? previous.getDoubles() : Collections.<DoubleParameter>emptyList();
+        Map<String, DoubleParameter> doublesByName = null;
+        for (int i = 0; i < config.getDoubles().size(); i++) {
+            DoubleParameter param = config.getDoubles().get(i);
+            if (Utils.isReserved(param.getName())) {
+                continue;
+            }
+            DoubleParameter old = null;
+            if (doublesByName == null && i < previousDoubles.size()
+                    && previousDoubles.get(i).getName().equals(param.getName())) {
+                old = previousDoubles.get(i);
+            } else {
+                if (doublesByName == null) {
+                    doublesByName = new HashMap<String, DoubleParameter>();
+                    for (DoubleParameter p : previousDoubles) {
+                        doublesByName.put(p.getName(), p);
+                    }
+                }
+                old = doublesByName.get(param.getName());
+            }
+            if (old == null || Double.compare(old.getValue(), param.getValue()) != 0) {
+                this.doubles.add(param);
+                this.names.add(param.getName());
+            }
+        }
+    }
+
+    /**
+     * New configuration.
+     * @return the configuration.
+     */
+    public Config getConfig() {
+        return this.config;
+    }
+
+    public boolean isEmpty() {
+        return this.names.isEmpty();
+    }
+
+    public boolean isChanged(String name) {
+        return this.names.contains(name);
+    }
+
+    /**
+     * Names of changed parameters.
+     * @return names.
+     */
+    public Set<String> getNames() {
+        return Collections.unmodifiableSet(this.names);
+    }
+
+    public List<BoolParameter> getBools() {
+        return Collections.unmodifiableList(this.bools);
+    }
+
+    public List<IntParameter> getInts() {
+        return Collections.unmodifiableList(this.ints);
+    }
+
+    public List<StrParameter> getStrs() {
+        return Collections.unmodifiableList(this.strs);
+    }
+
+    public List<DoubleParameter> getDoubles() {
+        return Collections.unmodifiableList(this.doubles);
+    }
+}
@@ -0,0 +1,441 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.client;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ros.dynamic_reconfigure.ConfigSchema;
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.exception.ServiceNotFoundException;
+import org.ros.message.MessageListener;
+import org.ros.node.ConnectedNode;
+import org.ros.node.service.ServiceClient;
+import org.ros.node.topic.Subscriber;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+import dynamic_reconfigure.Reconfigure;
+import dynamic_reconfigure.ReconfigureRequest;
+import dynamic_reconfigure.ReconfigureResponse;
+
+/**
+ * Connection to a remote server : subscribers of parameter_descriptions,
+ * parameter_updates and parameter_revisions, set_parameters service, and the
+ * received state (description and its index, latest configuration).
+ * Once a configuration is received on parameter_revisions (servers of this
+ * library, with the revision and trace), parameter_updates is ignored.
+ * Each message is handled once, and dispatched to all the attached {@link Client}.
+ * Dispatches are queued in order under the state lock, and run outside of it
+ * one at a time (clients callbacks never run with the lock held).
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+final class ServerConnection {
+
+    /** First delay of service connection retry, in milliseconds. */
+    private static final long RETRY_MIN = 100;
+    /** Maximum delay of service connection retry, in milliseconds. */
+    private static final long RETRY_MAX = 5000;
+
+    private final ConnectedNode node;
+    private final String name;
+    private volatile ServiceClient<ReconfigureRequest, ReconfigureResponse> service;
+
+    /** Pending service connection retry. */
+    private ScheduledFuture<?> retry;
+    /** Next delay of service connection retry, in milliseconds. */
+    private long retryDelay = RETRY_MIN;
+    private boolean closed = false;
+    /** Service lookup in progress (outside of the lock). */
+    private boolean connecting = false;
+    /** Handles sharing this connection (counted by the registry). */
+    private int references = 0;
+
+    private final Subscriber<ConfigDescription> descriptionSubscriber;
+    private final Subscriber<Config> configSubscriber;
+    private final Subscriber<Config> revisionSubscriber;
+
+    /** Lock of the state and of the dispatch order, notified on each received configuration. */
+    private final Object configLock = new Object();
+    private volatile ConfigDescription description = null;
+    private volatile ConfigSchema schema = null;
+    private volatile Config config = null;
+    /** Configurations are received on parameter_revisions (guarded by configLock). */
+    private boolean revisioned = false;
+
+    private final List<Client<?>> clients = new CopyOnWriteArrayList<Client<?>>();
+    /** Dispatches to the clients, in order of the state changes. */
+    private final Queue<Runnable> dispatches = new ConcurrentLinkedQueue<Runnable>();
+    /** Serialize dispatches : count of drain requests. */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    /**
+     * Subscribe to the server, and connect its service in background.
+     * @param node current node.
+     * @param name name of the server.
+     */
+    ServerConnection(ConnectedNode node, String name) {
+        this.node = node;
+        this.name = name;
+
+        this.descriptionSubscriber = this.node.newSubscriber(name + "/parameter_descriptions", ConfigDescription._TYPE);
+        this.configSubscriber = this.node.newSubscriber(name + "/parameter_updates", Config._TYPE);
+        this.revisionSubscriber = this.node.newSubscriber(name + "/parameter_revisions", Config._TYPE);
+
+        this.descriptionSubscriber.addMessageListener(new MessageListener<ConfigDescription>() {
+
+            @Override
+            public void onNewMessage(ConfigDescription msg) {
+                ServerConnection.this.onDescription(msg);
+            }
+        });
+
+        this.configSubscriber.addMessageListener(new MessageListener<Config>() {
+
+            @Override
+            public void onNewMessage(Config msg) {
+                ServerConnection.this.onConfig(msg, false);
+            }
+        });
+
+        this.revisionSubscriber.addMessageListener(new MessageListener<Config>() {
+
+            @Override
+            public void onNewMessage(Config msg) {
+                ServerConnection.this.onConfig(msg, true);
+            }
+        });
+
+        this.node.getScheduledExecutorService().execute(new Runnable() {
+            @Override
+            public void run() {
+                ServerConnection.this.connect();
+            }
+        });
+    }
+
+    private void onDescription(final ConfigDescription msg) {
+        synchronized (this.configLock) {
+            this.schema = new ConfigSchema(msg);
+            this.description = msg;
+
+            final List<Client<?>> targets = new ArrayList<Client<?>>(this.clients);
+            this.dispatches.add(new Runnable() {
+                @Override
+                public void run() {
+                    for (Client<?> client : targets) {
+                        client.onDescription(msg);
+                    }
+                }
+            });
+        }
+
+        this.drain();
+    }
+
+    /**
+     * On configuration received.
+     * @param msg configuration.
+     * @param revision true if received on parameter_revisions.
+     */
+    private void onConfig(final Config msg, boolean revision) {
+        synchronized (this.configLock) {
+            if (revision) {
+                this.revisioned = true;
+            } else if (this.revisioned) {
+                return;
+            }
+
+            final Config previous = this.config;
+            this.config = msg;
+            this.configLock.notifyAll();
+
+            final List<Client<?>> targets = new ArrayList<Client<?>>(this.clients);
+            this.dispatches.add(new Runnable() {
+                @Override
+                public void run() {
+                    // Diff is computed once, only if a client has change listeners.
+                    ConfigDiff diff = null;
+                    for (Client<?> client : targets) {
+                        if (diff == null && client.hasChangeListeners()) {
+                            diff = new ConfigDiff(previous, msg);
+                        }
+                        client.onConfig(msg, diff);
+                    }
+                }
+            });
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Attach a client : it receives the current state, then each message.
+     * @param client to attach.
+     */
+    void attach(final Client<?> client) {
+        synchronized (this.configLock) {
+            this.clients.add(client);
+
+            final ConfigDescription currentDescription = this.description;
+            final Config currentConfig = this.config;
+            this.dispatches.add(new Runnable() {
+                @Override
+                public void run() {
+                    if (currentDescription != null) {
+                        client.onDescription(currentDescription);
+                    }
+                    if (currentConfig != null) {
+                        client.onConfig(currentConfig, client.hasChangeListeners()
+                                ? new ConfigDiff(null, currentConfig) : null);
+                    }
+                    client.checkReady();
+                }
+            });
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Run an action in order with the dispatches (eg. a listener registration).
+     * @param action called with the latest configuration queued before it, null if none.
+     */
+    void dispatch(final MessageListener<Config> action) {
+        synchronized (this.configLock) {
+            final Config currentConfig = this.config;
+            this.dispatches.add(new Runnable() {
+                @Override
+                public void run() {
+                    action.onNewMessage(currentConfig);
+                }
+            });
+        }
+
+        this.drain();
+    }
+
+    /**
+     * Run the queued dispatches, unless another thread is running them
+     * (it runs the new ones before leaving).
+     */
+    private void drain() {
+        if (this.wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        do {
+            Runnable dispatch;
+            while ((dispatch = this.dispatches.poll()) != null) {
+                try {
+                    dispatch.run();
+                } catch (RuntimeException e) {
+                    this.node.getLog().error("Dispatch of " + this.name + " failed.", e);
+                }
+            }
+
+            missed = this.wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    /**
+     * Detach a client.
+     * @param client to detach.
+     */
+    void detach(Client<?> client) {
+        this.clients.remove(client);
+    }
+
+    /**
+     * Count a new handle (see {@link ClientRegistry}).
+     * @return false if the connection is already closed.
+     */
+    synchronized boolean acquire() {
+        if (!this.closed) {
+            this.references++;
+        }
+        return !this.closed;
+    }
+
+    /**
+     * Uncount a handle, and close the connection with the last one.
+     * @return true if the connection is closed.
+     */
+    boolean release() {
+        boolean last;
+        synchronized (this) {
+            this.references--;
+            last = this.references <= 0 && !this.closed;
+            if (last) {
+                this.closed = true;
+                if (this.retry != null) {
+                    this.retry.cancel(false);
+                }
+                if (this.service != null) {
+                    this.service.shutdown();
+                }
+            }
+        }
+
+        if (last) {
+            this.descriptionSubscriber.shutdown();
+            this.configSubscriber.shutdown();
+            this.revisionSubscriber.shutdown();
+        }
+
+        return last;
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    ConfigDescription getDescription() {
+        return this.description;
+    }
+
+    ConfigSchema getSchema() {
+        return this.schema;
+    }
+
+    Config getConfiguration() {
+        return this.config;
+    }
+
+    /**
+     * Latest received configuration, wait to receive one if none have been received.
+     * @param timeout maximum time to wait.
+     * @param unit unit of timeout.
+     * @return configuration, null if none have been received before timeout.
+     * @throws InterruptedException
+     */
+    Config getConfiguration(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+        synchronized (this.configLock) {
+            long remaining = unit.toNanos(timeout);
+            while (this.config == null && remaining > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this.configLock, remaining);
+                remaining = deadline - System.nanoTime();
+            }
+        }
+
+        return this.config;
+    }
+
+    /**
+     * Check if service, description and configuration are all available.
+     * @return true if ready.
+     */
+    boolean isReady() {
+        return this.service != null
+                && this.description != null
+                && this.config != null;
+    }
+
+    /**
+     * Connected service, or schedule a reconnection.
+     * @return the service.
+     * @throws DynamicReconfigureException if the service is not connected.
+     */
+    synchronized ServiceClient<ReconfigureRequest, ReconfigureResponse> getConnectedService() {
+        if (this.service != null && !this.service.isConnected()) {
+            this.node.getLog().info("Service of " + this.name + " lost, reconnect...");
+            this.service.shutdown();
+            this.service = null;
+            this.retryDelay = RETRY_MIN;
+            this.scheduleConnect();
+        }
+
+        if (this.service == null) {
+            throw new DynamicReconfigureException("Service of " + this.name + " is not connected !");
+        }
+
+        return this.service;
+    }
+
+    /**
+     * Try to connect the service, or retry later with exponential backoff.
+     * The lookup runs outside of the lock (it blocks on the master), and its
+     * result is published under it.
+     */
+    private void connect() {
+        synchronized (this) {
+            this.retry = null;
+
+            if (this.closed || this.service != null || this.connecting) {
+                return;
+            }
+            this.connecting = true;
+        }
+
+        ServiceClient<ReconfigureRequest, ReconfigureResponse> found = null;
+        try {
+            found = this.node.newServiceClient(this.name + "/set_parameters", Reconfigure._TYPE);
+        } catch (ServiceNotFoundException e) {
+            this.node.getLog().debug("Service of " + this.name + " not found, retry in " + this.retryDelay + " ms.");
+        }
+
+        boolean orphan = false;
+        synchronized (this) {
+            this.connecting = false;
+
+            if (found == null) {
+                if (!this.closed) {
+                    this.scheduleConnect();
+                    this.retryDelay = Math.min(this.retryDelay * 2, RETRY_MAX);
+                }
+            } else if (this.closed) {
+                orphan = true;
+            } else {
+                this.service = found;
+                this.retryDelay = RETRY_MIN;
+            }
+        }
+
+        if (orphan) {
+            // Released during the lookup.
+            found.shutdown();
+            return;
+        }
+
+        for (Client<?> client : this.clients) {
+            client.checkReady();
+        }
+    }
+
+    private void scheduleConnect() {
+        if (this.retry == null) {
+            this.retry = this.node.getScheduledExecutorService().schedule(
+                    new Runnable() {
+                        @Override
+                        public void run() {
+                            ServerConnection.this.connect();
+                        }
+                    },
+                    this.retryDelay,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+}
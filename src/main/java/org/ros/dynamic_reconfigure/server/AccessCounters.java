@@ -0,0 +1,206 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.dynamic_reconfigure.Utils;
+
+/**
+ * Read and write counters by parameter of a config, see {@link BaseConfig#enableAccessCounters()}.
+ *
+ * Counters are striped by thread : each stripe is a row of
+ * (reads, writes) by parameter, padded from the next row, so threads
+ * of different stripes do not share cache lines.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class AccessCounters implements AccessCountersMXBean {
+
+    private static final String[] TYPES = {
+        Utils.TYPE_BOOL, Utils.TYPE_INT, Utils.TYPE_STR, Utils.TYPE_DBL };
+    /** Padding between rows, in longs (one cache line). */
+    private static final int PADDING = 8;
+    private static final int STRIPES = AccessCounters.stripes();
+
+    private final String[] names;
+    /** First parameter index by type (order of TYPES), and count. */
+    private final int[] offsets = new int[TYPES.length + 1];
+    private final int row;
+    private final AtomicLongArray counts;
+
+    private ObjectName objectName;
+
+    AccessCounters(ConfigLayout layout) {
+        int count = 0;
+        for (int i = 0; i < TYPES.length; i++) {
+            this.offsets[i] = count;
+            count += layout.size(TYPES[i]);
+        }
+        this.offsets[TYPES.length] = count;
+
+        this.names = new String[count];
+        for (int i = 0; i < TYPES.length; i++) {
+            for (int j = this.offsets[i]; j < this.offsets[i + 1]; j++) {
+                this.names[j] = layout.name(TYPES[i], j - this.offsets[i]);
+            }
+        }
+
+        this.row = count * 2 + PADDING;
+        this.counts = new AtomicLongArray(this.row * STRIPES);
+    }
+
+    /** Power of 2 number of stripes, from number of processors. */
+    private static int stripes() {
+        int result = 1;
+        while (result < Runtime.getRuntime().availableProcessors() && result < 64) {
+            result <<= 1;
+        }
+        return result;
+    }
+
+    void read(ConfigLayout.Slot slot) {
+        this.increment(slot, 0);
+    }
+
+    void write(ConfigLayout.Slot slot) {
+        this.increment(slot, 1);
+    }
+
+    private void increment(ConfigLayout.Slot slot, int kind) {
+        int type = AccessCounters.typeIndex(slot.getType());
+        int param = this.offsets[type] + slot.getIndex();
+
+        // Parameters added after creation are not counted.
+        if (param < this.offsets[type + 1]) {
+            int stripe = (int) Thread.currentThread().getId() & (STRIPES - 1);
+            this.counts.incrementAndGet(stripe * this.row + param * 2 + kind);
+        }
+    }
+
+    private static int typeIndex(String type) {
+        int result = TYPES.length - 1;
+        for (int i = 0; i < TYPES.length - 1; i++) {
+            if (TYPES[i].equals(type)) {
+                result = i;
+                break;
+            }
+        }
+        return result;
+    }
+
+    private long sum(int param, int kind) {
+        long result = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            result += this.counts.get(stripe * this.row + param * 2 + kind);
+        }
+        return result;
+    }
+
+    @Override
+    public Map<String, Long> getReads() {
+        return this.sorted(0);
+    }
+
+    @Override
+    public Map<String, Long> getWrites() {
+        return this.sorted(1);
+    }
+
+    /**
+     * Counts by parameter name, most frequent first.
+     * @param kind 0 for reads, 1 for writes, 2 for both.
+     */
+    private Map<String, Long> sorted(final int kind) {
+        final long[] totals = new long[this.names.length];
+        List<Integer> order = new ArrayList<Integer>(this.names.length);
+
+        for (int i = 0; i < this.names.length; i++) {
+            totals[i] = kind < 2 ? this.sum(i, kind) : this.sum(i, 0) + this.sum(i, 1);
+            order.add(i);
+        }
+        Collections.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(totals[b], totals[a]);
+            }
+        });
+
+        Map<String, Long> result = new LinkedHashMap<String, Long>();
+        for (Integer i : order) {
+            result.put(this.names[i], totals[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public String dump() {
+        Map<String, Long> reads = this.getReads();
+        Map<String, Long> writes = this.getWrites();
+        StringBuilder result = new StringBuilder(String.format("%-32s %12s %12s%n", "parameter", "reads", "writes"));
+
+        for (String name : this.sorted(2).keySet()) {
+            result.append(String.format("%-32s %12d %12d%n", name, reads.get(name), writes.get(name)));
+        }
+
+        return result.toString();
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < this.counts.length(); i++) {
+            this.counts.set(i, 0);
+        }
+    }
+
+    /**
+     * Register to the platform MBean server.
+     * @param name name of the config (eg. node name).
+     */
+    public synchronized void registerMBean(String name) {
+        try {
+            this.objectName = new ObjectName("org.ros.dynamic_reconfigure:type=AccessCounters,name="
+                    + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, this.objectName);
+        } catch (JMException e) {
+            throw new DynamicReconfigureException("Register of access counters failed : " + e.getMessage());
+        }
+    }
+
+    /** Unregister from the platform MBean server (if registered). */
+    public synchronized void unregisterMBean() {
+        if (this.objectName != null) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(this.objectName);
+            } catch (JMException e) {
+                throw new DynamicReconfigureException("Unregister of access counters failed : " + e.getMessage());
+            }
+            this.objectName = null;
+        }
+    }
+}
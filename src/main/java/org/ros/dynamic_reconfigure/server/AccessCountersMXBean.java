@@ -0,0 +1,38 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link AccessCounters}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public interface AccessCountersMXBean {
+
+    /** Reads by parameter name. */
+    Map<String, Long> getReads();
+
+    /** Writes by parameter name. */
+    Map<String, Long> getWrites();
+
+    /** Counts sorted by frequency, one parameter by line. */
+    String dump();
+
+    void reset();
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.server;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Admission control of the set_parameters service : token bucket by calling node.
+ * Requests over the limit are rejected before any change of the configuration.
+ *
+ * Callers are identified by the reserved {@link org.ros.dynamic_reconfigure.Utils#CALLER}
+ * parameter, set by {@link org.ros.dynamic_reconfigure.client.Client} to its own node name.
+ * The service does not expose the calling connection, so this is a cooperative,
+ * advisory tag : a caller can omit it or claim any name (eg. an operator one).
+ * It protects the server from a misbehaving cooperative client, not from a hostile one.
+ *
+ * Requests without tag (rqt_reconfigure, rosservice, Python clients...) cannot be told
+ * apart : they are admitted, unless a limit is defined for {@link #ANONYMOUS} with
+ * {@link #setLimit} (then all of them share it, operator tools included).
+ * Operator callers (tagged Java tools, eg. "/operator_console") are never limited.
+ * Buckets idle long enough to be full again are evicted when the buckets are
+ * all used, so new callers get their own bucket.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class AdmissionControl {
+
+    /** Caller of requests without caller parameter. */
+    public static final String ANONYMOUS = "";
+    /** Bucket shared by the callers over the maximum number of buckets (not a node name). */
+    private static final String OVERFLOW = "*";
+    /** Maximum number of buckets, next callers share the overflow bucket until idle ones are evicted. */
+    private static final int MAX_BUCKETS = 1024;
+
+    private final double rate;
+    private final double burst;
+    /** Buckets by caller. */
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<String, Bucket>();
+    private final Set<String> operators = new CopyOnWriteArraySet<String>();
+    /** Minimal delay between evictions : time to refill a default bucket. */
+    private final long sweepPeriod;
+    private volatile long lastSweep;
+
+    /**
+     * Limit each caller to a rate.
+     * @param rate allowed requests by second, for each caller.
+     * @param burst requests allowed at once (bucket size).
+     */
+    public AdmissionControl(double rate, int burst) {
+        this.rate = rate;
+        this.burst = burst;
+        this.sweepPeriod = (long) (burst / rate * TimeUnit.SECONDS.toNanos(1));
+        this.lastSweep = System.nanoTime() - this.sweepPeriod;
+    }
+
+    /**
+     * Define the limit of one caller (eg. a high rate tuning tool).
+     * @param caller name of the calling node, or {@link #ANONYMOUS} to limit untagged requests.
+     * @param callerRate allowed requests by second.
+     * @param callerBurst requests allowed at once.
+     */
+    public void setLimit(String caller, double callerRate, int callerBurst) {
+        Bucket bucket = new Bucket(callerRate, callerBurst);
+        bucket.pinned = true;
+
+        Bucket old = this.buckets.put(caller, bucket);
+        if (old != null) {
+            synchronized (old) {
+                old.evicted = true;
+            }
+        }
+    }
+
+    /**
+     * Give priority to an operator tool : its requests are never rejected.
+     * @param caller name of the calling node.
+     */
+    public void addOperator(String caller) {
+        this.operators.add(caller);
+    }
+
+    public void removeOperator(String caller) {
+        this.operators.remove(caller);
+    }
+
+    /**
+     * Take a token for a request.
+     * @param caller name of the calling node, null if unknown.
+     * @return true if the request is admitted.
+     */
+    public boolean tryAcquire(String caller) {
+        String key = caller != null ? caller : ANONYMOUS;
+
+        if (this.operators.contains(key)
+                || (ANONYMOUS.equals(key) && !this.buckets.containsKey(ANONYMOUS))) {
+            return true;
+        }
+
+        while (true) {
+            Bucket bucket = this.bucket(key);
+            synchronized (bucket) {
+                // An evicted bucket is replaced by a new one.
+                if (!bucket.evicted) {
+                    return bucket.tryAcquire();
+                }
+            }
+        }
+    }
+
+    /**
+     * Bucket of a caller, created if needed.
+     * @param key name of the calling node.
+     * @return bucket of the caller, or the overflow one if all buckets are used.
+     */
+    private Bucket bucket(String key) {
+        Bucket result = this.buckets.get(key);
+
+        if (result == null) {
+            String owner = key;
+            if (this.buckets.size() >= MAX_BUCKETS) {
+                this.evictIdle();
+                if (this.buckets.size() >= MAX_BUCKETS) {
+                    owner = OVERFLOW;
+                }
+            }
+            this.buckets.putIfAbsent(owner, new Bucket(this.rate, this.burst));
+            result = this.buckets.get(owner);
+        }
+
+        return result;
+    }
+
+    /**
+     * Remove the buckets full again (idle since their refill time) : a new bucket
+     * would be the same. Buckets defined by {@link #setLimit} are kept.
+     * Runs at most once by refill time of a default bucket.
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long last = this.lastSweep;
+
+        if (now - last < this.sweepPeriod) {
+            return;
+        }
+        this.lastSweep = now;
+
+        for (Map.Entry<String, Bucket> entry : this.buckets.entrySet()) {
+            Bucket bucket = entry.getValue();
+            synchronized (bucket) {
+                if (!bucket.pinned && !bucket.evicted && bucket.isFull(now)) {
+                    bucket.evicted = true;
+                    this.buckets.remove(entry.getKey(), bucket);
+                }
+            }
+        }
+    }
+
+    /** Token bucket, refilled on acquire. Guarded by its own lock. */
+    private static final class Bucket {
+
+        private final double tokensByNano;
+        private final double size;
+        private double tokens;
+        private long last;
+        /** Defined by {@link AdmissionControl#setLimit}, never evicted. */
+        private boolean pinned;
+        /** Removed from the buckets, must not be used anymore. */
+        private boolean evicted;
+
+        Bucket(double rate, double size) {
+            this.tokensByNano = rate / TimeUnit.SECONDS.toNanos(1);
+            this.size = size;
+            this.tokens = size;
+            this.last = System.nanoTime();
+        }
+
+        synchronized boolean tryAcquire() {
+            long now = System.nanoTime();
+            this.tokens = Math.min(this.size, this.tokens + (now - this.last) * this.tokensByNano);
+            this.last = now;
+
+            boolean result = this.tokens >= 1;
+            if (result) {
+                this.tokens -= 1;
+            }
+            return result;
+        }
+
+        synchronized boolean isFull(long now) {
+            return this.tokens + (now - this.last) * this.tokensByNano >= this.size;
+        }
+    }
+}
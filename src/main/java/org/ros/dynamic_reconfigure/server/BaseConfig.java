@@ -16,69 +16,143 @@
 
 package org.ros.dynamic_reconfigure.server;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.Fingerprint;
+import org.ros.dynamic_reconfigure.SchemaBuilder;
 import org.ros.dynamic_reconfigure.Utils;
+import org.ros.message.MessageFactory;
 import org.ros.node.ConnectedNode;
 
 import dynamic_reconfigure.BoolParameter;
 import dynamic_reconfigure.Config;
 import dynamic_reconfigure.ConfigDescription;
 import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.GroupState;
 import dynamic_reconfigure.IntParameter;
 import dynamic_reconfigure.StrParameter;
 
 /**
+ * Values of a configuration.
  *
+ * Values are stored by type in primitive arrays, at the slot given by the
+ * {@link ConfigLayout} shared by all instances of the config class on the node.
+ * The Config message is only materialized on {@link #getCurrentConfig()}.
  *
  * @author mick.gaillard@gmail.com (Mickael Gaillard)
  */
 public abstract class BaseConfig {
 
-    private Config currentConfig;
-    private Utils utils;
+    private final MessageFactory messageFactory;
+    private final ConfigLayout layout;
+
+    private boolean[] bools;
+    private int[] ints;
+    private String[] strs;
+    private double[] doubles;
+
+    /** Fingerprint of current values, maintained on each change. */
+    private long fingerprint;
+    /** Derived values, null if none. */
+    private DerivedGraph derived;
+    /** Access counters, null if disabled. */
+    private volatile AccessCounters counters;
+    /** Default values of this instance differing from the layout ones, by name (null if none). */
+    private Map<String, Object> defaults;
+
+    /** State of each group (index is the group id), see {@link #setGroupState}. */
+    private boolean[] groupStates = new boolean[] { true };
+    /** Each group is enabled, and all its ancestors too. */
+    private boolean[] groupActive = new boolean[] { true };
+    /** No group is disabled (fast path). */
+    private boolean allActive = true;
 
     public BaseConfig(ConnectedNode connectedNode) {
-        this.currentConfig = connectedNode.getTopicMessageFactory().newFromType(Config._TYPE);
-        this.utils = new Utils(connectedNode, this.currentConfig);
+        this.messageFactory = connectedNode.getTopicMessageFactory();
+        this.layout = ConfigLayout.forClass(this.getClass(), connectedNode);
+
+        this.bools = new boolean[0];
+        this.ints = new int[0];
+        this.strs = new String[0];
+        this.doubles = new double[0];
+        this.resize();
+        this.resizeGroups();
     }
 
+    /**
+     * Merge group states, then values of a config.
+     * Parameters of disabled groups are ignored.
+     * @param configBase config to merge (can be partial).
+     */
     public void merge (Config configBase) {
+        ConfigLayout.Slot slot;
+
+        this.mergeGroups(configBase);
+
         for (BoolParameter paramBase : configBase.getBools()) {
-            for (BoolParameter param : this.currentConfig.getBools()) {
-                if (paramBase.getName().equals(param.getName())) {
-                    param.setValue(paramBase.getValue());
-                }
+            slot = this.find(paramBase.getName(), Utils.TYPE_BOOL);
+            if (slot != null && this.isActive(slot)) {
+                this.update(slot, paramBase.getValue());
             }
         }
         for (DoubleParameter paramBase : configBase.getDoubles()) {
-            for (DoubleParameter param : this.currentConfig.getDoubles()) {
-                if (paramBase.getName().equals(param.getName())) {
-                    param.setValue(paramBase.getValue());
-                }
+            slot = this.find(paramBase.getName(), Utils.TYPE_DBL);
+            if (slot != null && this.isActive(slot)) {
+                this.update(slot, paramBase.getValue());
             }
         }
         for (IntParameter paramBase : configBase.getInts()) {
-            for (IntParameter param : this.currentConfig.getInts()) {
-                if (paramBase.getName().equals(param.getName())) {
-                    param.setValue(paramBase.getValue());
-                }
+            slot = this.find(paramBase.getName(), Utils.TYPE_INT);
+            if (slot != null && this.isActive(slot)) {
+                this.update(slot, paramBase.getValue());
             }
         }
         for (StrParameter paramBase : configBase.getStrs()) {
-            for (StrParameter param : this.currentConfig.getStrs()) {
-                if (paramBase.getName().equals(param.getName())) {
-                    param.setValue(paramBase.getValue());
-                }
+            slot = this.find(paramBase.getName(), Utils.TYPE_STR);
+            if (slot != null && this.isActive(slot)) {
+                this.update(slot, paramBase.getValue());
             }
         }
+
+        this.updateDerived();
     }
 
-    public String getString(String name, String defaultValue) {
-        String result = defaultValue;
+    /**
+     * Merge group states of a config (unknown groups are ignored).
+     * @param configBase config with group states.
+     * @return true if a state has changed.
+     */
+    public boolean mergeGroups(Config configBase) {
+        boolean result = false;
+
+        for (GroupState state : configBase.getGroups()) {
+            int id = this.groupId(state.getName());
+            if (id >= 0) {
+                result |= this.setGroupState(id, state.getState());
+            }
+        }
+
+        return result;
+    }
 
-        for (StrParameter param : this.currentConfig.getStrs()) {
-            if (param.getName().equals(name)) {
-                result = param.getValue();
+    /**
+     * Check if merge of a config would change group states.
+     * @param configBase config with group states.
+     * @return true if a state would change.
+     */
+    public boolean groupsChangedBy(Config configBase) {
+        boolean result = false;
+
+        for (GroupState state : configBase.getGroups()) {
+            int id = this.groupId(state.getName());
+            if (id >= 0 && this.groupStates[id] != state.getState()) {
+                result = true;
                 break;
             }
         }
@@ -86,118 +160,653 @@ public abstract class BaseConfig {
         return result;
     }
 
-    public Boolean getBool(String name, boolean defaultValue) {
-        Boolean result = defaultValue;
+    /**
+     * Add a group, see {@link Utils#addGroup}.
+     * @param name of the group.
+     * @param parent name of the parent group.
+     */
+    public void addGroup(String name, String parent) {
+        this.layout.defineGroup(name, parent);
+        this.resizeGroups();
+    }
 
-        for (BoolParameter param : this.currentConfig.getBools()) {
-            if (param.getName().equals(name)) {
-                result = param.getValue();
-                break;
-            }
+    /**
+     * Enable or disable a group : parameters of a disabled group, and of its
+     * subgroups, are ignored by merge and not published.
+     * @param name of the group.
+     * @param enabled new state.
+     * @return true if the state has changed.
+     * @throws DynamicReconfigureParameterException if the group is not defined.
+     */
+    public boolean setGroupState(String name, boolean enabled) {
+        int id = this.groupId(name);
+
+        if (id < 0) {
+            throw new DynamicReconfigureParameterException("Group " + name + " not found !");
+        }
+
+        return this.setGroupState(id, enabled);
+    }
+
+    private boolean setGroupState(int id, boolean enabled) {
+        boolean result = this.groupStates[id] != enabled;
+
+        if (result) {
+            this.groupStates[id] = enabled;
+            this.activateGroups();
         }
 
         return result;
+    }
 
+    /**
+     * Check if a group is enabled, and all its ancestors too.
+     * @param name of the group.
+     * @return true if its parameters are merged and published.
+     */
+    public boolean isGroupEnabled(String name) {
+        int id = this.groupId(name);
+        return id >= 0 && this.groupActive[id];
     }
 
-    public Integer getInteger(String name, int defaultValue) {
-        Integer result = defaultValue;
+    /**
+     * Id of a group added to this config.
+     * @param name of the group.
+     * @return the id, -1 if not defined.
+     */
+    private int groupId(String name) {
+        int result = this.layout.groupId(name);
+        return result < this.groupStates.length ? result : -1;
+    }
 
-        for (IntParameter param : this.currentConfig.getInts()) {
-            if (param.getName().equals(name)) {
-                result = param.getValue();
-                break;
+    /** Size group arrays to the layout (new groups are enabled), on definition of a group. */
+    private void resizeGroups() {
+        int size = this.layout.groupCount();
+
+        if (this.groupStates.length != size) {
+            int from = this.groupStates.length;
+            this.groupStates = Arrays.copyOf(this.groupStates, size);
+            Arrays.fill(this.groupStates, from, size, true);
+            this.activateGroups();
+        }
+    }
+
+    /** Compute effective states (parent id is lower than child id). */
+    private void activateGroups() {
+        boolean[] active = new boolean[this.groupStates.length];
+        boolean all = true;
+
+        for (int i = 0; i < active.length; i++) {
+            active[i] = this.groupStates[i] && (i == 0 || active[this.layout.groupParent(i)]);
+            all &= active[i];
+        }
+
+        this.groupActive = active;
+        this.allActive = all;
+    }
+
+    private boolean isActive(ConfigLayout.Slot slot) {
+        return this.isActive(slot.getGroup());
+    }
+
+    private boolean isActive(int group) {
+        return this.allActive || group >= this.groupActive.length || this.groupActive[group];
+    }
+
+    /** Check if a group is the given group or one of its subgroups. */
+    private boolean inGroup(int id, int group) {
+        int current = id;
+
+        while (current != group && current != 0) {
+            current = this.layout.groupParent(current);
+        }
+
+        return current == group;
+    }
+
+    /**
+     * Apply a compiled preset : no name lookup nor validation, only the
+     * changed slots are written. Parameters of disabled groups are ignored.
+     * @param preset to apply.
+     * @return level of the changed parameters.
+     */
+    int apply(Preset preset) {
+        int result = 0;
+        this.resize();
+
+        for (int i = 0; i < preset.boolSlots.length; i++) {
+            if (this.bools[preset.boolSlots[i].getIndex()] != preset.boolValues[i]
+                    && this.isActive(preset.boolSlots[i])) {
+                this.update(preset.boolSlots[i], preset.boolValues[i]);
+                result |= preset.boolLevels[i];
+            }
+        }
+        for (int i = 0; i < preset.intSlots.length; i++) {
+            if (this.ints[preset.intSlots[i].getIndex()] != preset.intValues[i]
+                    && this.isActive(preset.intSlots[i])) {
+                this.update(preset.intSlots[i], preset.intValues[i]);
+                result |= preset.intLevels[i];
+            }
+        }
+        for (int i = 0; i < preset.strSlots.length; i++) {
+            String value = preset.strValues[i];
+            String current = this.strs[preset.strSlots[i].getIndex()];
+            if (!(value == null ? current == null : value.equals(current))
+                    && this.isActive(preset.strSlots[i])) {
+                this.update(preset.strSlots[i], value);
+                result |= preset.strLevels[i];
+            }
+        }
+        for (int i = 0; i < preset.doubleSlots.length; i++) {
+            if (Double.compare(this.doubles[preset.doubleSlots[i].getIndex()], preset.doubleValues[i]) != 0
+                    && this.isActive(preset.doubleSlots[i])) {
+                this.update(preset.doubleSlots[i], preset.doubleValues[i]);
+                result |= preset.doubleLevels[i];
             }
         }
 
+        this.updateDerived();
         return result;
-
     }
 
-    public Double getDouble(String name, double defaultValue) {
-        Double result = defaultValue;
+    /**
+     * Declare a value derived from parameters or other derived values.
+     * It is computed now, then only when one of its inputs has changed.
+     * @param name of the value.
+     * @param function computation of the value.
+     * @param inputs names of parameters or previously declared derived values.
+     * @return the derived value.
+     * @throws DynamicReconfigureParameterException on unknown input or duplicate name.
+     */
+    public <V> Derived<V> addDerived(String name, Derived.Function<V> function, String... inputs) {
+        if (this.derived == null) {
+            this.derived = new DerivedGraph();
+        }
 
-        for (DoubleParameter param : this.currentConfig.getDoubles()) {
-            if (param.getName().equals(name)) {
-                result = param.getValue();
-                break;
+        if (this.layout.slot(name) != null || this.derived.contains(name)) {
+            throw new DynamicReconfigureParameterException("Parameter " + name + " already defined !");
+        }
+        for (String input : inputs) {
+            if (this.layout.slot(input) == null && !this.derived.contains(input)) {
+                throw new DynamicReconfigureParameterException("Parameter " + input + " not found !");
             }
         }
 
+        Derived<V> result = this.derived.add(name, function, inputs);
+        this.derived.update(this);
         return result;
+    }
 
+    /**
+     * Recompute derived values whose inputs have changed since last update,
+     * and replace them at once. Called on merge, and by the Server after
+     * the reconfigure callback (for values set by the callback).
+     * Derived values are not part of {@link #getCurrentConfig()}.
+     * @return number of computed values.
+     */
+    public int updateDerived() {
+        return this.derived != null ? this.derived.update(this) : 0;
     }
 
-    public void setString(String name, String value) {
-        StrParameter result = null;
+    /**
+     * Fingerprint of the current config, see {@link Fingerprint}.
+     * @return fingerprint.
+     */
+    public long getFingerprint() {
+        return this.fingerprint;
+    }
 
-        for (StrParameter param : this.currentConfig.getStrs()) {
-            if (param.getName().equals(name)) {
-                param.setValue(value);
-                result = param;
-                break;
+    /**
+     * Fingerprint the current config would have after merge of a config,
+     * in O(size of configBase). Group states are not part of the fingerprint.
+     * A parameter repeated in the config counts once, with its last value (as merged).
+     * @param configBase config to merge (can be partial).
+     * @return fingerprint after merge.
+     */
+    public long fingerprintAfter(Config configBase) {
+        long result = this.fingerprint;
+        ConfigLayout.Slot slot;
+        // Parameters are read from the end : names already seen are overridden.
+        Set<String> seen = new HashSet<String>();
+
+        List<BoolParameter> bools = configBase.getBools();
+        for (int i = bools.size() - 1; i >= 0; i--) {
+            BoolParameter paramBase = bools.get(i);
+            slot = this.find(paramBase.getName(), Utils.TYPE_BOOL);
+            if (slot != null && this.isActive(slot) && seen.add(slot.getName())) {
+                result ^= Fingerprint.of(slot.getName(), this.bools[slot.getIndex()])
+                        ^ Fingerprint.of(slot.getName(), paramBase.getValue());
+            }
+        }
+        List<DoubleParameter> doubles = configBase.getDoubles();
+        for (int i = doubles.size() - 1; i >= 0; i--) {
+            DoubleParameter paramBase = doubles.get(i);
+            slot = this.find(paramBase.getName(), Utils.TYPE_DBL);
+            if (slot != null && this.isActive(slot) && seen.add(slot.getName())) {
+                result ^= Fingerprint.of(slot.getName(), this.doubles[slot.getIndex()])
+                        ^ Fingerprint.of(slot.getName(), paramBase.getValue());
+            }
+        }
+        List<IntParameter> ints = configBase.getInts();
+        for (int i = ints.size() - 1; i >= 0; i--) {
+            IntParameter paramBase = ints.get(i);
+            slot = this.find(paramBase.getName(), Utils.TYPE_INT);
+            if (slot != null && this.isActive(slot) && seen.add(slot.getName())) {
+                result ^= Fingerprint.of(slot.getName(), this.ints[slot.getIndex()])
+                        ^ Fingerprint.of(slot.getName(), paramBase.getValue());
+            }
+        }
+        List<StrParameter> strs = configBase.getStrs();
+        for (int i = strs.size() - 1; i >= 0; i--) {
+            StrParameter paramBase = strs.get(i);
+            slot = this.find(paramBase.getName(), Utils.TYPE_STR);
+            if (slot != null && this.isActive(slot) && seen.add(slot.getName())) {
+                result ^= Fingerprint.of(slot.getName(), this.strs[slot.getIndex()])
+                        ^ Fingerprint.of(slot.getName(), paramBase.getValue());
             }
         }
 
-        if (result == null) {
-            throw new DynamicReconfigureParameterException("Parameter "+name+" not found !");
+        return result;
+    }
+
+    /** Recompute the fingerprint from all values. */
+    public void rehash() {
+        long result = 0;
+        ConfigLayout.Names names = this.layout.names();
+
+        String[] boolNames = names.get(Utils.TYPE_BOOL);
+        for (int i = 0; i < this.bools.length; i++) {
+            result ^= Fingerprint.of(boolNames[i], this.bools[i]);
+        }
+        String[] intNames = names.get(Utils.TYPE_INT);
+        for (int i = 0; i < this.ints.length; i++) {
+            result ^= Fingerprint.of(intNames[i], this.ints[i]);
         }
+        String[] strNames = names.get(Utils.TYPE_STR);
+        for (int i = 0; i < this.strs.length; i++) {
+            result ^= Fingerprint.of(strNames[i], this.strs[i]);
+        }
+        String[] doubleNames = names.get(Utils.TYPE_DBL);
+        for (int i = 0; i < this.doubles.length; i++) {
+            result ^= Fingerprint.of(doubleNames[i], this.doubles[i]);
+        }
+
+        this.fingerprint = result;
     }
 
-    public void setBool(String name, boolean value) {
-        BoolParameter result = null;
+    /**
+     * Size value arrays to the layout (new slots get default values).
+     */
+    private void resize() {
+        int from = this.bools.length;
+        this.bools = this.layout.copyBoolDefaults(this.bools);
+        for (int i = from; i < this.bools.length; i++) {
+            this.fingerprint ^= Fingerprint.of(this.layout.name(Utils.TYPE_BOOL, i), this.bools[i]);
+        }
 
-        for (BoolParameter param : this.currentConfig.getBools()) {
-            if (param.getName().equals(name)) {
-                param.setValue(value);
-                result = param;
-                break;
-            }
+        from = this.ints.length;
+        this.ints = this.layout.copyIntDefaults(this.ints);
+        for (int i = from; i < this.ints.length; i++) {
+            this.fingerprint ^= Fingerprint.of(this.layout.name(Utils.TYPE_INT, i), this.ints[i]);
         }
 
-        if (result == null) {
-            throw new DynamicReconfigureParameterException("Parameter "+name+" not found !");
+        from = this.strs.length;
+        this.strs = this.layout.copyStrDefaults(this.strs);
+        for (int i = from; i < this.strs.length; i++) {
+            this.fingerprint ^= Fingerprint.of(this.layout.name(Utils.TYPE_STR, i), this.strs[i]);
+        }
+
+        from = this.doubles.length;
+        this.doubles = this.layout.copyDoubleDefaults(this.doubles);
+        for (int i = from; i < this.doubles.length; i++) {
+            this.fingerprint ^= Fingerprint.of(this.layout.name(Utils.TYPE_DBL, i), this.doubles[i]);
         }
     }
 
-    public void setInteger(String name, int value) {
-        IntParameter result = null;
+    private void update(ConfigLayout.Slot slot, boolean value) {
+        int index = slot.getIndex();
+        AccessCounters currentCounters = this.counters;
+        if (currentCounters != null) {
+            currentCounters.write(slot);
+        }
+        if (this.derived != null && this.bools[index] != value) {
+            this.derived.changed(slot.getName());
+        }
+        this.fingerprint ^= Fingerprint.of(slot.getName(), this.bools[index])
+                ^ Fingerprint.of(slot.getName(), value);
+        this.bools[index] = value;
+    }
 
-        for (IntParameter param : this.currentConfig.getInts()) {
-            if (param.getName().equals(name)) {
-                param.setValue(value);
-                result = param;
-                break;
-            }
+    private void update(ConfigLayout.Slot slot, double value) {
+        int index = slot.getIndex();
+        AccessCounters currentCounters = this.counters;
+        if (currentCounters != null) {
+            currentCounters.write(slot);
+        }
+        if (this.derived != null && Double.compare(this.doubles[index], value) != 0) {
+            this.derived.changed(slot.getName());
         }
+        this.fingerprint ^= Fingerprint.of(slot.getName(), this.doubles[index])
+                ^ Fingerprint.of(slot.getName(), value);
+        this.doubles[index] = value;
+    }
 
-        if (result == null) {
-            throw new DynamicReconfigureParameterException("Parameter "+name+" not found !");
+    private void update(ConfigLayout.Slot slot, int value) {
+        int index = slot.getIndex();
+        AccessCounters currentCounters = this.counters;
+        if (currentCounters != null) {
+            currentCounters.write(slot);
         }
+        if (this.derived != null && this.ints[index] != value) {
+            this.derived.changed(slot.getName());
+        }
+        this.fingerprint ^= Fingerprint.of(slot.getName(), this.ints[index])
+                ^ Fingerprint.of(slot.getName(), value);
+        this.ints[index] = value;
     }
 
-    public void setDouble(String name, double value) {
-        DoubleParameter result = null;
+    private void update(ConfigLayout.Slot slot, String value) {
+        int index = slot.getIndex();
+        AccessCounters currentCounters = this.counters;
+        if (currentCounters != null) {
+            currentCounters.write(slot);
+        }
+        if (this.derived != null && !(value == null ? this.strs[index] == null : value.equals(this.strs[index]))) {
+            this.derived.changed(slot.getName());
+        }
+        this.fingerprint ^= Fingerprint.of(slot.getName(), this.strs[index])
+                ^ Fingerprint.of(slot.getName(), value);
+        this.strs[index] = value;
+    }
 
-        for (DoubleParameter param : this.currentConfig.getDoubles()) {
-            if (param.getName().equals(name)) {
-                param.setValue(value);
-                result = param;
-                break;
-            }
+    /**
+     * Update a slot from a boxed value.
+     */
+    private void update(ConfigLayout.Slot slot, Object value) {
+        String type = slot.getType();
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            this.update(slot, ((Boolean) value).booleanValue());
+        } else if (Utils.TYPE_INT.equals(type)) {
+            this.update(slot, ((Integer) value).intValue());
+        } else if (Utils.TYPE_STR.equals(type)) {
+            this.update(slot, (String) value);
+        } else {
+            this.update(slot, ((Double) value).doubleValue());
+        }
+    }
+
+    /**
+     * Slot of a parameter of this config.
+     * @param name of the parameter.
+     * @param type of the parameter.
+     * @return the slot, null if not found.
+     */
+    private ConfigLayout.Slot find(String name, String type) {
+        ConfigLayout.Slot result = this.layout.slot(name);
+
+        if (result != null && (!result.getType().equals(type) || result.getIndex() >= this.length(type))) {
+            result = null;
+        }
+
+        return result;
+    }
+
+    /**
+     * Slot of a parameter of this config, counted as read.
+     * @param name of the parameter.
+     * @param type of the parameter.
+     * @return the slot, null if not found.
+     */
+    private ConfigLayout.Slot read(String name, String type) {
+        ConfigLayout.Slot result = this.find(name, type);
+        AccessCounters currentCounters = this.counters;
+
+        if (result != null && currentCounters != null) {
+            currentCounters.read(result);
+        }
+
+        return result;
+    }
+
+    private int length(String type) {
+        int result;
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            result = this.bools.length;
+        } else if (Utils.TYPE_INT.equals(type)) {
+            result = this.ints.length;
+        } else if (Utils.TYPE_STR.equals(type)) {
+            result = this.strs.length;
+        } else {
+            result = this.doubles.length;
         }
 
+        return result;
+    }
+
+    /**
+     * Slot of a parameter of this config.
+     * @param name of the parameter.
+     * @param type of the parameter.
+     * @return the slot.
+     * @throws DynamicReconfigureParameterException if not found.
+     */
+    private ConfigLayout.Slot require(String name, String type) {
+        ConfigLayout.Slot result = this.find(name, type);
+
         if (result == null) {
             throw new DynamicReconfigureParameterException("Parameter "+name+" not found !");
         }
+
+        return result;
+    }
+
+    public String getString(String name, String defaultValue) {
+        ConfigLayout.Slot slot = this.read(name, Utils.TYPE_STR);
+        return slot != null ? this.strs[slot.getIndex()] : defaultValue;
+    }
+
+    public Boolean getBool(String name, boolean defaultValue) {
+        ConfigLayout.Slot slot = this.read(name, Utils.TYPE_BOOL);
+        return slot != null ? this.bools[slot.getIndex()] : defaultValue;
+    }
+
+    public Integer getInteger(String name, int defaultValue) {
+        ConfigLayout.Slot slot = this.read(name, Utils.TYPE_INT);
+        return slot != null ? this.ints[slot.getIndex()] : defaultValue;
+    }
+
+    public Double getDouble(String name, double defaultValue) {
+        ConfigLayout.Slot slot = this.read(name, Utils.TYPE_DBL);
+        return slot != null ? this.doubles[slot.getIndex()] : defaultValue;
+    }
+
+    public void setString(String name, String value) {
+        this.update(this.require(name, Utils.TYPE_STR), value);
+    }
+
+    public void setBool(String name, boolean value) {
+        this.update(this.require(name, Utils.TYPE_BOOL), value);
+    }
+
+    public void setInteger(String name, int value) {
+        this.update(this.require(name, Utils.TYPE_INT), value);
+    }
+
+    public void setDouble(String name, double value) {
+        this.update(this.require(name, Utils.TYPE_DBL), value);
     }
 
+    /**
+     * Materialize the current values as a Config message, with the group states.
+     * Values are stored in arrays, so this is not the live message anymore but a
+     * snapshot : later changes of this config are not reflected in it, and changes
+     * of the message are not applied (use {@link #merge(Config)} or the setters).
+     * Parameters of disabled groups are not included.
+     * @return a new Config message.
+     */
     public Config getCurrentConfig() {
-        return this.currentConfig;
+        Config result = this.materialize(-1);
+
+        for (int i = 0; i < this.groupStates.length; i++) {
+            GroupState state = this.messageFactory.newFromType(GroupState._TYPE);
+            state.setName(this.layout.groupName(i));
+            state.setState(this.groupStates[i]);
+            state.setId(i);
+            state.setParent(this.layout.groupParent(i));
+            result.getGroups().add(state);
+        }
+
+        return result;
     }
 
+    /**
+     * Materialize the current values of a group and its subgroups, in one call.
+     * @param group name of the group.
+     * @return a new Config message, empty if the group is disabled.
+     * @throws DynamicReconfigureParameterException if the group is not defined.
+     */
+    public Config getGroupConfig(String group) {
+        int id = this.groupId(group);
+
+        if (id < 0) {
+            throw new DynamicReconfigureParameterException("Group " + group + " not found !");
+        }
+
+        return this.materialize(id);
+    }
+
+    /**
+     * Materialize values of enabled groups.
+     * @param group id of the group to materialize, -1 for all.
+     */
+    private Config materialize(int group) {
+        Config result = this.messageFactory.newFromType(Config._TYPE);
+        boolean all = this.allActive && group < 0;
+        ConfigLayout.Names names = this.layout.names();
+
+        String[] boolNames = names.get(Utils.TYPE_BOOL);
+        int[] boolGroups = names.groups(Utils.TYPE_BOOL);
+        for (int i = 0; i < this.bools.length; i++) {
+            if (all || this.selected(boolGroups[i], group)) {
+                BoolParameter param = this.messageFactory.newFromType(BoolParameter._TYPE);
+                param.setName(boolNames[i]);
+                param.setValue(this.bools[i]);
+                result.getBools().add(param);
+            }
+        }
+        String[] intNames = names.get(Utils.TYPE_INT);
+        int[] intGroups = names.groups(Utils.TYPE_INT);
+        for (int i = 0; i < this.ints.length; i++) {
+            if (all || this.selected(intGroups[i], group)) {
+                IntParameter param = this.messageFactory.newFromType(IntParameter._TYPE);
+                param.setName(intNames[i]);
+                param.setValue(this.ints[i]);
+                result.getInts().add(param);
+            }
+        }
+        String[] strNames = names.get(Utils.TYPE_STR);
+        int[] strGroups = names.groups(Utils.TYPE_STR);
+        for (int i = 0; i < this.strs.length; i++) {
+            if (all || this.selected(strGroups[i], group)) {
+                StrParameter param = this.messageFactory.newFromType(StrParameter._TYPE);
+                param.setName(strNames[i]);
+                param.setValue(this.strs[i]);
+                result.getStrs().add(param);
+            }
+        }
+        String[] doubleNames = names.get(Utils.TYPE_DBL);
+        int[] doubleGroups = names.groups(Utils.TYPE_DBL);
+        for (int i = 0; i < this.doubles.length; i++) {
+            if (all || this.selected(doubleGroups[i], group)) {
+                DoubleParameter param = this.messageFactory.newFromType(DoubleParameter._TYPE);
+                param.setName(doubleNames[i]);
+                param.setValue(this.doubles[i]);
+                result.getDoubles().add(param);
+            }
+        }
+
+        return result;
+    }
+
+    /** Parameter of a group is enabled, and in the group (or any group if -1). */
+    private boolean selected(int slotGroup, int group) {
+        return this.isActive(slotGroup) && (group < 0 || this.inGroup(slotGroup, group));
+    }
+
+    /**
+     * Description of this config : the layout one, with the default values of this instance.
+     * @return the description.
+     */
     public ConfigDescription makeConfigDescription() {
-        return this.utils.makeConfigDescription();
+        ConfigDescription result = this.layout.getDescription();
+
+        if (this.defaults != null) {
+            ConfigDescription shared = result;
+            Config dflt = Utils.copyConfig(this.messageFactory, shared.getDflt());
+            for (Map.Entry<String, Object> entry : this.defaults.entrySet()) {
+                Utils.encodeConfig(this.messageFactory, entry.getKey(),
+                        this.layout.slot(entry.getKey()).getType(), entry.getValue(), dflt);
+            }
+
+            result = this.messageFactory.newFromType(ConfigDescription._TYPE);
+            result.setGroups(shared.getGroups());
+            result.setMin(shared.getMin());
+            result.setMax(shared.getMax());
+            result.setDflt(dflt);
+        }
+
+        return result;
+    }
+
+    /**
+     * Keep the default value of a field if it differs from the layout one.
+     * @param slot of the field.
+     * @param defaultValue default value of this instance.
+     */
+    private void keepDefault(ConfigLayout.Slot slot, Object defaultValue) {
+        if (!ConfigLayout.equal(slot.getDefaultValue(), defaultValue)) {
+            if (this.defaults == null) {
+                this.defaults = new HashMap<String, Object>();
+            }
+            this.defaults.put(slot.getName(), defaultValue);
+        } else if (this.defaults != null) {
+            this.defaults.remove(slot.getName());
+        }
+    }
+
+    /**
+     * Count reads and writes of each parameter (from now on).
+     * Parameters added later are not counted.
+     * @return the counters.
+     */
+    public synchronized AccessCounters enableAccessCounters() {
+        if (this.counters == null) {
+            this.counters = new AccessCounters(this.layout);
+        }
+        return this.counters;
+    }
+
+    /** Stop counting accesses. */
+    public synchronized void disableAccessCounters() {
+        this.counters = null;
+    }
+
+    /**
+     * Access counters.
+     * @return the counters, null if disabled.
+     */
+    public AccessCounters getAccessCounters() {
+        return this.counters;
+    }
+
+    /**
+     * Layout of this config, shared by all instances of the config class on the node.
+     * @return the layout.
+     */
+    public ConfigLayout getLayout() {
+        return this.layout;
     }
 
     public void addField(
@@ -208,6 +817,39 @@ public abstract class BaseConfig {
             Object defaulValue,
             int min,
             int max) {
-        utils.addField(name, type, level, description, defaulValue, min, max);
+        this.addField(name, type, level, description, defaulValue, min, max, Utils.GROUP_DEFAULT);
+    }
+
+    /**
+     * Add a field in a group (declared before with {@link #addGroup}).
+     */
+    public void addField(
+            String name,
+            String type,
+            int level,
+            String description,
+            Object defaulValue,
+            int min,
+            int max,
+            String group) {
+        ConfigLayout.Slot slot = this.layout.define(name, type, level, description, defaulValue, min, max, group);
+        this.resize();
+        this.keepDefault(slot, defaulValue);
+        this.update(slot, defaulValue);
+    }
+
+    /**
+     * Add many fields in one pass, see {@link SchemaBuilder}.
+     * @param fields definitions of fields.
+     */
+    public void addFields(SchemaBuilder fields) {
+        this.layout.defineAll(fields);
+        this.resize();
+
+        for (SchemaBuilder.Field field : fields.getFields()) {
+            ConfigLayout.Slot slot = this.layout.slot(field.getName());
+            this.keepDefault(slot, field.getDefaultValue());
+            this.update(slot, field.getDefaultValue());
+        }
     }
 }
@@ -0,0 +1,524 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.SchemaBuilder;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.node.ConnectedNode;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+
+/**
+ * Layout of a config class, shared by all its instances on a node :
+ * description, and slot of each parameter in the value arrays of {@link BaseConfig}.
+ *
+ * The layout is defined by the fields added by the first instance,
+ * so fields of a config class must not depend on the instance : a field
+ * defined again with another definition is rejected. Only default values
+ * can differ by instance (kept by the instance, see {@link BaseConfig#makeConfigDescription()}).
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class ConfigLayout {
+
+    /**
+     * Layouts by node, then by config class. A layout does not reference its
+     * node (only its message factory), so layouts are dropped with the node.
+     */
+    private static final Map<ConnectedNode, Map<Class<?>, ConfigLayout>> LAYOUTS =
+            Collections.synchronizedMap(new WeakHashMap<ConnectedNode, Map<Class<?>, ConfigLayout>>());
+
+    private final Utils utils;
+    private final ConcurrentMap<String, Slot> slots = new ConcurrentHashMap<String, Slot>();
+
+    private final List<String> boolNames = new ArrayList<String>();
+    private final List<String> intNames = new ArrayList<String>();
+    private final List<String> strNames = new ArrayList<String>();
+    private final List<String> doubleNames = new ArrayList<String>();
+
+    private boolean[] boolDefaults = new boolean[0];
+    private int[] intDefaults = new int[0];
+    private String[] strDefaults = new String[0];
+    private double[] doubleDefaults = new double[0];
+
+    /** Parent id of each group (index is the group id, root is its own parent). */
+    private int[] groupParents = new int[] { 0 };
+    private final List<String> groupNames = new ArrayList<String>(Arrays.asList(Utils.GROUP_DEFAULT));
+    private final ConcurrentMap<String, Integer> groupIds = new ConcurrentHashMap<String, Integer>();
+
+    /** Names of the current generation of slots, null once a slot is added. */
+    private Names names;
+
+    private ConfigLayout(ConnectedNode node) {
+        Config defaults = node.getTopicMessageFactory().newFromType(Config._TYPE);
+        this.utils = new Utils(node, defaults);
+        this.groupIds.put(Utils.GROUP_DEFAULT, 0);
+    }
+
+    /**
+     * Layout of a config class on a node.
+     * @param type config class.
+     * @param node to build description messages.
+     * @return the layout (shared by the instances of the class on this node).
+     */
+    public static ConfigLayout forClass(Class<?> type, ConnectedNode node) {
+        synchronized (LAYOUTS) {
+            Map<Class<?>, ConfigLayout> layouts = LAYOUTS.get(node);
+            if (layouts == null) {
+                layouts = new HashMap<Class<?>, ConfigLayout>();
+                LAYOUTS.put(node, layouts);
+            }
+
+            ConfigLayout result = layouts.get(type);
+            if (result == null) {
+                result = new ConfigLayout(node);
+                layouts.put(type, result);
+            }
+
+            return result;
+        }
+    }
+
+    /**
+     * Define a group (no-op if already defined with the same parent).
+     * @return id of the group.
+     */
+    synchronized int defineGroup(String name, String parent) {
+        int result = this.utils.addGroup(name, parent).getId();
+
+        if (result >= this.groupParents.length) {
+            this.groupParents = Arrays.copyOf(this.groupParents, result + 1);
+            this.groupParents[result] = this.utils.getGroup(parent).getId();
+            this.groupNames.add(name);
+            this.groupIds.put(name, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Define a field (no-op if already defined the same way).
+     * @return the slot of the field.
+     * @throws DynamicReconfigureParameterException if already defined differently.
+     */
+    synchronized Slot define(
+            String name,
+            String type,
+            int level,
+            String description,
+            Object defaultValue,
+            int min,
+            int max,
+            String group) {
+        SchemaBuilder.Field field = new SchemaBuilder.Field(
+                name, type, level, description, defaultValue, min, max, group);
+        Slot result = this.slots.get(name);
+
+        if (result == null) {
+            this.utils.addField(name, type, level, description, defaultValue, min, max, group);
+            result = this.append(field, this.utils.getGroup(group).getId());
+        } else {
+            ConfigLayout.checkSame(result, field);
+        }
+
+        return result;
+    }
+
+    /**
+     * Define many fields in one pass (no-op if all are already defined the same way).
+     * @throws DynamicReconfigureParameterException if one is already defined differently.
+     */
+    synchronized void defineAll(SchemaBuilder fields) {
+        SchemaBuilder missing = new SchemaBuilder(fields.size());
+
+        for (SchemaBuilder.Field field : fields.getFields()) {
+            Slot slot = this.slots.get(field.getName());
+            if (slot == null) {
+                missing.group(field.getGroup()).add(field.getName(), field.getType(), field.getLevel(),
+                        field.getDescription(), field.getDefaultValue(), field.getMinValue(), field.getMaxValue());
+            } else {
+                ConfigLayout.checkSame(slot, field);
+            }
+        }
+
+        if (missing.size() > 0) {
+            this.utils.addFields(missing);
+            for (SchemaBuilder.Field field : missing.getFields()) {
+                this.append(field, this.utils.getGroup(field.getGroup()).getId());
+            }
+        }
+    }
+
+    /**
+     * Check a field defined again has the definition of its slot (but its default value).
+     * @throws DynamicReconfigureParameterException if not.
+     */
+    private static void checkSame(Slot slot, SchemaBuilder.Field field) {
+        SchemaBuilder.Field defined = slot.definition;
+
+        if (!defined.getType().equals(field.getType())) {
+            throw new DynamicReconfigureParameterException(String.format(
+                    "Parameter %s has type %s, not %s !", slot.name, defined.getType(), field.getType()));
+        }
+        if (defined.getLevel() != field.getLevel()
+                || defined.getMinValue() != field.getMinValue()
+                || defined.getMaxValue() != field.getMaxValue()
+                || !ConfigLayout.equal(defined.getDescription(), field.getDescription())
+                || !ConfigLayout.equal(defined.getGroup(), field.getGroup())) {
+            throw new DynamicReconfigureParameterException(String.format(
+                    "Parameter %s is already defined differently (fields of a config class must not depend on the instance) !",
+                    slot.name));
+        }
+    }
+
+    static boolean equal(Object a, Object b) {
+        return a == null ? b == null : a.equals(b);
+    }
+
+    private Slot append(SchemaBuilder.Field field, int group) {
+        String name = field.getName();
+        String type = field.getType();
+        Object defaultValue = field.getDefaultValue();
+        Slot result;
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            result = new Slot(field, this.boolNames.size(), group);
+            this.boolNames.add(name);
+            this.boolDefaults = ConfigLayout.grow(this.boolDefaults, result.index);
+            this.boolDefaults[result.index] = (Boolean) defaultValue;
+        } else if (Utils.TYPE_INT.equals(type)) {
+            result = new Slot(field, this.intNames.size(), group);
+            this.intNames.add(name);
+            this.intDefaults = ConfigLayout.grow(this.intDefaults, result.index);
+            this.intDefaults[result.index] = (Integer) defaultValue;
+        } else if (Utils.TYPE_STR.equals(type)) {
+            result = new Slot(field, this.strNames.size(), group);
+            this.strNames.add(name);
+            this.strDefaults = ConfigLayout.grow(this.strDefaults, result.index);
+            this.strDefaults[result.index] = (String) defaultValue;
+        } else if (Utils.TYPE_DBL.equals(type)) {
+            result = new Slot(field, this.doubleNames.size(), group);
+            this.doubleNames.add(name);
+            this.doubleDefaults = ConfigLayout.grow(this.doubleDefaults, result.index);
+            this.doubleDefaults[result.index] = (Double) defaultValue;
+        } else {
+            throw new DynamicReconfigureParameterException(String.format(
+                    "parameter %s has unknown type: %s.", name, type));
+        }
+
+        this.slots.put(name, result);
+        this.names = null;
+        return result;
+    }
+
+    /**
+     * Slot of a parameter.
+     * @param name of the parameter.
+     * @return the slot, null if not defined.
+     */
+    public Slot slot(String name) {
+        return this.slots.get(name);
+    }
+
+    /**
+     * Id of a group.
+     * @param name of the group.
+     * @return the id, -1 if not defined.
+     */
+    public int groupId(String name) {
+        Integer result = this.groupIds.get(name);
+        return result != null ? result.intValue() : -1;
+    }
+
+    /**
+     * Name of a group.
+     * @param id of the group.
+     * @return the name.
+     */
+    public synchronized String groupName(int id) {
+        return this.groupNames.get(id);
+    }
+
+    /** Number of groups (ids are 0 to count - 1). */
+    public synchronized int groupCount() {
+        return this.groupParents.length;
+    }
+
+    /**
+     * Parent of a group.
+     * @param id of the group.
+     * @return id of the parent (0 for the root).
+     */
+    public synchronized int groupParent(int id) {
+        return this.groupParents[id];
+    }
+
+    public ConfigDescription getDescription() {
+        return this.utils.makeConfigDescription();
+    }
+
+    /**
+     * Number of parameters of a type.
+     * @param type of parameter.
+     * @return count.
+     */
+    public synchronized int size(String type) {
+        return this.names(type).size();
+    }
+
+    /**
+     * Name of a parameter.
+     * @param type of parameter.
+     * @param index slot index.
+     * @return the name.
+     */
+    public synchronized String name(String type, int index) {
+        return this.names(type).get(index);
+    }
+
+    /**
+     * Names and groups of the slots, to read many slots without lock.
+     * @return the table of the current generation (immutable).
+     */
+    public synchronized Names names() {
+        if (this.names == null) {
+            this.names = new Names(this);
+        }
+        return this.names;
+    }
+
+    private List<String> names(String type) {
+        List<String> result;
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            result = this.boolNames;
+        } else if (Utils.TYPE_INT.equals(type)) {
+            result = this.intNames;
+        } else if (Utils.TYPE_STR.equals(type)) {
+            result = this.strNames;
+        } else {
+            result = this.doubleNames;
+        }
+
+        return result;
+    }
+
+    synchronized boolean[] copyBoolDefaults(boolean[] values) {
+        return ConfigLayout.copyDefaults(this.boolDefaults, values, this.boolNames.size());
+    }
+
+    synchronized int[] copyIntDefaults(int[] values) {
+        return ConfigLayout.copyDefaults(this.intDefaults, values, this.intNames.size());
+    }
+
+    synchronized String[] copyStrDefaults(String[] values) {
+        return ConfigLayout.copyDefaults(this.strDefaults, values, this.strNames.size());
+    }
+
+    synchronized double[] copyDoubleDefaults(double[] values) {
+        return ConfigLayout.copyDefaults(this.doubleDefaults, values, this.doubleNames.size());
+    }
+
+    /**
+     * Values array sized to the layout, with defaults for new slots.
+     * @param defaults of the layout.
+     * @param values current values (can be shorter).
+     * @param size of the layout.
+     * @return values array of exactly size elements.
+     */
+    private static boolean[] copyDefaults(boolean[] defaults, boolean[] values, int size) {
+        boolean[] result = values;
+        if (values.length != size) {
+            result = Arrays.copyOf(defaults, size);
+            System.arraycopy(values, 0, result, 0, Math.min(values.length, size));
+        }
+        return result;
+    }
+
+    private static int[] copyDefaults(int[] defaults, int[] values, int size) {
+        int[] result = values;
+        if (values.length != size) {
+            result = Arrays.copyOf(defaults, size);
+            System.arraycopy(values, 0, result, 0, Math.min(values.length, size));
+        }
+        return result;
+    }
+
+    private static String[] copyDefaults(String[] defaults, String[] values, int size) {
+        String[] result = values;
+        if (values.length != size) {
+            result = Arrays.copyOf(defaults, size);
+            System.arraycopy(values, 0, result, 0, Math.min(values.length, size));
+        }
+        return result;
+    }
+
+    private static double[] copyDefaults(double[] defaults, double[] values, int size) {
+        double[] result = values;
+        if (values.length != size) {
+            result = Arrays.copyOf(defaults, size);
+            System.arraycopy(values, 0, result, 0, Math.min(values.length, size));
+        }
+        return result;
+    }
+
+    private static boolean[] grow(boolean[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(8, array.length * 2));
+    }
+
+    private static int[] grow(int[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(8, array.length * 2));
+    }
+
+    private static String[] grow(String[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(8, array.length * 2));
+    }
+
+    private static double[] grow(double[] array, int index) {
+        return index < array.length ? array : Arrays.copyOf(array, Math.max(8, array.length * 2));
+    }
+
+    /**
+     * Names and groups of the slots of one generation of the layout
+     * (the layout is a new generation once a slot is added).
+     */
+    public static final class Names {
+
+        private final String[] bools;
+        private final String[] ints;
+        private final String[] strs;
+        private final String[] doubles;
+        private final int[] boolGroups;
+        private final int[] intGroups;
+        private final int[] strGroups;
+        private final int[] doubleGroups;
+
+        private Names(ConfigLayout layout) {
+            this.bools = layout.boolNames.toArray(new String[layout.boolNames.size()]);
+            this.ints = layout.intNames.toArray(new String[layout.intNames.size()]);
+            this.strs = layout.strNames.toArray(new String[layout.strNames.size()]);
+            this.doubles = layout.doubleNames.toArray(new String[layout.doubleNames.size()]);
+            this.boolGroups = Names.groups(layout, this.bools);
+            this.intGroups = Names.groups(layout, this.ints);
+            this.strGroups = Names.groups(layout, this.strs);
+            this.doubleGroups = Names.groups(layout, this.doubles);
+        }
+
+        private static int[] groups(ConfigLayout layout, String[] names) {
+            int[] result = new int[names.length];
+            for (int i = 0; i < names.length; i++) {
+                result[i] = layout.slots.get(names[i]).group;
+            }
+            return result;
+        }
+
+        /**
+         * Names of the slots of a type (must not be modified).
+         * @param type of parameter.
+         * @return names by slot index.
+         */
+        public String[] get(String type) {
+            String[] result;
+
+            if (Utils.TYPE_BOOL.equals(type)) {
+                result = this.bools;
+            } else if (Utils.TYPE_INT.equals(type)) {
+                result = this.ints;
+            } else if (Utils.TYPE_STR.equals(type)) {
+                result = this.strs;
+            } else {
+                result = this.doubles;
+            }
+
+            return result;
+        }
+
+        /**
+         * Group ids of the slots of a type (must not be modified).
+         * @param type of parameter.
+         * @return group id by slot index.
+         */
+        public int[] groups(String type) {
+            int[] result;
+
+            if (Utils.TYPE_BOOL.equals(type)) {
+                result = this.boolGroups;
+            } else if (Utils.TYPE_INT.equals(type)) {
+                result = this.intGroups;
+            } else if (Utils.TYPE_STR.equals(type)) {
+                result = this.strGroups;
+            } else {
+                result = this.doubleGroups;
+            }
+
+            return result;
+        }
+    }
+
+    /** Slot of a parameter : its type and index in the values array of this type. */
+    public static final class Slot {
+
+        private final String name;
+        private final String type;
+        private final int index;
+        private final int group;
+        /** Definition of the field. */
+        private final SchemaBuilder.Field definition;
+
+        Slot(SchemaBuilder.Field definition, int index, int group) {
+            this.name = definition.getName();
+            this.type = definition.getType();
+            this.index = index;
+            this.group = group;
+            this.definition = definition;
+        }
+
+        public String getName() {
+            return this.name;
+        }
+
+        public String getType() {
+            return this.type;
+        }
+
+        public int getIndex() {
+            return this.index;
+        }
+
+        /** Id of the group of the parameter. */
+        public int getGroup() {
+            return this.group;
+        }
+
+        /** Default value of the layout (of the first instance). */
+        Object getDefaultValue() {
+            return this.definition.getDefaultValue();
+        }
+    }
+}
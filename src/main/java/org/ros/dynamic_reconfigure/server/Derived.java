@@ -0,0 +1,76 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+/**
+ * Value derived from parameters (or other derived values) of a config,
+ * recomputed only when one of its inputs has changed.
+ * See {@link BaseConfig#addDerived(String, Function, String...)}.
+ *
+ * @param <V> type of value.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class Derived<V> {
+
+    private final DerivedGraph graph;
+    private final String name;
+    private final Function<V> function;
+    private final int index;
+
+    Derived(DerivedGraph graph, String name, Function<V> function, int index) {
+        this.graph = graph;
+        this.name = name;
+        this.function = function;
+        this.index = index;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    int getIndex() {
+        return this.index;
+    }
+
+    V compute(BaseConfig config) {
+        return this.function.compute(config);
+    }
+
+    /**
+     * Value of the last update, computed with the other derived values of the config.
+     * In the reconfigure callback, values are up to date with the merged parameters.
+     * @return the value.
+     */
+    @SuppressWarnings("unchecked")
+    public V get() {
+        return (V) this.graph.get(this.index);
+    }
+
+    /**
+     * Computation of a derived value.
+     * @param <V> type of value.
+     */
+    public interface Function<V> {
+        /**
+         * Compute the value from the config.
+         * @param config Current config (and derived values of its inputs).
+         * @return the value.
+         */
+        V compute(BaseConfig config);
+    }
+}
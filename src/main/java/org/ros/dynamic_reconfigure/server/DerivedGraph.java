@@ -0,0 +1,149 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dependency graph of the derived values of a config.
+ *
+ * A value can only depend on parameters and previously declared values,
+ * so declaration order is a topological order : one pass recomputes
+ * the dirty values and their dependents.
+ * Values are replaced as a whole array, so readers see values computed
+ * together. Derived values are local to the config (not part of the Config
+ * message), and lag the parameters until the next update : a reader in
+ * another thread can see new parameters with the previous derived values.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+final class DerivedGraph {
+
+    private final List<Derived<?>> nodes = new ArrayList<Derived<?>>();
+    /** Dependent values by input name (parameter or derived value). */
+    private final Map<String, List<Derived<?>>> dependents = new HashMap<String, List<Derived<?>>>();
+    private boolean[] dirty = new boolean[0];
+    private boolean anyDirty;
+
+    private volatile Object[] values = new Object[0];
+    /** Values being computed, seen only by the updating thread. */
+    private Object[] working;
+    private volatile Thread updater;
+
+    boolean contains(String name) {
+        for (Derived<?> node : this.nodes) {
+            if (node.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    <V> Derived<V> add(String name, Derived.Function<V> function, String... inputs) {
+        Derived<V> result = new Derived<V>(this, name, function, this.nodes.size());
+        this.nodes.add(result);
+
+        for (String input : inputs) {
+            List<Derived<?>> list = this.dependents.get(input);
+            if (list == null) {
+                list = new ArrayList<Derived<?>>();
+                this.dependents.put(input, list);
+            }
+            list.add(result);
+        }
+
+        this.dirty = Arrays.copyOf(this.dirty, this.nodes.size());
+        this.dirty[result.getIndex()] = true;
+        this.anyDirty = true;
+        this.values = Arrays.copyOf(this.values, this.nodes.size());
+
+        return result;
+    }
+
+    /**
+     * Mark the dependents of a changed input.
+     * @param name of the parameter or derived value.
+     */
+    void changed(String name) {
+        List<Derived<?>> list = this.dependents.get(name);
+
+        if (list != null) {
+            for (Derived<?> node : list) {
+                this.dirty[node.getIndex()] = true;
+            }
+            this.anyDirty = true;
+        }
+    }
+
+    /**
+     * Recompute dirty values, and publish them at once.
+     * @param config Config of the values.
+     * @return number of computed values.
+     */
+    int update(BaseConfig config) {
+        int result = 0;
+
+        if (this.anyDirty) {
+            Object[] next = this.values.clone();
+
+            // Intermediate values are visible to the next computations only.
+            this.working = next;
+            boolean[] computed = new boolean[this.nodes.size()];
+            boolean done = false;
+            this.updater = Thread.currentThread();
+            try {
+                for (int i = 0; i < this.nodes.size(); i++) {
+                    if (this.dirty[i]) {
+                        Derived<?> node = this.nodes.get(i);
+                        Object value = node.compute(config);
+                        this.dirty[i] = false;
+                        computed[i] = true;
+                        result++;
+
+                        if (value == null ? next[i] != null : !value.equals(next[i])) {
+                            next[i] = value;
+                            this.changed(node.getName());
+                        }
+                    }
+                }
+                this.anyDirty = false;
+                this.values = next;
+                done = true;
+            } finally {
+                if (!done) {
+                    // Values are not published, compute them again next time.
+                    for (int i = 0; i < computed.length; i++) {
+                        this.dirty[i] |= computed[i];
+                    }
+                }
+                this.updater = null;
+                this.working = null;
+            }
+        }
+
+        return result;
+    }
+
+    Object get(int index) {
+        Object[] source = this.updater == Thread.currentThread() ? this.working : this.values;
+        return source[index];
+    }
+}
@@ -0,0 +1,290 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.ros.dynamic_reconfigure.ConfigSchema;
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.node.ConnectedNode;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Configuration source backed by a file, reloaded on change.
+ *
+ * The file is a flat ".properties" file, or a flat YAML file
+ * (one "name: value" by line, # comments, quoted strings).
+ * On change, only the keys whose value differs from the current configuration
+ * of the Server are sent to it, in one reconfigure : a parameter changed by
+ * another source is set back to the value of the file on next load.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class FileConfigSource {
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private final ConnectedNode node;
+    private final Server<?> server;
+    private final Path file;
+    private final ConfigSchema schema;
+
+    private WatchService watcher;
+    private Thread thread;
+
+    /**
+     * @param node Connected node of the server.
+     * @param server Server to configure.
+     * @param file Configuration file (.properties, .yaml or .yml).
+     */
+    public FileConfigSource(ConnectedNode node, Server<?> server, Path file) {
+        this.node = node;
+        this.server = server;
+        this.file = file.toAbsolutePath();
+        this.schema = new ConfigSchema(server.getDescription());
+    }
+
+    /**
+     * Load the file, then watch it for changes (in a daemon thread).
+     * @throws IOException if the file can not be read or watched.
+     */
+    public synchronized void start() throws IOException {
+        this.load();
+
+        this.watcher = FileSystems.getDefault().newWatchService();
+        this.file.getParent().register(this.watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+
+        this.thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                FileConfigSource.this.watch();
+            }
+        }, "dynamic_reconfigure-file");
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /** Stop watching the file. */
+    public synchronized void close() {
+        if (this.watcher != null) {
+            try {
+                this.watcher.close();
+            } catch (IOException e) {
+                this.node.getLog().error("Close watch of " + this.file + " failed : " + e.getMessage());
+            }
+        }
+    }
+
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = this.watcher.take();
+                boolean changed = false;
+
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    if (context instanceof Path && this.file.getFileName().equals(context)) {
+                        changed = true;
+                    }
+                }
+                key.reset();
+
+                if (changed) {
+                    try {
+                        this.load();
+                    } catch (IOException e) {
+                        this.node.getLog().error("Reload of " + this.file + " failed : " + e.getMessage());
+                    }
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed.
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Parse the file, and apply the keys whose value differs from the current configuration.
+     * @return number of changed parameters.
+     * @throws IOException if the file can not be read.
+     */
+    public synchronized int load() throws IOException {
+        Map<String, String> values = this.parse();
+        Map<String, Object> current = FileConfigSource.values(this.server.getConfiguration());
+        Config update = this.node.getTopicMessageFactory().newFromType(Config._TYPE);
+        int result = 0;
+
+        for (Map.Entry<String, String> entry : values.entrySet()) {
+            String name = entry.getKey();
+            ConfigSchema.Param param = this.schema.get(name);
+            if (param == null) {
+                this.node.getLog().warn("Unknown parameter " + name + " in " + this.file);
+                continue;
+            }
+
+            Object value;
+            try {
+                value = FileConfigSource.decode(param.getType(), entry.getValue());
+            } catch (IllegalArgumentException e) {
+                this.node.getLog().error(String.format("Invalid value of %s in %s : %s",
+                        name, this.file, entry.getValue()));
+                continue;
+            }
+
+            if (!value.equals(current.get(name))) {
+                Utils.appendConfig(this.node.getTopicMessageFactory(), name, param.getType(), value, update);
+                result++;
+            }
+        }
+
+        if (result > 0) {
+            this.node.getLog().info("Apply " + result + " parameter(s) of " + this.file);
+            this.server.reconfigure(update);
+        }
+
+        return result;
+    }
+
+    /**
+     * Values of a configuration by name.
+     */
+    private static Map<String, Object> values(Config config) {
+        Map<String, Object> result = new HashMap<String, Object>();
+
+        for (BoolParameter param : config.getBools()) {
+            result.put(param.getName(), param.getValue());
+        }
+        for (IntParameter param : config.getInts()) {
+            result.put(param.getName(), param.getValue());
+        }
+        for (StrParameter param : config.getStrs()) {
+            result.put(param.getName(), param.getValue());
+        }
+        for (DoubleParameter param : config.getDoubles()) {
+            result.put(param.getName(), param.getValue());
+        }
+
+        return result;
+    }
+
+    /**
+     * Values of the file by key.
+     */
+    private Map<String, String> parse() throws IOException {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        BufferedReader reader = Files.newBufferedReader(this.file, UTF8);
+
+        try {
+            String name = this.file.getFileName().toString();
+            if (name.endsWith(".properties")) {
+                Properties properties = new Properties();
+                properties.load(reader);
+                for (String key : properties.stringPropertyNames()) {
+                    result.put(key, properties.getProperty(key).trim());
+                }
+            } else if (name.endsWith(".yaml") || name.endsWith(".yml")) {
+                FileConfigSource.parseYaml(reader, result);
+            } else {
+                throw new DynamicReconfigureException("Unknown format of " + this.file);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return result;
+    }
+
+    /**
+     * Parse flat YAML : "name: value" by line.
+     */
+    private static void parseYaml(BufferedReader reader, Map<String, String> result) throws IOException {
+        String line;
+
+        while ((line = reader.readLine()) != null) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#") || trimmed.equals("---")) {
+                continue;
+            }
+
+            int colon = trimmed.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+
+            String key = trimmed.substring(0, colon).trim();
+            String value = trimmed.substring(colon + 1).trim();
+
+            if (value.startsWith("\"") || value.startsWith("'")) {
+                int end = value.indexOf(value.charAt(0), 1);
+                value = value.substring(1, end > 0 ? end : value.length());
+            } else {
+                int comment = value.indexOf(" #");
+                if (comment >= 0) {
+                    value = value.substring(0, comment).trim();
+                }
+            }
+
+            result.put(key, value);
+        }
+    }
+
+    /**
+     * Typed value of a text.
+     * @throws IllegalArgumentException if not compatible with type.
+     */
+    private static Object decode(String type, String text) {
+        Object result;
+
+        if (Utils.TYPE_INT.equals(type)) {
+            result = Integer.parseInt(text);
+        } else if (Utils.TYPE_DBL.equals(type)) {
+            result = Double.parseDouble(text);
+        } else if (Utils.TYPE_BOOL.equals(type)) {
+            if (!text.equalsIgnoreCase("true") && !text.equalsIgnoreCase("false")) {
+                throw new IllegalArgumentException(text);
+            }
+            result = Boolean.parseBoolean(text);
+        } else {
+            result = text;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.ros.dynamic_reconfigure.ConfigSchema;
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Named set of parameter values (eg. "docking"), validated and compiled once :
+ * values are clamped, and resolved to their slot and level in the {@link ConfigLayout}.
+ * Loading a preset is then a sequence of array stores, see {@link Server#loadPreset(String)}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class Preset {
+
+    private final String name;
+    /** Validated values, as registered. */
+    private final Config config;
+    /** Level of all parameters of the preset. */
+    private final int level;
+
+    final ConfigLayout.Slot[] boolSlots;
+    final boolean[] boolValues;
+    final int[] boolLevels;
+
+    final ConfigLayout.Slot[] intSlots;
+    final int[] intValues;
+    final int[] intLevels;
+
+    final ConfigLayout.Slot[] strSlots;
+    final String[] strValues;
+    final int[] strLevels;
+
+    final ConfigLayout.Slot[] doubleSlots;
+    final double[] doubleValues;
+    final int[] doubleLevels;
+
+    /**
+     * Validate and compile a preset.
+     * @param name of the preset.
+     * @param factory for make new Ros message.
+     * @param layout of the config class.
+     * @param schema description of the config.
+     * @param values of the preset (can be partial, reserved parameters are ignored).
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type.
+     */
+    Preset(String name, MessageFactory factory, ConfigLayout layout, ConfigSchema schema, Config values) {
+        this.name = name;
+        this.config = Utils.copyConfig(factory, values);
+        schema.validate(this.config);
+
+        List<BoolParameter> bools = new ArrayList<BoolParameter>();
+        for (BoolParameter param : this.config.getBools()) {
+            if (!Utils.isReserved(param.getName())) {
+                bools.add(param);
+            }
+        }
+        List<IntParameter> ints = new ArrayList<IntParameter>();
+        for (IntParameter param : this.config.getInts()) {
+            if (!Utils.isReserved(param.getName())) {
+                ints.add(param);
+            }
+        }
+        List<StrParameter> strs = new ArrayList<StrParameter>();
+        for (StrParameter param : this.config.getStrs()) {
+            if (!Utils.isReserved(param.getName())) {
+                strs.add(param);
+            }
+        }
+        List<DoubleParameter> doubles = new ArrayList<DoubleParameter>();
+        for (DoubleParameter param : this.config.getDoubles()) {
+            if (!Utils.isReserved(param.getName())) {
+                doubles.add(param);
+            }
+        }
+
+        int allLevels = 0;
+
+        this.boolSlots = new ConfigLayout.Slot[bools.size()];
+        this.boolValues = new boolean[bools.size()];
+        this.boolLevels = new int[bools.size()];
+        for (int i = 0; i < this.boolSlots.length; i++) {
+            this.boolSlots[i] = Preset.slot(layout, bools.get(i).getName());
+            this.boolValues[i] = bools.get(i).getValue();
+            this.boolLevels[i] = schema.get(bools.get(i).getName()).getLevel();
+            allLevels |= this.boolLevels[i];
+        }
+
+        this.intSlots = new ConfigLayout.Slot[ints.size()];
+        this.intValues = new int[ints.size()];
+        this.intLevels = new int[ints.size()];
+        for (int i = 0; i < this.intSlots.length; i++) {
+            this.intSlots[i] = Preset.slot(layout, ints.get(i).getName());
+            this.intValues[i] = ints.get(i).getValue();
+            this.intLevels[i] = schema.get(ints.get(i).getName()).getLevel();
+            allLevels |= this.intLevels[i];
+        }
+
+        this.strSlots = new ConfigLayout.Slot[strs.size()];
+        this.strValues = new String[strs.size()];
+        this.strLevels = new int[strs.size()];
+        for (int i = 0; i < this.strSlots.length; i++) {
+            this.strSlots[i] = Preset.slot(layout, strs.get(i).getName());
+            this.strValues[i] = strs.get(i).getValue();
+            this.strLevels[i] = schema.get(strs.get(i).getName()).getLevel();
+            allLevels |= this.strLevels[i];
+        }
+
+        this.doubleSlots = new ConfigLayout.Slot[doubles.size()];
+        this.doubleValues = new double[doubles.size()];
+        this.doubleLevels = new int[doubles.size()];
+        for (int i = 0; i < this.doubleSlots.length; i++) {
+            this.doubleSlots[i] = Preset.slot(layout, doubles.get(i).getName());
+            this.doubleValues[i] = doubles.get(i).getValue();
+            this.doubleLevels[i] = schema.get(doubles.get(i).getName()).getLevel();
+            allLevels |= this.doubleLevels[i];
+        }
+
+        this.level = allLevels;
+    }
+
+    private static ConfigLayout.Slot slot(ConfigLayout layout, String name) {
+        ConfigLayout.Slot result = layout.slot(name);
+
+        if (result == null) {
+            throw new DynamicReconfigureParameterException("Parameter " + name + " not found !");
+        }
+
+        return result;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Values of the preset, validated and clamped.
+     * The config is shared, it must not be changed.
+     * @return values.
+     */
+    public Config getConfig() {
+        return this.config;
+    }
+
+    /**
+     * Level of all parameters of the preset
+     * (a load only reports the level of the changed ones).
+     * @return level.
+     */
+    public int getLevel() {
+        return this.level;
+    }
+
+    /** Number of parameters of the preset. */
+    public int size() {
+        return this.boolSlots.length + this.intSlots.length + this.strSlots.length + this.doubleSlots.length;
+    }
+}
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ros.dynamic_reconfigure.Utils;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.GroupState;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Append incoming reconfigure requests to a compact binary log,
+ * to replay them later with {@link ReconfigureReplayer}.
+ * Transport tags (caller, trace) are not recorded, other reserved parameters
+ * (eg. preset, base revision) are, as they change the meaning of the request.
+ *
+ * Layout (integers as unsigned LEB128 varint, signed ones zigzag encoded) :
+ * <pre>
+ * header : "DRLG" version(byte) startTimeMillis(long)
+ * record : deltaNanos(varint) then for bools, ints, strs, doubles, group states :
+ *          count(varint) then count x [name value]
+ *          (version 1 has no group states)
+ * name   : 0 length(varint) utf8, for first occurrence (id = next index)
+ *          id + 1 (varint) for the next ones
+ * value  : bool(byte) int(zigzag varint) str(length(varint) utf8) double(8 bytes)
+ *          group state(byte)
+ * </pre>
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ReconfigureRecorder implements Closeable {
+
+    static final byte[] MAGIC = {'D', 'R', 'L', 'G'};
+    static final byte VERSION = 2;
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    /** Encoding of current record. */
+    private ByteBuffer record;
+    /** Ids of already written names. */
+    private final Map<String, Integer> names = new HashMap<String, Integer>();
+    private final List<String> namesById = new ArrayList<String>();
+    private long lastTime;
+
+    /**
+     * Create (or truncate) a log file.
+     * @param path of log file.
+     * @throws IOException
+     */
+    public ReconfigureRecorder(Path path) throws IOException {
+        this.channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        this.record = ByteBuffer.allocate(1024);
+        this.lastTime = System.nanoTime();
+
+        this.buffer.put(MAGIC);
+        this.buffer.put(VERSION);
+        this.buffer.putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Append a request to the log (buffered).
+     * @param config Requested configuration.
+     * @throws IOException
+     */
+    public synchronized void record(Config config) throws IOException {
+        long now = System.nanoTime();
+
+        while (true) {
+            int namesBefore = this.namesById.size();
+            try {
+                this.record.clear();
+                this.encode(config, now - this.lastTime);
+                break;
+            } catch (BufferOverflowException e) {
+                // Names of this record are not written yet.
+                while (this.namesById.size() > namesBefore) {
+                    this.names.remove(this.namesById.remove(this.namesById.size() - 1));
+                }
+                this.record = ByteBuffer.allocate(this.record.capacity() * 2);
+            }
+        }
+        this.lastTime = now;
+
+        this.record.flip();
+        if (this.record.remaining() > this.buffer.remaining()) {
+            this.flush();
+        }
+        if (this.record.remaining() > this.buffer.remaining()) {
+            while (this.record.hasRemaining()) {
+                this.channel.write(this.record);
+            }
+        } else {
+            this.buffer.put(this.record);
+        }
+    }
+
+    /**
+     * Write buffered records to the file.
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        this.buffer.flip();
+        while (this.buffer.hasRemaining()) {
+            this.channel.write(this.buffer);
+        }
+        this.buffer.clear();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        this.flush();
+        this.channel.close();
+    }
+
+    private void encode(Config config, long delta) {
+        this.putVarint(delta);
+
+        this.putVarint(ReconfigureRecorder.countRecorded(config.getBools()));
+        for (BoolParameter param : config.getBools()) {
+            if (ReconfigureRecorder.isRecorded(param.getName())) {
+                this.putName(param.getName());
+                this.record.put((byte) (param.getValue() ? 1 : 0));
+            }
+        }
+
+        this.putVarint(ReconfigureRecorder.countRecorded(config.getInts()));
+        for (IntParameter param : config.getInts()) {
+            if (ReconfigureRecorder.isRecorded(param.getName())) {
+                this.putName(param.getName());
+                this.putVarint(((param.getValue() << 1) ^ (param.getValue() >> 31)) & 0xFFFFFFFFL);
+            }
+        }
+
+        this.putVarint(ReconfigureRecorder.countRecorded(config.getStrs()));
+        for (StrParameter param : config.getStrs()) {
+            if (ReconfigureRecorder.isRecorded(param.getName())) {
+                this.putName(param.getName());
+                this.putString(param.getValue());
+            }
+        }
+
+        this.putVarint(ReconfigureRecorder.countRecorded(config.getDoubles()));
+        for (DoubleParameter param : config.getDoubles()) {
+            if (ReconfigureRecorder.isRecorded(param.getName())) {
+                this.putName(param.getName());
+                this.record.putDouble(param.getValue());
+            }
+        }
+
+        this.putVarint(config.getGroups().size());
+        for (GroupState state : config.getGroups()) {
+            this.putName(state.getName());
+            this.record.put((byte) (state.getState() ? 1 : 0));
+        }
+    }
+
+    /**
+     * Check if a parameter is recorded : all but the transport tags.
+     * @param name of the parameter.
+     * @return true if recorded.
+     */
+    private static boolean isRecorded(String name) {
+        return !Utils.CALLER.equals(name) && !Utils.TRACE.equals(name);
+    }
+
+    /** Number of recorded parameters. */
+    private static int countRecorded(List<?> params) {
+        int result = 0;
+
+        for (Object param : params) {
+            String name;
+            if (param instanceof BoolParameter) {
+                name = ((BoolParameter) param).getName();
+            } else if (param instanceof IntParameter) {
+                name = ((IntParameter) param).getName();
+            } else if (param instanceof StrParameter) {
+                name = ((StrParameter) param).getName();
+            } else {
+                name = ((DoubleParameter) param).getName();
+            }
+
+            if (ReconfigureRecorder.isRecorded(name)) {
+                result++;
+            }
+        }
+
+        return result;
+    }
+
+    private void putName(String name) {
+        Integer id = this.names.get(name);
+
+        if (id == null) {
+            this.putVarint(0);
+            this.putString(name);
+            this.names.put(name, this.namesById.size());
+            this.namesById.add(name);
+        } else {
+            this.putVarint(id + 1);
+        }
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(UTF8);
+        this.putVarint(bytes.length);
+        this.record.put(bytes);
+    }
+
+    private void putVarint(long value) {
+        long remaining = value;
+
+        while ((remaining & ~0x7FL) != 0) {
+            this.record.put((byte) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        this.record.put((byte) remaining);
+    }
+}
@@ -0,0 +1,239 @@
+/*
+ * Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not
+ * use this file except in compliance with the License. You may obtain a copy of
+ * the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations under
+ * the License.
+ */
+package org.ros.dynamic_reconfigure.server;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.GroupState;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Feed a log written by {@link ReconfigureRecorder} back into a Server.
+ * A truncated last record (recorder killed while writing) is ignored.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ReconfigureReplayer {
+
+    private final MessageFactory factory;
+    private final MappedByteBuffer buffer;
+    private final long startTime;
+    private final byte version;
+    /** Delay before the last read request, in nanoseconds. */
+    private long delta;
+    private boolean truncated;
+    /** Names by id, as read so far. */
+    private final List<String> names = new ArrayList<String>();
+
+    /**
+     * Open a log file.
+     * @param factory for make new Ros message.
+     * @param path of log file.
+     * @throws IOException
+     */
+    public ReconfigureReplayer(MessageFactory factory, Path path) throws IOException {
+        this.factory = factory;
+
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+
+        byte[] magic = new byte[ReconfigureRecorder.MAGIC.length];
+        try {
+            this.buffer.get(magic);
+            this.version = this.buffer.get();
+            if (!Arrays.equals(magic, ReconfigureRecorder.MAGIC)
+                    || this.version < 1 || this.version > ReconfigureRecorder.VERSION) {
+                throw new DynamicReconfigureException(path + " is not a reconfigure log !");
+            }
+            this.startTime = this.buffer.getLong();
+        } catch (BufferUnderflowException e) {
+            throw new DynamicReconfigureException(path + " is not a reconfigure log !");
+        }
+    }
+
+    /**
+     * Wall clock time of the start of recording.
+     * @return time in milliseconds.
+     */
+    public long getStartTime() {
+        return this.startTime;
+    }
+
+    /**
+     * @return true if the log ends with an incomplete record, skipped.
+     */
+    public boolean isTruncated() {
+        return this.truncated;
+    }
+
+    /**
+     * Read the next request of the log.
+     * @return the request, or null at the end of the log.
+     */
+    public Config next() {
+        Config result = null;
+
+        if (this.buffer.hasRemaining()) {
+            int position = this.buffer.position();
+            int known = this.names.size();
+
+            try {
+                this.delta = this.getVarint();
+                result = this.decode();
+            } catch (BufferUnderflowException e) {
+                // Stop at the last complete record.
+                this.buffer.position(position);
+                this.names.subList(known, this.names.size()).clear();
+                this.buffer.limit(position);
+                this.truncated = true;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Replay all requests of the log.
+     * @param server Server to feed.
+     * @param speed 1 for original speed, 10 for ten times faster,
+     *      0 for as fast as possible.
+     * @return number of replayed requests.
+     * @throws InterruptedException
+     */
+    public int replay(Server<?> server, double speed) throws InterruptedException {
+        int result = 0;
+        long next = System.nanoTime();
+
+        Config config;
+        while ((config = this.next()) != null) {
+            if (speed > 0) {
+                next += (long) (this.delta / speed);
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                }
+            }
+
+            server.reconfigure(config);
+            result++;
+        }
+
+        return result;
+    }
+
+    private Config decode() {
+        Config result = this.factory.newFromType(Config._TYPE);
+
+        long count = this.getVarint();
+        for (long i = 0; i < count; i++) {
+            BoolParameter param = this.factory.newFromType(BoolParameter._TYPE);
+            param.setName(this.getName());
+            param.setValue(this.buffer.get() != 0);
+            result.getBools().add(param);
+        }
+
+        count = this.getVarint();
+        for (long i = 0; i < count; i++) {
+            IntParameter param = this.factory.newFromType(IntParameter._TYPE);
+            param.setName(this.getName());
+            int zigzag = (int) this.getVarint();
+            param.setValue((zigzag >>> 1) ^ -(zigzag & 1));
+            result.getInts().add(param);
+        }
+
+        count = this.getVarint();
+        for (long i = 0; i < count; i++) {
+            StrParameter param = this.factory.newFromType(StrParameter._TYPE);
+            param.setName(this.getName());
+            param.setValue(this.getString());
+            result.getStrs().add(param);
+        }
+
+        count = this.getVarint();
+        for (long i = 0; i < count; i++) {
+            DoubleParameter param = this.factory.newFromType(DoubleParameter._TYPE);
+            param.setName(this.getName());
+            param.setValue(this.buffer.getDouble());
+            result.getDoubles().add(param);
+        }
+
+        if (this.version >= 2) {
+            count = this.getVarint();
+            for (long i = 0; i < count; i++) {
+                GroupState state = this.factory.newFromType(GroupState._TYPE);
+                state.setName(this.getName());
+                state.setState(this.buffer.get() != 0);
+                result.getGroups().add(state);
+            }
+        }
+
+        return result;
+    }
+
+    private String getName() {
+        int id = (int) this.getVarint();
+        String result;
+
+        if (id == 0) {
+            result = this.getString();
+            this.names.add(result);
+        } else {
+            result = this.names.get(id - 1);
+        }
+
+        return result;
+    }
+
+    private String getString() {
+        byte[] bytes = new byte[(int) this.getVarint()];
+        this.buffer.get(bytes);
+        return new String(bytes, ReconfigureRecorder.UTF8);
+    }
+
+    private long getVarint() {
+        long result = 0;
+        int shift = 0;
+        byte current;
+
+        do {
+            current = this.buffer.get();
+            result |= (long) (current & 0x7F) << shift;
+            shift += 7;
+        } while ((current & 0x80) != 0);
+
+        return result;
+    }
+}
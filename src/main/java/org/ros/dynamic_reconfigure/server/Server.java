@@ -15,19 +15,51 @@
  */
 package org.ros.dynamic_reconfigure.server;
 
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.ros.exception.ServiceException;
+import org.ros.message.MessageFactory;
 import org.ros.node.ConnectedNode;
+import org.ros.node.parameter.ParameterListener;
+import org.ros.node.service.DefaultServiceServerListener;
 import org.ros.node.service.ServiceResponseBuilder;
 import org.ros.node.service.ServiceServer;
 import org.ros.node.topic.Publisher;
+import org.ros.dynamic_reconfigure.ConfigPublisher;
+import org.ros.dynamic_reconfigure.ConfigSchema;
 import org.ros.dynamic_reconfigure.DynamicReconfigureCallbackException;
 import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.ReconfigureTracer;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.shm.SharedConfigWriter;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 
 import dynamic_reconfigure.BoolParameter;
 import dynamic_reconfigure.Config;
 import dynamic_reconfigure.ConfigDescription;
 import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.Group;
+import dynamic_reconfigure.GroupState;
 import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.ParamDescription;
 import dynamic_reconfigure.Reconfigure;
 import dynamic_reconfigure.ReconfigureRequest;
 import dynamic_reconfigure.ReconfigureResponse;
@@ -48,22 +80,77 @@ public class Server<T extends BaseConfig> implements ServiceResponseBuilder<Reco
     /** Configuration of the node for Dynamic reconfigure. */
     private final transient T configInstance;
 
-    /** Internal Dynamic Configuration. */
+    /** Internal Dynamic Configuration : last materialized snapshot, with its revision. */
     private transient Config config;
     /** Internal Dynamic Description of Configuration. */
     private final transient ConfigDescription description;
 
     // Topics and Services
     /** Publisher update configuration. */
-    private final transient Publisher<Config> publisherUpdate;
+    private transient volatile Publisher<Config> publisherUpdate;
+    /** Publisher update configuration, with its reserved parameters (revision, trace). */
+    private transient volatile Publisher<Config> publisherRevision;
     /** Publisher configuration description. */
-    private final transient Publisher<ConfigDescription> publisherDescription;
+    private transient volatile Publisher<ConfigDescription> publisherDescription;
     /** Service configuration. */
-    private final transient ServiceServer<ReconfigureRequest, ReconfigureResponse> serviceReconfigure;
+    private transient volatile ServiceServer<ReconfigureRequest, ReconfigureResponse> serviceReconfigure;
 
     /** Internal callback */
     private ReconfigureListener<T> callback;
 
+    /** Deadline of callback in nanoseconds, 0 to call it without watchdog. */
+    private volatile long callbackTimeout;
+    /** Watchdog executor of callback. */
+    private transient ExecutorService callbackExecutor;
+    /** Last callback submitted to the watchdog. */
+    private transient Future<T> pendingCallback;
+    /** Callback submitted to the watchdog and not yet returned. */
+    private boolean callbackRunning;
+    /** Callback over its deadline and not yet caught up : requests are deferred. */
+    private boolean callbackStalled;
+    /** Configuration to restore once the stalled callback has returned, null if none. */
+    private transient Config rollbackConfig;
+    /** Levels of the reconfigures the callback has missed while stalled. */
+    private int missedLevel;
+    /** Lock of watchdog state. */
+    private final transient Object callbackLock = new Object();
+    /**
+     * Requests received while the callback is stalled, merged in one configuration
+     * (a later value wins), applied once it returns. Null if none (guarded by applyLock).
+     */
+    private transient Config deferredConfig;
+    /**
+     * Lock of apply : no-op check, revision claim, merge, callback and publish
+     * of a configuration are done by one thread at a time. The config instance
+     * and the callback are not safe for concurrent merges, so the revision
+     * compare-and-set is checked under this lock too, not lock-free.
+     */
+    private final transient Object applyLock = new Object();
+    /** Last configuration accepted by the callback. */
+    private transient Config lastGoodConfig;
+    /** Revision of the last applied configuration. */
+    private final transient AtomicInteger revision = new AtomicInteger();
+
+    /** Recorder of incoming requests, null if not recording. */
+    private transient volatile ReconfigureRecorder recorder;
+    /** Reactive publisher of applied configurations. */
+    private final transient ConfigPublisher<Config> configPublisher = new ConfigPublisher<Config>();
+    /** Admission control of the set_parameters service, null if none. */
+    private transient volatile AdmissionControl admission;
+    /** Exporter of propagation spans of traced requests, null if not tracing. */
+    private transient volatile ReconfigureTracer tracer;
+    /** Shared-memory mirror of the configuration, null if none. */
+    private transient volatile SharedConfigWriter mirror;
+
+    /** Presets by name. */
+    private final transient ConcurrentMap<String, Preset> presets = new ConcurrentHashMap<String, Preset>();
+
+    /** Counters of this server. */
+    private final transient ServerMetrics metrics = new ServerMetrics();
+
+    /** Values last written to the parameter server, by parameter (guarded by applyLock). */
+    private final transient Map<String, Object> persisted = new HashMap<String, Object>();
+
     /**
      * Constructor and initialize the Server of Dynamic-Reconfiguration stack.
      * @param connectedNode Current connected node.
@@ -71,6 +158,17 @@ public class Server<T extends BaseConfig> implements ServiceResponseBuilder<Reco
      * @param callback Callback when update configuration.
      */
     public Server(ConnectedNode connectedNode, T config, ReconfigureListener<T> callback) {
+        this(connectedNode, config, callback, true);
+    }
+
+    /**
+     * Initialize the Server.
+     * @param connectedNode Current connected node.
+     * @param config Configuration of the node.
+     * @param callback Callback when update configuration.
+     * @param blocking Run the startup steps now, else {@link #start} runs them.
+     */
+    private Server(ConnectedNode connectedNode, T config, ReconfigureListener<T> callback, boolean blocking) {
         // Assert
         if (connectedNode == null) {
             throw new DynamicReconfigureException("Node not connected !!");
@@ -79,133 +177,1042 @@ public class Server<T extends BaseConfig> implements ServiceResponseBuilder<Reco
         // Init
         this.configInstance = config;
         this.node = connectedNode;
-        this.config = this.configInstance.getCurrentConfig();
-
         this.description = this.configInstance.makeConfigDescription();
+        this.setCallback(callback);
+
+        if (blocking) {
+            // Restore configuration from last run.
+            this.restore();
+
+            // Description.
+            this.advertiseDescription();
 
-        // Restore configuration from last run.
+            // Updater.
+            this.advertiseUpdates();
+            synchronized (this.applyLock) {
+                this.changeConfig(this.config, 0);
+            }
+
+            // Watch external changes (eg. rosparam set).
+            this.subscribeParameterServer();
+
+            // Service.
+            this.advertiseService();
+        }
+    }
+
+    /**
+     * Start a Server asynchronously : parameter server restore and
+     * publishers advertising run concurrently on the node executor,
+     * then the initial configuration is applied and the service advertised.
+     * Starting many servers at once overlaps their master round-trips.
+     * @param connectedNode Current connected node.
+     * @param config Configuration of the node.
+     * @param callback Callback when update configuration.
+     * @return future completed once the set_parameters service is registered to the master.
+     */
+    public static <T extends BaseConfig> ListenableFuture<Server<T>> start(
+            ConnectedNode connectedNode, T config, ReconfigureListener<T> callback) {
+        final Server<T> server = new Server<T>(connectedNode, config, callback, false);
+        final SettableFuture<Server<T>> result = SettableFuture.create();
+        ExecutorService executor = connectedNode.getScheduledExecutorService();
+
+        final Future<?> publishers = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                server.advertiseDescription();
+                server.advertiseUpdates();
+            }
+        });
+
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    server.restore();
+                    publishers.get();
+                    synchronized (server.applyLock) {
+                        server.changeConfig(server.config, 0);
+                    }
+                    server.subscribeParameterServer();
+                    server.advertiseService().addListener(
+                            new DefaultServiceServerListener<ReconfigureRequest, ReconfigureResponse>() {
+                                @Override
+                                public void onMasterRegistrationSuccess(
+                                        ServiceServer<ReconfigureRequest, ReconfigureResponse> service) {
+                                    result.set(server);
+                                }
+
+                                @Override
+                                public void onMasterRegistrationFailure(
+                                        ServiceServer<ReconfigureRequest, ReconfigureResponse> service) {
+                                    result.setException(new DynamicReconfigureException(
+                                            "Registration of set_parameters service failed !"));
+                                }
+                            });
+                } catch (ExecutionException e) {
+                    result.setException(e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    result.setException(e);
+                } catch (RuntimeException e) {
+                    result.setException(e);
+                }
+            }
+        });
+
+        return result;
+    }
+
+    /** Startup step : restore configuration from the parameter server. */
+    private void restore() {
         this.copyFromParameterServer();
-        this.setCallback(callback);
+        this.config = this.snapshot(0);
+        this.lastGoodConfig = this.config;
+    }
+
+    /** Startup step : advertise and publish the description. */
+    private void advertiseDescription() {
+        Publisher<ConfigDescription> publisher =
+                this.node.newPublisher("~parameter_descriptions", ConfigDescription._TYPE);
+        publisher.setLatchMode(true);
+        publisher.publish(this.description);
+        this.publisherDescription = publisher;
+    }
 
-        // Description.
-        this.publisherDescription = this.node.newPublisher("~parameter_descriptions", ConfigDescription._TYPE);
-        this.publisherDescription.setLatchMode(true);
-        this.publisherDescription.publish(description);
+    /**
+     * Startup step : advertise the configuration updates, plain on parameter_updates
+     * (as any dynamic_reconfigure server), and with the reserved parameters
+     * on parameter_revisions (for the Java clients).
+     */
+    private void advertiseUpdates() {
+        Publisher<Config> publisher = this.node.newPublisher("~parameter_updates", Config._TYPE);
+        publisher.setLatchMode(true);
+        this.publisherUpdate = publisher;
 
-        // Updater.
-        this.publisherUpdate = this.node.newPublisher("~parameter_updates", Config._TYPE);
-        this.publisherUpdate.setLatchMode(true);
-        this.changeConfig(this.config, 0);
+        Publisher<Config> revisions = this.node.newPublisher("~parameter_revisions", Config._TYPE);
+        revisions.setLatchMode(true);
+        this.publisherRevision = revisions;
+    }
 
-        // Service.
+    /** Startup step : advertise the set_parameters service. */
+    private ServiceServer<ReconfigureRequest, ReconfigureResponse> advertiseService() {
         this.serviceReconfigure = this.node.newServiceServer("~set_parameters", Reconfigure._TYPE, this);
+        return this.serviceReconfigure;
     }
 
     /**
-     * Generic call back of Dynamic-Reconfigure Subscriber.
+     * Generic call back of Dynamic-Reconfigure Subscriber (called with the apply lock held).
      * @param config New configuration instance of the node.
      * @param level
      * @return updated configuration.
      */
     private Config changeConfig(Config config, int level) {
+        return this.changeConfig(config, level, this.revision.incrementAndGet());
+    }
+
+    /**
+     * Generic call back of Dynamic-Reconfigure Subscriber (called with the apply lock held).
+     * @param config New configuration instance of the node.
+     * @param level
+     * @param newRevision Revision claimed for this configuration.
+     * @return updated configuration.
+     */
+    private Config changeConfig(Config config, int level, int newRevision) {
         this.node.getLog().info("Update config !");
 
         if (this.configInstance != null) {
+            ReconfigureTracer currentTracer = this.tracer;
+            String trace = currentTracer != null ? Utils.getString(config, Utils.TRACE, null) : null;
+            long time = trace != null ? currentTracer.now() : 0;
+
             //TODO Update config instance !!!
             this.configInstance.merge(config);
+            this.mark(trace, "server.merge", time, newRevision);
+            return this.commit(level, newRevision, trace);
+        }
 
-            // Notify callback config has change.
-            Config configResult = this.callback
-                    .onReconfigure(this.configInstance, level)
-                        .getCurrentConfig();
+        return this.config;
+    }
 
-            if (configResult == null) {
-                String msg = "Reconfigure callback should return a possibly updated configuration.";
-                this.node.getLog().error(msg);
-                throw new DynamicReconfigureCallbackException(msg);
+    /**
+     * Notify the callback of the changed config instance, then save and publish it
+     * (called with the apply lock held).
+     * @param level Level of the changed parameters.
+     * @param newRevision Revision claimed for this configuration.
+     * @param trace Trace id of the request, null if not traced.
+     * @return updated configuration.
+     */
+    private Config commit(int level, int newRevision, String trace) {
+        long time = this.mark(trace, null, 0, newRevision);
+
+        // Notify callback config has change.
+        T result;
+        try {
+            result = this.callReconfigure(level);
+        } catch (TimeoutException e) {
+            // Nothing is published at this revision : give it back. The callback
+            // still uses the config instance, it is rolled back once it returns.
+            this.node.getLog().error("Reconfigure callback timeout, reply last good configuration.");
+            this.revision.compareAndSet(newRevision, newRevision - 1);
+            return this.lastGoodConfig;
+        } catch (RuntimeException e) {
+            // Callback failed : back to the last good configuration.
+            this.revision.compareAndSet(newRevision, newRevision - 1);
+            if (this.lastGoodConfig != null) {
+                this.configInstance.merge(this.lastGoodConfig);
             }
+            throw e;
+        }
 
-            this.config = configResult;
-            // Save Configuration for next run.
-            this.copyToParameterServer();
-            this.publisherUpdate.publish(this.config);
+        if (result == null) {
+            String msg = "Reconfigure callback should return a possibly updated configuration.";
+            this.node.getLog().error(msg);
+            throw new DynamicReconfigureCallbackException(msg);
+        }
+        if (result != this.configInstance) {
+            this.configInstance.merge(result.getCurrentConfig());
         }
+        this.configInstance.updateDerived();
+        time = this.mark(trace, "server.callback", time, newRevision);
+
+        this.config = this.snapshot(newRevision, trace);
+        this.lastGoodConfig = this.config;
+        this.metrics.reconfigured();
+
+        // Save Configuration for next run.
+        this.copyToParameterServer();
+        time = this.mark(trace, "server.persist", time, newRevision);
+        this.publish(this.config);
+        this.mark(trace, "server.publish", time, newRevision);
 
         return this.config;
     }
 
-    /** Internal method for copy Dynamic-Reconfiguration configuration into the server parameter. */
+    /**
+     * Record a span of a traced request.
+     * @param trace Trace id, null if not traced.
+     * @param span Name of the span, null to only read the clock.
+     * @param start Start of the span.
+     * @param currentRevision Revision of the configuration.
+     * @return end of the span (start of the next one), 0 if not traced.
+     */
+    private long mark(String trace, String span, long start, int currentRevision) {
+        long result = 0;
+        ReconfigureTracer currentTracer = this.tracer;
+
+        if (trace != null && currentTracer != null) {
+            result = currentTracer.now();
+            if (span != null) {
+                currentTracer.span(trace, span, this.node.getName().toString(), start, result, currentRevision);
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Call the reconfigure callback, under watchdog if a deadline is defined.
+     * Over its deadline, the config instance is left to the callback and
+     * requests are deferred until it returns (see {@link #catchUp()}).
+     * @param level Level of the reconfigure.
+     * @return the callback result.
+     * @throws TimeoutException when the callback is over its deadline.
+     */
+    private T callReconfigure(final int level) throws TimeoutException {
+        if (this.callbackTimeout <= 0) {
+            return this.callback.onReconfigure(this.configInstance, level);
+        }
+
+        Future<T> future;
+        synchronized (this.callbackLock) {
+            future = this.callbackExecutor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    try {
+                        return Server.this.callback.onReconfigure(Server.this.configInstance, level);
+                    } finally {
+                        // Even if the callback fails : the stall state must be cleared.
+                        Server.this.onCallbackReturn();
+                    }
+                }
+            });
+            this.pendingCallback = future;
+            this.callbackRunning = true;
+        }
+
+        try {
+            return future.get(this.callbackTimeout, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            synchronized (this.callbackLock) {
+                if (this.callbackRunning) {
+                    this.callbackStalled = true;
+                    this.rollbackConfig = this.lastGoodConfig;
+                    this.missedLevel |= level;
+                    this.metrics.callbackTimeout();
+                    throw e;
+                }
+            }
+            // Returned just over the deadline.
+            return this.waitCallback(future);
+        } catch (ExecutionException e) {
+            throw Server.callbackFailure(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DynamicReconfigureCallbackException("Reconfigure callback interrupted !");
+        }
+    }
+
+    private T waitCallback(Future<T> future) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw Server.callbackFailure(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DynamicReconfigureCallbackException("Reconfigure callback interrupted !");
+        }
+    }
+
+    private static RuntimeException callbackFailure(ExecutionException e) {
+        RuntimeException result;
+
+        if (e.getCause() instanceof RuntimeException) {
+            result = (RuntimeException) e.getCause();
+        } else {
+            result = new DynamicReconfigureCallbackException(
+                    "Reconfigure callback failed : " + e.getCause());
+        }
+
+        return result;
+    }
+
+    /**
+     * On callback return or failure (watchdog thread) : catch up if it was over its deadline.
+     */
+    private void onCallbackReturn() {
+        synchronized (this.callbackLock) {
+            this.callbackRunning = false;
+
+            if (!this.callbackStalled) {
+                this.metrics.callbackRecovered();
+                return;
+            }
+        }
+
+        this.catchUp();
+    }
+
+    /**
+     * Once the stalled callback has returned (watchdog thread) : roll back the
+     * config instance to the last good configuration, apply the deferred requests,
+     * then call the callback again (under the same deadline) and publish the
+     * result under a new revision.
+     */
+    private void catchUp() {
+        synchronized (this.applyLock) {
+            final int level;
+            Config rollback;
+            synchronized (this.callbackLock) {
+                rollback = this.rollbackConfig;
+                this.rollbackConfig = null;
+                level = this.missedLevel;
+                this.missedLevel = 0;
+            }
+
+            if (rollback != null) {
+                this.configInstance.merge(rollback);
+            }
+            if (this.deferredConfig != null) {
+                this.configInstance.merge(this.deferredConfig);
+                this.deferredConfig = null;
+            }
+
+            synchronized (this.callbackLock) {
+                if (this.callbackExecutor.isShutdown()) {
+                    this.callbackStalled = false;
+                    return;
+                }
+
+                final Future<T> future = this.callbackExecutor.submit(new Callable<T>() {
+                    @Override
+                    public T call() throws Exception {
+                        Server.this.node.getLog().info("Reconfigure callback catch up.");
+                        T result = null;
+                        try {
+                            result = Server.this.callback.onReconfigure(Server.this.configInstance, level);
+                            return result;
+                        } catch (RuntimeException e) {
+                            Server.this.node.getLog().error("Reconfigure callback catch up failed.", e);
+                            throw e;
+                        } finally {
+                            Server.this.onCatchUpReturn(result);
+                        }
+                    }
+                });
+                this.pendingCallback = future;
+                this.callbackRunning = true;
+                this.watchCatchUp(future);
+            }
+        }
+    }
+
+    /**
+     * Flag a catch up over the callback deadline (nothing waits for it : requests
+     * are still deferred, and its result is published once it returns).
+     * @param future the catch up callback.
+     */
+    private void watchCatchUp(final Future<T> future) {
+        this.node.getScheduledExecutorService().schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!future.isDone()) {
+                    Server.this.node.getLog().error("Reconfigure callback catch up over its deadline.");
+                    Server.this.metrics.callbackTimeout();
+                }
+            }
+        }, this.callbackTimeout, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * On catch up callback return (watchdog thread) : publish the caught up
+     * configuration, then catch up again the requests deferred meanwhile.
+     * @param result the callback result, null if the callback failed
+     *      (the config instance is rolled back to the last good configuration).
+     */
+    private void onCatchUpReturn(T result) {
+        boolean recovered;
+
+        synchronized (this.applyLock) {
+            if (result == null) {
+                this.configInstance.merge(this.lastGoodConfig);
+            } else {
+                if (result != this.configInstance) {
+                    this.configInstance.merge(result.getCurrentConfig());
+                }
+                this.configInstance.updateDerived();
+                this.config = this.snapshot(this.revision.incrementAndGet());
+                this.lastGoodConfig = this.config;
+                this.metrics.reconfigured();
+                this.copyToParameterServer();
+                this.publish(this.config);
+            }
+
+            synchronized (this.callbackLock) {
+                this.callbackRunning = false;
+                recovered = this.deferredConfig == null && this.missedLevel == 0;
+                if (recovered) {
+                    this.callbackStalled = false;
+                    this.metrics.callbackRecovered();
+                }
+            }
+        }
+
+        if (!recovered) {
+            this.catchUp();
+        }
+    }
+
+    /**
+     * Check if requests are deferred, as the callback is stalled.
+     * @return true if the callback is stalled.
+     */
+    private boolean isStalled() {
+        synchronized (this.callbackLock) {
+            return this.callbackStalled;
+        }
+    }
+
+    /**
+     * Keep a request to apply once the stalled callback returns (called with the apply lock held).
+     * Requests are merged in one pending configuration, so the deferred state is bounded
+     * by the number of parameters.
+     * @param request Requested config.
+     * @param level Level of the request.
+     * @return the reply : current configuration, without the request.
+     */
+    private Config defer(Config request, int level) {
+        this.node.getLog().warn("Reconfigure callback stalled, defer request.");
+        MessageFactory factory = this.node.getTopicMessageFactory();
+        if (this.deferredConfig == null) {
+            this.deferredConfig = factory.newFromType(Config._TYPE);
+        }
+
+        for (BoolParameter param : request.getBools()) {
+            if (!Utils.isReserved(param.getName())) {
+                Utils.encodeConfig(factory, param.getName(), Utils.TYPE_BOOL, param.getValue(), this.deferredConfig);
+            }
+        }
+        for (IntParameter param : request.getInts()) {
+            if (!Utils.isReserved(param.getName())) {
+                Utils.encodeConfig(factory, param.getName(), Utils.TYPE_INT, param.getValue(), this.deferredConfig);
+            }
+        }
+        for (StrParameter param : request.getStrs()) {
+            if (!Utils.isReserved(param.getName())) {
+                Utils.encodeConfig(factory, param.getName(), Utils.TYPE_STR, param.getValue(), this.deferredConfig);
+            }
+        }
+        for (DoubleParameter param : request.getDoubles()) {
+            if (!Utils.isReserved(param.getName())) {
+                Utils.encodeConfig(factory, param.getName(), Utils.TYPE_DBL, param.getValue(), this.deferredConfig);
+            }
+        }
+        for (GroupState state : request.getGroups()) {
+            GroupState pending = null;
+            for (GroupState known : this.deferredConfig.getGroups()) {
+                if (known.getName().equals(state.getName())) {
+                    pending = known;
+                }
+            }
+            if (pending == null) {
+                pending = factory.newFromType(GroupState._TYPE);
+                pending.setName(state.getName());
+                this.deferredConfig.getGroups().add(pending);
+            }
+            pending.setState(state.getState());
+        }
+
+        synchronized (this.callbackLock) {
+            this.missedLevel |= level;
+        }
+        this.metrics.callbackSkipped();
+        return this.config;
+    }
+
+    /**
+     * Materialize the current configuration, with its revision.
+     * Snapshots are never changed once published or replied.
+     * @param currentRevision Revision of the configuration.
+     * @return the snapshot.
+     */
+    private Config snapshot(int currentRevision) {
+        return this.snapshot(currentRevision, null);
+    }
+
+    /**
+     * Materialize the current configuration, with its revision and trace id.
+     * @param currentRevision Revision of the configuration.
+     * @param trace Trace id of the request, null if not traced.
+     * @return the snapshot.
+     */
+    private Config snapshot(int currentRevision, String trace) {
+        Config result = this.configInstance.getCurrentConfig();
+
+        IntParameter revisionParam = this.node.getTopicMessageFactory().newFromType(IntParameter._TYPE);
+        revisionParam.setName(Utils.REVISION);
+        revisionParam.setValue(currentRevision);
+        result.getInts().add(revisionParam);
+
+        if (trace != null) {
+            StrParameter traceParam = this.node.getTopicMessageFactory().newFromType(StrParameter._TYPE);
+            traceParam.setName(Utils.TRACE);
+            traceParam.setValue(trace);
+            result.getStrs().add(traceParam);
+        }
+
+        return result;
+    }
+
+    /**
+     * Check if a config would not change the current one (by fingerprint
+     * and group states), and count it as no-op.
+     * @param config Requested config (can be partial).
+     * @return true if the config is identical to the current one.
+     */
+    private boolean isNoop(Config config) {
+        boolean result = this.configInstance != null
+                && this.configInstance.fingerprintAfter(config) == this.configInstance.getFingerprint()
+                && !this.configInstance.groupsChangedBy(config);
+
+        if (result) {
+            this.node.getLog().debug("No-op reconfigure, skip it.");
+            this.metrics.noopReconfigured();
+        }
+
+        return result;
+    }
+
+    /**
+     * Apply a requested configuration, as the set_parameters service does.
+     * While the callback is stalled (over its deadline), the request is deferred
+     * until it returns, and the reply is the current configuration.
+     * @param request Requested configuration (can be partial).
+     * @return the reply : current configuration once applied.
+     */
+    public Config reconfigure(Config request) {
+        String presetName = Utils.getString(request, Utils.PRESET, null);
+        if (presetName != null) {
+            Preset preset = this.presets.get(presetName);
+            if (preset == null) {
+                this.node.getLog().error("Preset " + presetName + " not found, ignore request.");
+                return this.config;
+            }
+            return this.loadPreset(preset, Utils.getString(request, Utils.TRACE, null));
+        }
+
+        return this.apply(request, 0);
+    }
+
+    /**
+     * Apply a requested configuration under the apply lock.
+     * @param request Requested configuration (can be partial).
+     * @param level Level of the request.
+     * @return the reply : current configuration once applied.
+     */
+    private Config apply(Config request, int level) {
+        synchronized (this.applyLock) {
+            int baseRevision = Utils.getInt(request, Utils.BASE_REVISION, -1);
+
+            if (this.isStalled()) {
+                // Deferred requests apply on the current revision : a compare-and-set
+                // based on it is deferred too, unless other changes are already pending.
+                if (baseRevision >= 0
+                        && (baseRevision != this.revision.get() || this.deferredConfig != null)) {
+                    return this.conflict(baseRevision);
+                }
+                return this.defer(request, level);
+            }
+            // A stale base revision conflicts, even if the request changes nothing.
+            if (baseRevision >= 0 && baseRevision != this.revision.get()) {
+                return this.conflict(baseRevision);
+            }
+            if (this.isNoop(request)) {
+                return this.config;
+            }
+
+            // Compare-and-set : claim the next revision, or reply a conflict.
+            int newRevision;
+            if (baseRevision < 0) {
+                newRevision = this.revision.incrementAndGet();
+            } else if (this.revision.compareAndSet(baseRevision, baseRevision + 1)) {
+                newRevision = baseRevision + 1;
+            } else {
+                return this.conflict(baseRevision);
+            }
+
+            this.config = this.changeConfig(request, level, newRevision);
+            return this.config;
+        }
+    }
+
+    private Config conflict(int baseRevision) {
+        this.node.getLog().info("Reconfigure based on stale revision " + baseRevision + ", conflict.");
+        this.metrics.conflict();
+        return this.makeConflict();
+    }
+
+    /**
+     * Enable or disable a group through the reconfigure pipeline : parameters
+     * of a disabled group (and its subgroups) are ignored by requests, do not
+     * trigger the callback and are not published.
+     * Remote clients change group states by the groups of set_parameters.
+     * @param group name of the group.
+     * @param enabled new state.
+     * @return current configuration once applied.
+     * @throws DynamicReconfigureParameterException if the group is unknown.
+     */
+    public Config setGroupState(String group, boolean enabled) {
+        if (this.configInstance.getLayout().groupId(group) < 0) {
+            throw new DynamicReconfigureParameterException("Group " + group + " not found !");
+        }
+
+        Config request = this.node.getTopicMessageFactory().newFromType(Config._TYPE);
+        GroupState state = this.node.getTopicMessageFactory().newFromType(GroupState._TYPE);
+        state.setName(group);
+        state.setState(enabled);
+        request.getGroups().add(state);
+
+        return this.reconfigure(request);
+    }
+
+    /**
+     * Register a named preset (eg. "docking"), replacing any preset of the same name.
+     * The values are validated, clamped and compiled now, so that loading
+     * the preset does not go through the generic merge, against the
+     * description as it is now (fields defined later are not in the preset).
+     * @param name of the preset.
+     * @param values of the preset (can be partial).
+     * @return the compiled preset.
+     * @throws DynamicReconfigureParameterException on unknown name or wrong type.
+     */
+    public Preset addPreset(String name, Config values) {
+        // Rebuilt each time : the layout can have grown since the last preset.
+        ConfigSchema schema = new ConfigSchema(this.configInstance.makeConfigDescription());
+
+        Preset result = new Preset(
+                name,
+                this.node.getTopicMessageFactory(),
+                this.configInstance.getLayout(),
+                schema,
+                values);
+        this.presets.put(name, result);
+        return result;
+    }
+
+    /**
+     * Unregister a preset.
+     * @param name of the preset.
+     * @return the removed preset, null if unknown.
+     */
+    public Preset removePreset(String name) {
+        return this.presets.remove(name);
+    }
+
+    /**
+     * Names of the registered presets.
+     * @return names.
+     */
+    public Set<String> getPresetNames() {
+        return Collections.unmodifiableSet(this.presets.keySet());
+    }
+
+    /**
+     * Switch to a registered preset : only the changed parameters are written,
+     * and the callback is called with their level.
+     * Also available to remote clients by the reserved {@link Utils#PRESET}
+     * parameter of set_parameters.
+     * @param name of the preset.
+     * @return current configuration once applied.
+     * @throws DynamicReconfigureParameterException if the preset is unknown.
+     */
+    public Config loadPreset(String name) {
+        Preset preset = this.presets.get(name);
+
+        if (preset == null) {
+            throw new DynamicReconfigureParameterException("Preset " + name + " not found !");
+        }
+
+        return this.loadPreset(preset, null);
+    }
+
+    private Config loadPreset(Preset preset, String trace) {
+        this.node.getLog().info("Load preset " + preset.getName());
+
+        synchronized (this.applyLock) {
+            if (this.isStalled()) {
+                return this.defer(preset.getConfig(), preset.getLevel());
+            }
+
+            long before = this.configInstance.getFingerprint();
+            int level = this.configInstance.apply(preset);
+
+            if (this.configInstance.getFingerprint() == before) {
+                this.node.getLog().debug("No-op reconfigure, skip it.");
+                this.metrics.noopReconfigured();
+            } else {
+                this.config = this.commit(level, this.revision.incrementAndGet(), trace);
+            }
+
+            return this.config;
+        }
+    }
+
+    /**
+     * Publish an applied configuration on parameter_revisions, without its
+     * reserved parameters on parameter_updates (and the shared mirror).
+     * @param snapshot configuration.
+     */
+    private void publish(Config snapshot) {
+        SharedConfigWriter currentMirror = this.mirror;
+        if (currentMirror != null) {
+            currentMirror.write(snapshot);
+        }
+        this.publisherRevision.publish(snapshot);
+        this.publisherUpdate.publish(Utils.withoutReserved(this.node.getTopicMessageFactory(), snapshot));
+        this.configPublisher.offer(snapshot);
+    }
+
+    /**
+     * Applied configurations as a Reactive Streams publisher.
+     * Slow subscribers receive the latest configuration, not all of them.
+     * Configurations are snapshots (with their revision), subscribers must not change them.
+     * @return the publisher.
+     */
+    public org.reactivestreams.Publisher<Config> getConfigPublisher() {
+        return this.configPublisher;
+    }
+
+    /**
+     * Mirror the configuration into shared memory, for co-located readers.
+     * @param mirror Writer of the mirror (eg. new SharedConfigWriter(path, getDescription())), null to stop.
+     */
+    public void setSharedMirror(SharedConfigWriter mirror) {
+        this.mirror = mirror;
+        if (mirror != null && this.config != null) {
+            mirror.write(this.config);
+        }
+    }
+
+    /**
+     * Limit the rate of set_parameters requests by calling node, as reported
+     * by its advisory caller tag (see {@link AdmissionControl}).
+     * Rejected requests are replied with the current configuration,
+     * flagged with {@link Utils#isRejected(Config)}, without any change.
+     * @param admission Admission control, null to admit all requests.
+     */
+    public void setAdmissionControl(AdmissionControl admission) {
+        this.admission = admission;
+    }
+
+    /**
+     * Export the propagation spans of traced requests (see {@link ReconfigureTracer}).
+     * @param tracer Tracer, null to stop tracing.
+     */
+    public void setTracer(ReconfigureTracer tracer) {
+        this.tracer = tracer;
+    }
+
+    /**
+     * Record the incoming requests of the set_parameters service.
+     * @param recorder Recorder, null to stop recording.
+     */
+    public void setRecorder(ReconfigureRecorder recorder) {
+        this.recorder = recorder;
+    }
+
+    /**
+     * Reply of a compare-and-set conflict : current configuration with conflict flag.
+     * @return the reply.
+     */
+    private Config makeConflict() {
+        Config result = Utils.copyConfig(this.node.getTopicMessageFactory(), this.config);
+        Utils.encodeConfig(this.node.getTopicMessageFactory(), Utils.CONFLICT, Utils.TYPE_BOOL, true, result);
+        return result;
+    }
+
+    /**
+     * Reply of a rejected request : current configuration with rejected flag.
+     * @return the reply.
+     */
+    private Config makeRejected() {
+        Config result = Utils.copyConfig(this.node.getTopicMessageFactory(), this.config);
+        Utils.encodeConfig(this.node.getTopicMessageFactory(), Utils.REJECTED, Utils.TYPE_BOOL, true, result);
+        return result;
+    }
+
+    /**
+     * Description of the configuration.
+     * @return the description.
+     */
+    public ConfigDescription getDescription() {
+        return this.description;
+    }
+
+    /**
+     * Current configuration, as last published.
+     * @return the configuration.
+     */
+    public Config getConfiguration() {
+        return this.config;
+    }
+
+    /**
+     * Revision of the current configuration, incremented on each applied configuration.
+     * @return the revision.
+     */
+    public int getRevision() {
+        return this.revision.get();
+    }
+
+    /**
+     * Define the deadline of the reconfigure callback.
+     * Over its deadline, the reconfigure reply the last good configuration
+     * (its revision is not used), and next reconfigures are merged and deferred
+     * until the callback returns (or fails). Then the config instance is rolled
+     * back, the deferred reconfigures are applied, and the callback is called
+     * again under the same deadline before publishing under a new revision.
+     * @param timeout Deadline, 0 to call the callback without watchdog.
+     * @param unit Unit of timeout.
+     */
+    public void setCallbackTimeout(long timeout, TimeUnit unit) {
+        synchronized (this.callbackLock) {
+            if (timeout > 0 && this.callbackExecutor == null) {
+                this.callbackExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "dynamic_reconfigure-callback");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            this.callbackTimeout = unit.toNanos(timeout);
+        }
+    }
+
+    /**
+     * Counters of this server.
+     * @return metrics.
+     */
+    public ServerMetrics getMetrics() {
+        return this.metrics;
+    }
+
+    /**
+     * Internal method for copy Dynamic-Reconfiguration configuration into the server parameter.
+     * Only the parameters changed since the last copy are written.
+     */
     protected void copyToParameterServer() {
-        String rosParamNameString;
         this.node.getLog().info("Save to parameter server...");
 
         for (final BoolParameter param : this.config.getBools()) {
-            rosParamNameString = "~" + param.getName();
-            this.node.getLog().debug("save : " + rosParamNameString);
-            this.node.getParameterTree().set(
-                    rosParamNameString,
-                    param.getValue());
+            this.persist(param.getName(), param.getValue());
         }
         for (final IntParameter param : this.config.getInts()) {
-            rosParamNameString = "~" + param.getName();
-            this.node.getLog().debug("save : " + rosParamNameString);
-            this.node.getParameterTree().set(
-                    rosParamNameString,
-                    param.getValue());
+            this.persist(param.getName(), param.getValue());
         }
         for (final StrParameter param : this.config.getStrs()) {
-            rosParamNameString = "~" + param.getName();
-            this.node.getLog().debug("save : " + rosParamNameString);
-            this.node.getParameterTree().set(
-                    rosParamNameString,
-                    param.getValue());
+            this.persist(param.getName(), param.getValue());
         }
         for (final DoubleParameter param : this.config.getDoubles()) {
-            rosParamNameString = "~" + param.getName();
-            this.node.getLog().debug("save : " + rosParamNameString);
-            this.node.getParameterTree().set(
-                    rosParamNameString,
-                    param.getValue());
+            this.persist(param.getName(), param.getValue());
         }
     }
 
+    /**
+     * Write a parameter to the parameter server, if changed since the last write.
+     * @param name Name of the parameter (reserved ones are not written).
+     * @param value Value of the parameter.
+     */
+    private void persist(String name, Object value) {
+        if (Utils.isReserved(name) || value.equals(this.persisted.get(name))) {
+            return;
+        }
+
+        String rosParamNameString = "~" + name;
+        this.node.getLog().debug("save : " + rosParamNameString);
+        if (value instanceof Boolean) {
+            this.node.getParameterTree().set(rosParamNameString, (Boolean) value);
+        } else if (value instanceof Integer) {
+            this.node.getParameterTree().set(rosParamNameString, (Integer) value);
+        } else if (value instanceof String) {
+            this.node.getParameterTree().set(rosParamNameString, (String) value);
+        } else {
+            this.node.getParameterTree().set(rosParamNameString, (Double) value);
+        }
+        this.persisted.put(name, value);
+    }
+
     /** Internal method for copy the server parameter to Dynamic-Reconfiguration configuration. */
     protected void copyFromParameterServer() {
         String rosParamNameString;
         this.node.getLog().info("Load from parameter server...");
 
-        for (final BoolParameter param : this.config.getBools()) {
-            rosParamNameString = "~" + param.getName();
-            if (this.node.getParameterTree().search(rosParamNameString) != null) {
-                this.node.getLog().debug("found : " + rosParamNameString);
-                param.setValue(
-                        this.node.getParameterTree()
-                            .getBoolean(rosParamNameString));
-        }}
-        for (final IntParameter param : this.config.getInts()) {
-            rosParamNameString = "~" + param.getName();
-            if (this.node.getParameterTree().search(rosParamNameString) != null) {
-                this.node.getLog().debug("found : " + rosParamNameString);
-                param.setValue(
-                        this.node.getParameterTree()
-                            .getInteger(rosParamNameString));
-        }}
-        for (final StrParameter param : this.config.getStrs()) {
-            rosParamNameString = "~" + param.getName();
-            if (this.node.getParameterTree().search(rosParamNameString) != null) {
-                this.node.getLog().debug("found : " + rosParamNameString);
-                param.setValue(
-                        this.node.getParameterTree()
-                            .getString(rosParamNameString));
-        }}
-        for (final DoubleParameter param : this.config.getDoubles()) {
-            rosParamNameString = "~" + param.getName();
-            if (this.node.getParameterTree().search(rosParamNameString) != null) {
+        for (final Group group : this.description.getGroups()) {
+            for (final ParamDescription param : group.getParameters()) {
+                rosParamNameString = "~" + param.getName();
+                if (this.node.getParameterTree().search(rosParamNameString) == null) {
+                    continue;
+                }
+
                 this.node.getLog().debug("found : " + rosParamNameString);
-                param.setValue(
-                        this.node.getParameterTree()
-                        .getDouble(rosParamNameString));
-        }}
+                if (Utils.TYPE_BOOL.equals(param.getType())) {
+                    this.configInstance.setBool(param.getName(),
+                            this.node.getParameterTree().getBoolean(rosParamNameString));
+                } else if (Utils.TYPE_INT.equals(param.getType())) {
+                    this.configInstance.setInteger(param.getName(),
+                            this.node.getParameterTree().getInteger(rosParamNameString));
+                } else if (Utils.TYPE_STR.equals(param.getType())) {
+                    this.configInstance.setString(param.getName(),
+                            this.node.getParameterTree().getString(rosParamNameString));
+                } else if (Utils.TYPE_DBL.equals(param.getType())) {
+                    this.configInstance.setDouble(param.getName(),
+                            this.node.getParameterTree().getDouble(rosParamNameString));
+                }
+            }
+        }
+    }
+
+    /** Internal method for watch the server parameter of each Dynamic-Reconfiguration field. */
+    protected void subscribeParameterServer() {
+        for (final Group group : this.description.getGroups()) {
+            for (final ParamDescription param : group.getParameters()) {
+                this.node.getParameterTree().addParameterListener(
+                        "~" + param.getName(),
+                        new ParameterListener() {
+                            @Override
+                            public void onNewValue(Object value) {
+                                Server.this.onParameterServerUpdate(param, value);
+                            }
+                        });
+            }
+        }
+    }
+
+    /**
+     * Apply an external change of the server parameter (eg. rosparam set)
+     * through the normal reconfigure pipeline.
+     * @param param Description of the changed parameter.
+     * @param value New value on the parameter server.
+     */
+    protected void onParameterServerUpdate(ParamDescription param, Object value) {
+        Object decoded;
+
+        try {
+            decoded = Utils.decodeValue(param.getType(), value);
+        } catch (DynamicReconfigureParameterException e) {
+            this.node.getLog().error("Ignore parameter server update : " + e.getMessage());
+            return;
+        }
+
+        // Our own writes are not notified back by the master : an update equal to
+        // the applied value is a no-op (eg. a rosparam set of the same value).
+        if (decoded.equals(this.appliedValue(param))) {
+            this.node.getLog().debug("unchanged : ~" + param.getName());
+        } else {
+            this.node.getLog().info("Parameter server update : ~" + param.getName());
+
+            Config update = this.node.getTopicMessageFactory().newFromType(Config._TYPE);
+            Utils.encodeConfig(
+                    this.node.getTopicMessageFactory(),
+                    param.getName(),
+                    param.getType(),
+                    decoded,
+                    update);
+
+            this.apply(update, param.getLevel());
+        }
+    }
+
+    /**
+     * Applied value of a parameter.
+     * @param param Description of the parameter.
+     * @return the value in the current configuration, null if none.
+     */
+    private Object appliedValue(ParamDescription param) {
+        Config current = this.config;
+        Object result = null;
+
+        if (current != null) {
+            if (Utils.TYPE_BOOL.equals(param.getType())) {
+                for (BoolParameter value : current.getBools()) {
+                    if (value.getName().equals(param.getName())) {
+                        result = value.getValue();
+                    }
+                }
+            } else if (Utils.TYPE_INT.equals(param.getType())) {
+                for (IntParameter value : current.getInts()) {
+                    if (value.getName().equals(param.getName())) {
+                        result = value.getValue();
+                    }
+                }
+            } else if (Utils.TYPE_STR.equals(param.getType())) {
+                for (StrParameter value : current.getStrs()) {
+                    if (value.getName().equals(param.getName())) {
+                        result = value.getValue();
+                    }
+                }
+            } else if (Utils.TYPE_DBL.equals(param.getType())) {
+                for (DoubleParameter value : current.getDoubles()) {
+                    if (value.getName().equals(param.getName())) {
+                        result = value.getValue();
+                    }
+                }
+            }
+        }
+
+        return result;
     }
 
     /**
@@ -220,16 +1227,57 @@ public class Server<T extends BaseConfig> implements ServiceResponseBuilder<Reco
 
     /** Close connection. */
     public void close() {
-        this.serviceReconfigure.shutdown();
-        this.publisherUpdate.shutdown();
-        this.publisherDescription.shutdown();
+        synchronized (this.callbackLock) {
+            if (this.callbackExecutor != null) {
+                this.callbackExecutor.shutdownNow();
+            }
+        }
+        this.configPublisher.complete();
+
+        // Can be partially started (see start).
+        if (this.serviceReconfigure != null) {
+            this.serviceReconfigure.shutdown();
+        }
+        if (this.publisherUpdate != null) {
+            this.publisherUpdate.shutdown();
+        }
+        if (this.publisherRevision != null) {
+            this.publisherRevision.shutdown();
+        }
+        if (this.publisherDescription != null) {
+            this.publisherDescription.shutdown();
+        }
     }
 
     @Override
     public void build(ReconfigureRequest request, ReconfigureResponse response) throws ServiceException {
         this.node.getLog().info("call service");
-        this.config = this.changeConfig(request.getConfig(), 0);
-        response.setConfig(this.config);
+
+        AdmissionControl currentAdmission = this.admission;
+        if (currentAdmission != null
+                && !currentAdmission.tryAcquire(Utils.getString(request.getConfig(), Utils.CALLER, null))) {
+            this.node.getLog().debug("Request over admission limit, reject it.");
+            this.metrics.rejected();
+            response.setConfig(this.makeRejected());
+            return;
+        }
+
+        ReconfigureRecorder currentRecorder = this.recorder;
+        if (currentRecorder != null) {
+            try {
+                currentRecorder.record(request.getConfig());
+            } catch (IOException e) {
+                this.node.getLog().error("Stop recording : " + e.getMessage());
+                this.recorder = null;
+            }
+        }
+
+        ReconfigureTracer currentTracer = this.tracer;
+        String trace = currentTracer != null ? Utils.getString(request.getConfig(), Utils.TRACE, null) : null;
+        long time = trace != null ? currentTracer.now() : 0;
+
+        response.setConfig(this.reconfigure(request.getConfig()));
+        this.mark(trace, "server.build", time, Utils.getRevision(response.getConfig()));
 //        encode_config(this.updateConfiguration(decode_config(req.config, self.type.config_description)))
         try {
             Thread.sleep(1);
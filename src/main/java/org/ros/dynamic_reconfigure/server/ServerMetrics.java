@@ -0,0 +1,112 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.server;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a Dynamic-Reconfiguration server.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class ServerMetrics {
+
+    /** Applied reconfigures. */
+    private final AtomicLong reconfigures = new AtomicLong();
+    /** Reconfigures identical to the current config, replied without change. */
+    private final AtomicLong noopReconfigures = new AtomicLong();
+    /** Compare-and-set reconfigures rejected as based on a stale revision. */
+    private final AtomicLong conflicts = new AtomicLong();
+    /** Requests rejected by admission control. */
+    private final AtomicLong rejections = new AtomicLong();
+    /** Callbacks over their deadline. */
+    private final AtomicLong callbackTimeouts = new AtomicLong();
+    /** Reconfigures deferred because the callback was stalled. */
+    private final AtomicLong callbackSkips = new AtomicLong();
+    /** Callback currently running over its deadline. */
+    private volatile boolean callbackStalled;
+
+    void reconfigured() {
+        this.reconfigures.incrementAndGet();
+    }
+
+    void noopReconfigured() {
+        this.noopReconfigures.incrementAndGet();
+    }
+
+    void conflict() {
+        this.conflicts.incrementAndGet();
+    }
+
+    void rejected() {
+        this.rejections.incrementAndGet();
+    }
+
+    void callbackTimeout() {
+        this.callbackTimeouts.incrementAndGet();
+        this.callbackStalled = true;
+    }
+
+    void callbackSkipped() {
+        this.callbackSkips.incrementAndGet();
+    }
+
+    void callbackRecovered() {
+        this.callbackStalled = false;
+    }
+
+    public long getReconfigures() {
+        return this.reconfigures.get();
+    }
+
+    public long getNoopReconfigures() {
+        return this.noopReconfigures.get();
+    }
+
+    public long getConflicts() {
+        return this.conflicts.get();
+    }
+
+    public long getRejections() {
+        return this.rejections.get();
+    }
+
+    public long getCallbackTimeouts() {
+        return this.callbackTimeouts.get();
+    }
+
+    public long getCallbackSkips() {
+        return this.callbackSkips.get();
+    }
+
+    public boolean isCallbackStalled() {
+        return this.callbackStalled;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "reconfigures=%d noopReconfigures=%d conflicts=%d rejections=%d callbackTimeouts=%d callbackSkips=%d callbackStalled=%b",
+                this.getReconfigures(),
+                this.getNoopReconfigures(),
+                this.getConflicts(),
+                this.getRejections(),
+                this.getCallbackTimeouts(),
+                this.getCallbackSkips(),
+                this.isCallbackStalled());
+    }
+}
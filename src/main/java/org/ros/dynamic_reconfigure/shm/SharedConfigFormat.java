@@ -0,0 +1,55 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.shm;
+
+import java.nio.charset.Charset;
+
+/**
+ * Constants of the shared-memory layout, see package documentation.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class SharedConfigFormat {
+
+    public static final byte[] MAGIC = { 'D', 'R', 'S', 'M' };
+    public static final int VERSION = 2;
+
+    public static final int OFFSET_VERSION = 4;
+    public static final int OFFSET_SEQUENCE = 8;
+    public static final int OFFSET_COUNT = 16;
+    public static final int OFFSET_DIRECTORY = 20;
+    public static final int OFFSET_VALUES = 24;
+    public static final int OFFSET_STRINGS = 28;
+    public static final int OFFSET_STRING_SIZE = 32;
+    public static final int OFFSET_REVISION = 36;
+    public static final int OFFSET_FLAGS = 40;
+    public static final int HEADER_SIZE = 64;
+
+    public static final int VALUE_SIZE = 8;
+    /** Values start on a multiple of 8 bytes, so each value is naturally aligned. */
+    public static final int VALUE_ALIGNMENT = 8;
+
+    public static final byte TYPE_BOOL = 0;
+    public static final byte TYPE_INT = 1;
+    public static final byte TYPE_STR = 2;
+    public static final byte TYPE_DBL = 3;
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private SharedConfigFormat() {
+    }
+}
@@ -0,0 +1,281 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.shm;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.ros.dynamic_reconfigure.DynamicReconfigureException;
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+
+/**
+ * Read a configuration mirrored by {@link SharedConfigWriter}, with plain memory reads.
+ *
+ * Consistent reads of many values :
+ * <pre>
+ * long sequence;
+ * do {
+ *     sequence = reader.begin();
+ *     kp = reader.getDouble(kpIndex);
+ *     rate = reader.getInt(rateIndex);
+ * } while (!reader.validate(sequence));
+ * </pre>
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class SharedConfigReader {
+
+    private final MappedByteBuffer buffer;
+    private final int valuesOffset;
+    private final int flagsOffset;
+    private final int stringsOffset;
+    private final int stringSize;
+    private final String[] names;
+    private final byte[] types;
+    private final int[] stringSlots;
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+
+    /** Java 7 has no explicit fence : a volatile write then read of this field is used. */
+    private volatile int fence;
+
+    /**
+     * Open a mirror file.
+     * @param file path of the file.
+     * @throws IOException
+     */
+    public SharedConfigReader(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            channel.close();
+        }
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        for (int i = 0; i < SharedConfigFormat.MAGIC.length; i++) {
+            if (this.buffer.get(i) != SharedConfigFormat.MAGIC[i]) {
+                throw new DynamicReconfigureException(file + " is not a shared configuration !");
+            }
+        }
+        if (this.buffer.getInt(SharedConfigFormat.OFFSET_VERSION) != SharedConfigFormat.VERSION) {
+            throw new DynamicReconfigureException(file + " has an unknown format version !");
+        }
+
+        int count = this.buffer.getInt(SharedConfigFormat.OFFSET_COUNT);
+        this.valuesOffset = this.buffer.getInt(SharedConfigFormat.OFFSET_VALUES);
+        this.flagsOffset = this.buffer.getInt(SharedConfigFormat.OFFSET_FLAGS);
+        this.stringsOffset = this.buffer.getInt(SharedConfigFormat.OFFSET_STRINGS);
+        this.stringSize = this.buffer.getInt(SharedConfigFormat.OFFSET_STRING_SIZE);
+        this.names = new String[count];
+        this.types = new byte[count];
+        this.stringSlots = new int[count];
+
+        int position = this.buffer.getInt(SharedConfigFormat.OFFSET_DIRECTORY);
+        int strings = 0;
+        for (int i = 0; i < count; i++) {
+            this.types[i] = this.buffer.get(position);
+            byte[] name = new byte[this.buffer.getShort(position + 1)];
+            for (int j = 0; j < name.length; j++) {
+                name[j] = this.buffer.get(position + 3 + j);
+            }
+            this.names[i] = new String(name, SharedConfigFormat.UTF8);
+            this.indexes.put(this.names[i], i);
+            if (this.types[i] == SharedConfigFormat.TYPE_STR) {
+                this.stringSlots[i] = strings++;
+            }
+            position += 3 + name.length;
+        }
+    }
+
+    public int size() {
+        return this.names.length;
+    }
+
+    public String getName(int index) {
+        return this.names[index];
+    }
+
+    /**
+     * Type of a parameter.
+     * @param index of the parameter.
+     * @return one of SharedConfigFormat.TYPE_*.
+     */
+    public byte getType(int index) {
+        return this.types[index];
+    }
+
+    /**
+     * Index of a parameter.
+     * @param name of the parameter.
+     * @return the index, -1 if not found.
+     */
+    public int indexOf(String name) {
+        Integer result = this.indexes.get(name);
+        return result != null ? result : -1;
+    }
+
+    /**
+     * Accesses before stay before (volatile write), accesses after stay after (volatile read).
+     * @return the fence value (unused).
+     */
+    private int fence() {
+        this.fence = 1;
+        return this.fence;
+    }
+
+    /**
+     * Start a read : wait for the writer to leave the values.
+     * @return sequence to validate after reading values.
+     */
+    public long begin() {
+        long result;
+
+        while (((result = this.buffer.getLong(SharedConfigFormat.OFFSET_SEQUENCE)) & 1) != 0) {
+            Thread.yield();
+        }
+        this.fence();
+
+        return result;
+    }
+
+    /**
+     * End a read.
+     * @param sequence sequence returned by {@link #begin()}.
+     * @return true if the values read since begin are consistent, false to read them again.
+     */
+    public boolean validate(long sequence) {
+        this.fence();
+        return this.buffer.getLong(SharedConfigFormat.OFFSET_SEQUENCE) == sequence;
+    }
+
+    public boolean getBool(int index) {
+        return this.buffer.get(this.value(index)) != 0;
+    }
+
+    public int getInt(int index) {
+        return this.buffer.getInt(this.value(index));
+    }
+
+    public double getDouble(int index) {
+        return this.buffer.getDouble(this.value(index));
+    }
+
+    public String getString(int index) {
+        int length = Math.max(0, Math.min(this.buffer.getInt(this.value(index)), this.stringSize));
+        int position = this.stringsOffset + this.stringSlots[index] * this.stringSize;
+        byte[] bytes = new byte[length];
+
+        for (int i = 0; i < length; i++) {
+            bytes[i] = this.buffer.get(position + i);
+        }
+
+        return new String(bytes, SharedConfigFormat.UTF8);
+    }
+
+    /**
+     * Check if the value of a parameter is current : stale values are not in
+     * the last configuration (eg. their group is disabled), or not written yet.
+     * @param index of the parameter.
+     * @return true if current.
+     */
+    public boolean isCurrent(int index) {
+        return this.buffer.get(this.flagsOffset + index) != 0;
+    }
+
+    /**
+     * Revision of the configuration, -1 if not written yet.
+     * @return the revision.
+     */
+    public int getRevision() {
+        return this.buffer.getInt(SharedConfigFormat.OFFSET_REVISION);
+    }
+
+    private int value(int index) {
+        return this.valuesOffset + index * SharedConfigFormat.VALUE_SIZE;
+    }
+
+    /**
+     * Consistent value of a parameter.
+     * @param name of the parameter.
+     * @return boxed value (can be stale, see {@link #isCurrent(int)}).
+     * @throws DynamicReconfigureParameterException if not found.
+     */
+    public Object read(String name) {
+        int index = this.indexOf(name);
+        if (index < 0) {
+            throw new DynamicReconfigureParameterException("Parameter " + name + " not found !");
+        }
+
+        Object result;
+        long sequence;
+        do {
+            sequence = this.begin();
+            result = this.get(index);
+        } while (!this.validate(sequence));
+
+        return result;
+    }
+
+    /**
+     * Consistent values of all current parameters (stale values are not included).
+     * @return values by name.
+     */
+    public Map<String, Object> readAll() {
+        Map<String, Object> result = new LinkedHashMap<String, Object>();
+        long sequence;
+
+        do {
+            result.clear();
+            sequence = this.begin();
+            for (int i = 0; i < this.names.length; i++) {
+                if (this.isCurrent(i)) {
+                    result.put(this.names[i], this.get(i));
+                }
+            }
+        } while (!this.validate(sequence));
+
+        return result;
+    }
+
+    private Object get(int index) {
+        Object result;
+
+        switch (this.types[index]) {
+        case SharedConfigFormat.TYPE_BOOL:
+            result = this.getBool(index);
+            break;
+        case SharedConfigFormat.TYPE_INT:
+            result = this.getInt(index);
+            break;
+        case SharedConfigFormat.TYPE_STR:
+            result = this.getString(index);
+            break;
+        default:
+            result = this.getDouble(index);
+            break;
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,296 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.shm;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.ros.dynamic_reconfigure.Utils;
+
+import dynamic_reconfigure.BoolParameter;
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+import dynamic_reconfigure.DoubleParameter;
+import dynamic_reconfigure.Group;
+import dynamic_reconfigure.IntParameter;
+import dynamic_reconfigure.ParamDescription;
+import dynamic_reconfigure.StrParameter;
+
+/**
+ * Mirror a configuration into a memory-mapped file, see package documentation
+ * for the layout. Used by the Server, see {@code Server.setSharedMirror}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class SharedConfigWriter {
+
+    /** Default maximum bytes of a string value. */
+    public static final int STRING_SIZE_DEFAULT = 256;
+
+    private final MappedByteBuffer buffer;
+    private final int valuesOffset;
+    private final int flagsOffset;
+    private final int stringsOffset;
+    private final int stringSize;
+    /** Index of parameter by name. */
+    private final Map<String, Integer> indexes = new HashMap<String, Integer>();
+    /** Index of str parameter in strings, by parameter index. */
+    private final int[] stringSlots;
+    /** Parameters written by the current write. */
+    private final boolean[] written;
+
+    /** Java 7 has no explicit fence : a volatile write then read of this field is used. */
+    private volatile int fence;
+
+    public SharedConfigWriter(Path file, ConfigDescription description) throws IOException {
+        this(file, description, STRING_SIZE_DEFAULT);
+    }
+
+    /**
+     * Create (or reuse in place) the mirror file for a description.
+     * @param file path of the file (eg. in /dev/shm).
+     * @param description description of the configuration.
+     * @param stringSize maximum bytes of a string value (longer values are truncated).
+     * @throws IOException if the file can not be mapped, or has another format version.
+     */
+    public SharedConfigWriter(Path file, ConfigDescription description, int stringSize) throws IOException {
+        List<ParamDescription> params = new ArrayList<ParamDescription>();
+        for (Group group : description.getGroups()) {
+            params.addAll(group.getParameters());
+        }
+
+        List<byte[]> names = new ArrayList<byte[]>(params.size());
+        int directorySize = 0;
+        int strings = 0;
+        this.stringSlots = new int[params.size()];
+        for (int i = 0; i < params.size(); i++) {
+            byte[] name = params.get(i).getName().getBytes(SharedConfigFormat.UTF8);
+            names.add(name);
+            directorySize += 3 + name.length;
+            this.indexes.put(params.get(i).getName(), i);
+            if (Utils.TYPE_STR.equals(params.get(i).getType())) {
+                this.stringSlots[i] = strings++;
+            }
+        }
+
+        this.written = new boolean[params.size()];
+        this.stringSize = stringSize;
+        // Padded after the directory : aligned values are read and written in a single access.
+        this.valuesOffset = SharedConfigWriter.align(
+                SharedConfigFormat.HEADER_SIZE + directorySize,
+                SharedConfigFormat.VALUE_ALIGNMENT);
+        this.flagsOffset = this.valuesOffset + params.size() * SharedConfigFormat.VALUE_SIZE;
+        this.stringsOffset = this.flagsOffset + params.size();
+        int size = this.stringsOffset + strings * stringSize;
+
+        // Not truncated : readers may have the file mapped.
+        RandomAccessFile access = new RandomAccessFile(file.toFile(), "rw");
+        try {
+            SharedConfigWriter.checkVersion(access, file);
+            if (access.length() < size) {
+                access.setLength(size);
+            }
+            this.buffer = access.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } finally {
+            access.close();
+        }
+        this.buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        // Readers of a previous writer see the values change, and new readers
+        // an invalid magic, until the layout is written.
+        boolean reused = SharedConfigWriter.hasMagic(this.buffer);
+        long sequence = reused ? this.buffer.getLong(SharedConfigFormat.OFFSET_SEQUENCE) | 1L : 1L;
+        this.buffer.putLong(SharedConfigFormat.OFFSET_SEQUENCE, sequence);
+        this.fence();
+        for (int i = 0; i < SharedConfigFormat.MAGIC.length; i++) {
+            this.buffer.put(i, (byte) 0);
+        }
+        this.fence();
+
+        // Directory first, header last : a reader never sees a valid header without directory.
+        int position = SharedConfigFormat.HEADER_SIZE;
+        for (int i = 0; i < params.size(); i++) {
+            this.buffer.put(position, SharedConfigWriter.type(params.get(i).getType()));
+            this.buffer.putShort(position + 1, (short) names.get(i).length);
+            for (int j = 0; j < names.get(i).length; j++) {
+                this.buffer.put(position + 3 + j, names.get(i)[j]);
+            }
+            position += 3 + names.get(i).length;
+        }
+        for (int i = 0; i < params.size(); i++) {
+            this.buffer.put(this.flagsOffset + i, (byte) 0);
+        }
+
+        this.buffer.putInt(SharedConfigFormat.OFFSET_VERSION, SharedConfigFormat.VERSION);
+        this.buffer.putInt(SharedConfigFormat.OFFSET_COUNT, params.size());
+        this.buffer.putInt(SharedConfigFormat.OFFSET_DIRECTORY, SharedConfigFormat.HEADER_SIZE);
+        this.buffer.putInt(SharedConfigFormat.OFFSET_VALUES, this.valuesOffset);
+        this.buffer.putInt(SharedConfigFormat.OFFSET_STRINGS, this.stringsOffset);
+        this.buffer.putInt(SharedConfigFormat.OFFSET_STRING_SIZE, stringSize);
+        this.buffer.putInt(SharedConfigFormat.OFFSET_REVISION, -1);
+        this.buffer.putInt(SharedConfigFormat.OFFSET_FLAGS, this.flagsOffset);
+        this.fence();
+        this.buffer.putLong(SharedConfigFormat.OFFSET_SEQUENCE, sequence + 1);
+        this.fence();
+        for (int i = 0; i < SharedConfigFormat.MAGIC.length; i++) {
+            this.buffer.put(i, SharedConfigFormat.MAGIC[i]);
+        }
+    }
+
+    /** Round an offset up to a multiple of a power of two. */
+    private static int align(int offset, int alignment) {
+        return (offset + alignment - 1) & -alignment;
+    }
+
+    /**
+     * Check an existing shared configuration has the format version of this writer.
+     * @throws IOException if it has another version.
+     */
+    private static void checkVersion(RandomAccessFile access, Path file) throws IOException {
+        if (access.length() >= SharedConfigFormat.HEADER_SIZE) {
+            byte[] magic = new byte[SharedConfigFormat.MAGIC.length];
+            access.seek(0);
+            access.readFully(magic);
+            int version = Integer.reverseBytes(access.readInt());
+
+            if (Arrays.equals(magic, SharedConfigFormat.MAGIC) && version != SharedConfigFormat.VERSION) {
+                throw new IOException(String.format(
+                        "%s is a shared configuration of format version %d, not %d !",
+                        file, version, SharedConfigFormat.VERSION));
+            }
+        }
+    }
+
+    private static boolean hasMagic(MappedByteBuffer buffer) {
+        boolean result = true;
+
+        for (int i = 0; i < SharedConfigFormat.MAGIC.length; i++) {
+            result &= buffer.get(i) == SharedConfigFormat.MAGIC[i];
+        }
+
+        return result;
+    }
+
+    private static byte type(String type) {
+        byte result;
+
+        if (Utils.TYPE_BOOL.equals(type)) {
+            result = SharedConfigFormat.TYPE_BOOL;
+        } else if (Utils.TYPE_INT.equals(type)) {
+            result = SharedConfigFormat.TYPE_INT;
+        } else if (Utils.TYPE_STR.equals(type)) {
+            result = SharedConfigFormat.TYPE_STR;
+        } else {
+            result = SharedConfigFormat.TYPE_DBL;
+        }
+
+        return result;
+    }
+
+    /**
+     * Accesses before stay before (volatile write), accesses after stay after (volatile read).
+     * @return the fence value (unused).
+     */
+    private int fence() {
+        this.fence = 1;
+        return this.fence;
+    }
+
+    /**
+     * Write the values of a configuration (parameters not in the description are ignored).
+     * Parameters of the description not in the configuration are flagged stale.
+     * @param config configuration.
+     */
+    public synchronized void write(Config config) {
+        long sequence = this.buffer.getLong(SharedConfigFormat.OFFSET_SEQUENCE);
+        this.buffer.putLong(SharedConfigFormat.OFFSET_SEQUENCE, sequence + 1);
+        this.fence();
+
+        Arrays.fill(this.written, false);
+        Integer index;
+        for (BoolParameter param : config.getBools()) {
+            index = this.indexes.get(param.getName());
+            if (index != null) {
+                this.buffer.put(this.value(index), (byte) (param.getValue() ? 1 : 0));
+                this.written[index] = true;
+            }
+        }
+        for (IntParameter param : config.getInts()) {
+            index = this.indexes.get(param.getName());
+            if (index != null) {
+                this.buffer.putInt(this.value(index), param.getValue());
+                this.written[index] = true;
+            }
+        }
+        for (StrParameter param : config.getStrs()) {
+            index = this.indexes.get(param.getName());
+            if (index != null) {
+                this.putString(index, param.getValue());
+                this.written[index] = true;
+            }
+        }
+        for (DoubleParameter param : config.getDoubles()) {
+            index = this.indexes.get(param.getName());
+            if (index != null) {
+                this.buffer.putDouble(this.value(index), param.getValue());
+                this.written[index] = true;
+            }
+        }
+        for (int i = 0; i < this.written.length; i++) {
+            this.buffer.put(this.flagsOffset + i, (byte) (this.written[i] ? 1 : 0));
+        }
+        this.buffer.putInt(SharedConfigFormat.OFFSET_REVISION, Utils.getRevision(config));
+
+        this.fence();
+        this.buffer.putLong(SharedConfigFormat.OFFSET_SEQUENCE, sequence + 2);
+        this.fence();
+    }
+
+    private int value(int index) {
+        return this.valuesOffset + index * SharedConfigFormat.VALUE_SIZE;
+    }
+
+    private void putString(int index, String value) {
+        byte[] bytes = value.getBytes(SharedConfigFormat.UTF8);
+        int length = Math.min(bytes.length, this.stringSize);
+
+        // Do not cut an UTF-8 sequence.
+        while (length > 0 && length < bytes.length && (bytes[length] & 0xC0) == 0x80) {
+            length--;
+        }
+
+        int position = this.stringsOffset + this.stringSlots[index] * this.stringSize;
+        for (int i = 0; i < length; i++) {
+            this.buffer.put(position + i, bytes[i]);
+        }
+        this.buffer.putInt(this.value(index), length);
+    }
+
+    /** Flush the mirror to its file. */
+    public synchronized void close() {
+        this.buffer.force();
+    }
+}
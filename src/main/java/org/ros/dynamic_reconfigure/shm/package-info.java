@@ -0,0 +1,78 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+/**
+ * Shared-memory mirror of a Dynamic Reconfigure configuration, for
+ * co-located processes (java or native) reading it without ROS transport.
+ *
+ * <pre>
+ * File layout (little-endian, fixed at creation) :
+ *
+ * Header (64 bytes)
+ *   0  byte[4] magic "DRSM"
+ *   4  int32   format version (2)
+ *   8  int64   sequence : odd while the writer updates values, even otherwise
+ *  16  int32   parameter count (N)
+ *  20  int32   offset of directory
+ *  24  int32   offset of values
+ *  28  int32   offset of strings
+ *  32  int32   maximum bytes of a string value (S)
+ *  36  int32   revision of the configuration
+ *  40  int32   offset of flags
+ *
+ * Directory (N entries, written once)
+ *   int8   type : 0 bool, 1 int, 2 str, 3 double
+ *   int16  length of name (L)
+ *   byte[L] name (UTF-8)
+ *
+ * Padding (0 to 7 bytes)
+ *
+ * Values (N x 8 bytes, in directory order, offset aligned on 8 bytes)
+ *   bool   : int8 0 or 1
+ *   int    : int32
+ *   double : float64
+ *   str    : int32 length of value in bytes, value at strings + i * S (i : index of str parameter)
+ *
+ * Flags (N bytes, in directory order)
+ *   int8   1 if the value is current, 0 if stale : the parameter is not in the
+ *          last configuration (eg. its group is disabled), its value is an older one.
+ *
+ * Strings (number of str parameters x S bytes), values truncated to S bytes.
+ *
+ * Read protocol (seqlock) :
+ *   do {
+ *     s1 = sequence (acquire); if odd, retry;
+ *     read values;
+ *     s2 = sequence (acquire, after the reads);
+ *   } while (s1 != s2);
+ * </pre>
+ *
+ * An existing file is reused in place (never truncated, as readers may have
+ * it mapped) : it is grown if needed, and a file of another format version is
+ * not overwritten. The sequence keeps counting across writers.
+ *
+ * Memory ordering : Java 7 has no explicit fence, so the java writer and
+ * reader order their accesses to the mapped file with a volatile write then
+ * read of a field. The Java memory model does not guarantee this orders
+ * plain stores to a mapped buffer for another process. On x86 (stores are not
+ * reordered with other stores, nor loads with other loads) the protocol
+ * holds. On weakly-ordered processors (eg. ARM), a reader can see the new
+ * sequence before the values : readers there must not rely on the seqlock
+ * alone (eg. compare two consecutive reads).
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+package org.ros.dynamic_reconfigure.shm;
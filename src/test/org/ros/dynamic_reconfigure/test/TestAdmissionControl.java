@@ -0,0 +1,102 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.server.AdmissionControl;
+
+/**
+ * Test of {@link AdmissionControl}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestAdmissionControl {
+
+    /** Number of callers filling all buckets. */
+    private static final int CALLERS = 1024;
+
+    @Test
+    public void testBurst() {
+        AdmissionControl control = new AdmissionControl(0.001d, 2);
+
+        assertTrue(control.tryAcquire("/node"));
+        assertTrue(control.tryAcquire("/node"));
+        assertFalse(control.tryAcquire("/node"));
+        assertTrue(control.tryAcquire("/other"));
+    }
+
+    @Test
+    public void testOperator() {
+        AdmissionControl control = new AdmissionControl(0.001d, 1);
+        control.addOperator("/rqt_reconfigure");
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(control.tryAcquire("/rqt_reconfigure"));
+        }
+    }
+
+    @Test
+    public void testLimitKept() {
+        AdmissionControl control = new AdmissionControl(1000d, 1);
+        control.setLimit("/tuner", 0.001d, 1);
+
+        for (int i = 0; i < CALLERS; i++) {
+            control.tryAcquire("/node" + i);
+        }
+
+        assertTrue(control.tryAcquire("/tuner"));
+        assertFalse(control.tryAcquire("/tuner"));
+    }
+
+    @Test
+    public void testUntaggedAdmitted() {
+        AdmissionControl control = new AdmissionControl(0.001d, 1);
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(control.tryAcquire(null));
+        }
+
+        control.setLimit(AdmissionControl.ANONYMOUS, 0.001d, 2);
+        assertTrue(control.tryAcquire(null));
+        assertTrue(control.tryAcquire(AdmissionControl.ANONYMOUS));
+        assertFalse(control.tryAcquire(null));
+    }
+
+    @Test
+    public void testIdleBucketsEvicted() throws InterruptedException {
+        AdmissionControl control = new AdmissionControl(20d, 1);
+        control.setLimit(AdmissionControl.ANONYMOUS, 0.001d, 1);
+
+        // The anonymous limit uses one of the buckets.
+        for (int i = 0; i < CALLERS - 1; i++) {
+            assertTrue(control.tryAcquire("/node" + i));
+        }
+
+        // All buckets used : new callers share the overflow bucket, not the anonymous one.
+        assertTrue(control.tryAcquire("/late"));
+        assertFalse(control.tryAcquire("/later"));
+        assertTrue(control.tryAcquire(null));
+
+        // Once refilled, idle buckets are evicted : a new caller has its own.
+        Thread.sleep(200);
+        assertTrue(control.tryAcquire("/latest"));
+        assertFalse(control.tryAcquire("/latest"));
+        assertFalse(control.tryAcquire(null));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.client.ConfigDiff;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.Config;
+
+/**
+ * Test of {@link ConfigDiff}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestConfigDiff {
+
+    private MessageFactory factory;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = MockConnectedNode.factory();
+    }
+
+    private Config config(boolean enabled, int rate, String frame, double kp) {
+        Config result = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, "enabled", Utils.TYPE_BOOL, enabled, result);
+        Utils.appendConfig(this.factory, "rate", Utils.TYPE_INT, rate, result);
+        Utils.appendConfig(this.factory, "frame", Utils.TYPE_STR, frame, result);
+        Utils.appendConfig(this.factory, "kp", Utils.TYPE_DBL, kp, result);
+        return result;
+    }
+
+    @Test
+    public void testFirstConfig() {
+        ConfigDiff diff = new ConfigDiff(null, this.config(true, 10, "map", 1d));
+
+        assertEquals(4, diff.getNames().size());
+        assertEquals(1, diff.getBools().size());
+        assertEquals(1, diff.getInts().size());
+        assertEquals(1, diff.getStrs().size());
+        assertEquals(1, diff.getDoubles().size());
+    }
+
+    @Test
+    public void testUnchanged() {
+        ConfigDiff diff = new ConfigDiff(this.config(true, 10, "map", 1d), this.config(true, 10, "map", 1d));
+
+        assertTrue(diff.isEmpty());
+    }
+
+    @Test
+    public void testChanged() {
+        Config config = this.config(true, 10, "odom", 2d);
+        ConfigDiff diff = new ConfigDiff(this.config(true, 10, "map", 1d), config);
+
+        assertSame(config, diff.getConfig());
+        assertEquals(2, diff.getNames().size());
+        assertTrue(diff.isChanged("frame"));
+        assertTrue(diff.isChanged("kp"));
+        assertFalse(diff.isChanged("rate"));
+        assertEquals("odom", diff.getStrs().get(0).getValue());
+        assertEquals(2d, diff.getDoubles().get(0).getValue(), 0);
+    }
+
+    @Test
+    public void testByName() {
+        Config previous = this.config(true, 10, "map", 1d);
+        Utils.appendConfig(this.factory, "limit", Utils.TYPE_INT, 5, previous);
+
+        Config config = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, "limit", Utils.TYPE_INT, 6, config);
+        Utils.appendConfig(this.factory, "rate", Utils.TYPE_INT, 10, config);
+
+        ConfigDiff diff = new ConfigDiff(previous, config);
+
+        assertEquals(1, diff.getInts().size());
+        assertEquals("limit", diff.getInts().get(0).getName());
+    }
+
+    @Test
+    public void testReservedIgnored() {
+        Config previous = this.config(true, 10, "map", 1d);
+        Config config = this.config(true, 10, "map", 1d);
+        Utils.appendConfig(this.factory, Utils.REVISION, Utils.TYPE_INT, 3, config);
+        Utils.appendConfig(this.factory, Utils.CONFLICT, Utils.TYPE_BOOL, true, config);
+        Utils.appendConfig(this.factory, Utils.CALLER, Utils.TYPE_STR, "/caller", config);
+        Utils.appendConfig(this.factory, "__stamp__", Utils.TYPE_DBL, 4d, config);
+
+        assertTrue(new ConfigDiff(previous, config).isEmpty());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.server.BaseConfig;
+import org.ros.dynamic_reconfigure.server.ConfigLayout;
+import org.ros.dynamic_reconfigure.test.reference.AllTestConfig;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+import org.ros.node.ConnectedNode;
+
+/**
+ * Test of {@link ConfigLayout}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestConfigLayout {
+
+    /** Config whose default (allowed) or level (not allowed) depends on the instance. */
+    private static class VariableConfig extends BaseConfig {
+        public VariableConfig(ConnectedNode node, int rate) {
+            this(node, rate, 0);
+        }
+
+        public VariableConfig(ConnectedNode node, int rate, int level) {
+            super(node);
+            this.addField("rate", Utils.TYPE_INT, level, "Rate", rate, 0, 100);
+        }
+    }
+
+    @Test
+    public void testSharedOnNode() {
+        ConnectedNode node = MockConnectedNode.create("/a");
+        AllTestConfig first = new AllTestConfig(node);
+        AllTestConfig second = new AllTestConfig(node);
+
+        assertSame(first.getLayout(), second.getLayout());
+        assertEquals(1, first.getLayout().size(Utils.TYPE_INT));
+    }
+
+    @Test
+    public void testNotSharedBetweenNodes() {
+        AllTestConfig first = new AllTestConfig(MockConnectedNode.create("/a"));
+        AllTestConfig second = new AllTestConfig(MockConnectedNode.create("/b"));
+
+        assertNotSame(first.getLayout(), second.getLayout());
+        assertNotSame(first.makeConfigDescription(), second.makeConfigDescription());
+    }
+
+    @Test
+    public void testDifferentDefinition() {
+        ConnectedNode node = MockConnectedNode.create("/a");
+        new VariableConfig(node, 10);
+        new VariableConfig(node, 10);
+
+        try {
+            new VariableConfig(node, 10, 1);
+            fail("Different level accepted");
+        } catch (DynamicReconfigureParameterException e) {
+            assertTrue(e.getMessage().contains("rate"));
+        }
+
+        // Another node has its own layout.
+        assertEquals(20, new VariableConfig(MockConnectedNode.create("/b"), 20, 1).getInteger("rate", 0).intValue());
+    }
+
+    @Test
+    public void testDefaultByInstance() {
+        ConnectedNode node = MockConnectedNode.create("/a");
+        VariableConfig first = new VariableConfig(node, 10);
+        VariableConfig second = new VariableConfig(node, 20);
+
+        assertSame(first.getLayout(), second.getLayout());
+        assertEquals(10, first.getInteger("rate", 0).intValue());
+        assertEquals(20, second.getInteger("rate", 0).intValue());
+        assertEquals(10, Utils.getInt(first.makeConfigDescription().getDflt(), "rate", 0));
+        assertEquals(20, Utils.getInt(second.makeConfigDescription().getDflt(), "rate", 0));
+        assertEquals(10, Utils.getInt(first.makeConfigDescription().getDflt(), "rate", 0));
+    }
+
+    @Test
+    public void testGroups() {
+        ConnectedNode node = MockConnectedNode.create("/a");
+        AllTestConfig config = new AllTestConfig(node);
+        config.addGroup("arm", Utils.GROUP_DEFAULT);
+        config.addGroup("gripper", "arm");
+
+        ConfigLayout layout = config.getLayout();
+        assertEquals(0, layout.groupId(Utils.GROUP_DEFAULT));
+        assertEquals(2, layout.groupId("gripper"));
+        assertEquals(1, layout.groupParent(layout.groupId("gripper")));
+        assertEquals(-1, layout.groupId("nope"));
+    }
+
+    @Test
+    public void testNames() {
+        AllTestConfig config = new AllTestConfig(MockConnectedNode.create("/a"));
+        ConfigLayout.Names names = config.getLayout().names();
+
+        assertArrayEquals(new String[] { Utils.TYPE_INT + "_name" }, names.get(Utils.TYPE_INT));
+        assertSame(names, config.getLayout().names());
+
+        config.addField("other", Utils.TYPE_INT, 0, "Other", 1, 0, 10);
+        assertEquals(2, config.getLayout().names().get(Utils.TYPE_INT).length);
+        assertEquals(2, config.getCurrentConfig().getInts().size());
+    }
+}
@@ -0,0 +1,142 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.ros.dynamic_reconfigure.ConfigPublisher;
+
+/**
+ * Test of {@link ConfigPublisher}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestConfigPublisher {
+
+    /** Subscriber recording its signals. */
+    private static class Recorder implements Subscriber<String> {
+        private final long initialDemand;
+        private final List<String> signals = new ArrayList<String>();
+        private Subscription subscription;
+
+        Recorder(long initialDemand) {
+            this.initialDemand = initialDemand;
+        }
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+            this.signals.add("subscribe");
+            if (this.initialDemand > 0) {
+                s.request(this.initialDemand);
+            }
+        }
+
+        @Override
+        public void onNext(String value) {
+            this.signals.add(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            this.signals.add("error");
+        }
+
+        @Override
+        public void onComplete() {
+            this.signals.add("complete");
+        }
+    }
+
+    @Test
+    public void testLatestOnSubscribe() {
+        ConfigPublisher<String> publisher = new ConfigPublisher<String>();
+        publisher.offer("a");
+        publisher.offer("b");
+
+        Recorder recorder = new Recorder(Long.MAX_VALUE);
+        publisher.subscribe(recorder);
+        publisher.offer("c");
+
+        assertEquals("[subscribe, b, c]", recorder.signals.toString());
+    }
+
+    @Test
+    public void testConflation() {
+        ConfigPublisher<String> publisher = new ConfigPublisher<String>();
+        Recorder recorder = new Recorder(0);
+        publisher.subscribe(recorder);
+
+        publisher.offer("a");
+        publisher.offer("b");
+        assertEquals("[subscribe]", recorder.signals.toString());
+
+        recorder.subscription.request(5);
+        publisher.offer("c");
+        assertEquals("[subscribe, b, c]", recorder.signals.toString());
+    }
+
+    @Test
+    public void testCompleteAfterPending() {
+        ConfigPublisher<String> publisher = new ConfigPublisher<String>();
+        publisher.offer("a");
+        publisher.complete();
+
+        Recorder recorder = new Recorder(1);
+        publisher.subscribe(recorder);
+
+        assertEquals("[subscribe, a, complete]", recorder.signals.toString());
+        assertEquals(0, publisher.getSubscriberCount());
+    }
+
+    @Test
+    public void testConcurrentSubscribeSeesNewest() throws InterruptedException {
+        final ConfigPublisher<String> publisher = new ConfigPublisher<String>();
+
+        for (int round = 0; round < 200; round++) {
+            publisher.offer("old");
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    publisher.offer("new");
+                }
+            });
+            final Recorder recorder = new Recorder(Long.MAX_VALUE) {
+                @Override
+                public synchronized void onNext(String value) {
+                    super.onNext(value);
+                }
+            };
+
+            writer.start();
+            publisher.subscribe(recorder);
+            writer.join();
+
+            synchronized (recorder) {
+                List<String> signals = recorder.signals;
+                assertEquals("new", signals.get(signals.size() - 1));
+            }
+            recorder.subscription.cancel();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.ConfigSchema;
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.test.reference.AllTestConfig;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+
+/**
+ * Test of {@link ConfigSchema}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestConfigSchema {
+
+    private static final String BOOL = Utils.TYPE_BOOL + "_name";
+    private static final String DBL = Utils.TYPE_DBL + "_name";
+    private static final String INT = Utils.TYPE_INT + "_name";
+
+    private MessageFactory factory;
+    private ConfigDescription description;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = MockConnectedNode.factory();
+        this.description = new AllTestConfig(MockConnectedNode.create("/test")).makeConfigDescription();
+    }
+
+    @Test
+    public void testClamp() {
+        ConfigSchema schema = new ConfigSchema(this.description);
+        Config config = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 100, config);
+        Utils.appendConfig(this.factory, DBL, Utils.TYPE_DBL, -1.5d, config);
+
+        schema.validate(config);
+
+        assertEquals(88, config.getInts().get(0).getValue());
+        assertEquals(0d, config.getDoubles().get(0).getValue(), 0);
+    }
+
+    @Test
+    public void testReservedSkipped() {
+        ConfigSchema schema = new ConfigSchema(this.description);
+        Config config = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, Utils.REVISION, Utils.TYPE_INT, 12, config);
+        Utils.appendConfig(this.factory, "__stamp__", Utils.TYPE_DBL, 1e12d, config);
+
+        schema.validate(config);
+
+        assertEquals(12, config.getInts().get(0).getValue());
+        assertEquals(1e12d, config.getDoubles().get(0).getValue(), 0);
+    }
+
+    @Test
+    public void testTypedBoundWins() {
+        // Bounds of an int parameter also sent as double.
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_DBL, 50d, this.description.getMin());
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_DBL, 60d, this.description.getMax());
+        // Bounds of a double parameter sent as double, after the int ones.
+        Utils.appendConfig(this.factory, DBL, Utils.TYPE_DBL, 1d, this.description.getMin());
+        Utils.appendConfig(this.factory, DBL, Utils.TYPE_DBL, 2d, this.description.getMax());
+        ConfigSchema schema = new ConfigSchema(this.description);
+
+        assertEquals(0d, schema.get(INT).getMin(), 0);
+        assertEquals(88d, schema.get(INT).getMax(), 0);
+        assertEquals(1d, schema.get(DBL).getMin(), 0);
+        assertEquals(2d, schema.get(DBL).getMax(), 0);
+    }
+
+    @Test(expected = DynamicReconfigureParameterException.class)
+    public void testUnknown() {
+        Config config = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, "unknown", Utils.TYPE_INT, 1, config);
+        new ConfigSchema(this.description).validate(config);
+    }
+
+    @Test(expected = DynamicReconfigureParameterException.class)
+    public void testWrongType() {
+        Config config = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, BOOL, Utils.TYPE_INT, 1, config);
+        new ConfigSchema(this.description).validate(config);
+    }
+}
@@ -0,0 +1,121 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.Fingerprint;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.test.reference.AllTestConfig;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.Config;
+
+/**
+ * Test of {@link Fingerprint} and {@link AllTestConfig#fingerprintAfter(Config)}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestFingerprint {
+
+    private static final String BOOL = Utils.TYPE_BOOL + "_name";
+    private static final String DBL = Utils.TYPE_DBL + "_name";
+    private static final String INT = Utils.TYPE_INT + "_name";
+    private static final String STR = Utils.TYPE_STR + "_name";
+
+    private MessageFactory factory;
+    private AllTestConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = MockConnectedNode.factory();
+        this.config = new AllTestConfig(MockConnectedNode.create("/test"));
+    }
+
+    @Test
+    public void testMaintainedFingerprint() {
+        assertEquals(Fingerprint.of(this.config.getCurrentConfig()), this.config.getFingerprint());
+
+        Config request = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 3, request);
+        Utils.appendConfig(this.factory, STR, Utils.TYPE_STR, "other", request);
+        this.config.merge(request);
+
+        assertEquals(Fingerprint.of(this.config.getCurrentConfig()), this.config.getFingerprint());
+        long maintained = this.config.getFingerprint();
+        this.config.rehash();
+        assertEquals(maintained, this.config.getFingerprint());
+    }
+
+    @Test
+    public void testReservedIgnored() {
+        Config current = this.config.getCurrentConfig();
+        long before = Fingerprint.of(current);
+
+        Utils.appendConfig(this.factory, Utils.REVISION, Utils.TYPE_INT, 12, current);
+        Utils.appendConfig(this.factory, Utils.CONFLICT, Utils.TYPE_BOOL, true, current);
+        Utils.appendConfig(this.factory, Utils.CALLER, Utils.TYPE_STR, "/caller", current);
+
+        assertEquals(before, Fingerprint.of(current));
+    }
+
+    @Test
+    public void testFingerprintAfter() {
+        Config request = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, BOOL, Utils.TYPE_BOOL, false, request);
+        Utils.appendConfig(this.factory, DBL, Utils.TYPE_DBL, 1.5d, request);
+
+        long expected = this.config.fingerprintAfter(request);
+        assertTrue(expected != this.config.getFingerprint());
+
+        this.config.merge(request);
+        assertEquals(expected, this.config.getFingerprint());
+    }
+
+    @Test
+    public void testFingerprintAfterNoop() {
+        Config request = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 8, request);
+        Utils.appendConfig(this.factory, "unknown", Utils.TYPE_INT, 5, request);
+
+        assertEquals(this.config.getFingerprint(), this.config.fingerprintAfter(request));
+    }
+
+    @Test
+    public void testFingerprintAfterRepeated() {
+        // Merged twice, the last value wins : the change must not cancel itself.
+        Config request = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 5, request);
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 5, request);
+
+        long expected = this.config.fingerprintAfter(request);
+        assertTrue(expected != this.config.getFingerprint());
+
+        this.config.merge(request);
+        assertEquals(5, this.config.getInteger(INT, 0).intValue());
+        assertEquals(expected, this.config.getFingerprint());
+
+        // Repeated back to the current value : no-op.
+        request = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 7, request);
+        Utils.appendConfig(this.factory, INT, Utils.TYPE_INT, 5, request);
+        assertEquals(this.config.getFingerprint(), this.config.fingerprintAfter(request));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.aggregator.FleetIndex;
+import org.ros.dynamic_reconfigure.test.reference.AllTestConfig;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.ConfigDescription;
+
+/**
+ * Test of {@link FleetIndex}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestFleetIndex {
+
+    private static final String INT = Utils.TYPE_INT + "_name";
+    private static final String STR = Utils.TYPE_STR + "_name";
+
+    private FleetIndex index;
+    private AllTestConfig config;
+
+    @Before
+    public void setUp() throws Exception {
+        this.index = new FleetIndex();
+        this.config = new AllTestConfig(MockConnectedNode.create("/test"));
+    }
+
+    private Config snapshot(int revision) {
+        Config result = this.config.getCurrentConfig();
+        Utils.encodeConfig(MockConnectedNode.factory(), Utils.REVISION, Utils.TYPE_INT, revision, result);
+        return result;
+    }
+
+    @Test
+    public void testDescriptionBeforeConfig() {
+        ConfigDescription description = this.config.makeConfigDescription();
+
+        this.index.describe("/a", description);
+        assertNotNull(this.index.getSchema("/a"));
+        assertNull(this.index.getValue("/a", INT));
+        assertEquals(-1, this.index.getRevision("/a"));
+
+        this.index.update("/a", this.snapshot(3));
+        assertEquals(8, this.index.getValue("/a", INT));
+        assertEquals(3, this.index.getRevision("/a"));
+        assertNotNull("schema is kept by update", this.index.getSchema("/a"));
+    }
+
+    @Test
+    public void testConfigBeforeDescription() {
+        this.index.update("/a", this.snapshot(1));
+        this.index.describe("/a", this.config.makeConfigDescription());
+
+        assertEquals("default", this.index.getValue("/a", STR));
+        assertNotNull(this.index.getSchema("/a"));
+    }
+
+    @Test
+    public void testReservedNotIndexed() {
+        this.index.update("/a", this.snapshot(1));
+        assertNull(this.index.getValue("/a", Utils.REVISION));
+    }
+
+    @Test
+    public void testDifferences() {
+        this.index.update("/a", this.snapshot(1));
+        this.config.setInteger(INT, 42);
+        this.index.update("/b", this.snapshot(1));
+        this.index.describe("/c", this.config.makeConfigDescription());
+
+        assertEquals(2, this.index.getValues(INT).size());
+        assertEquals(42, this.index.getValues(INT).get("/b"));
+        assertEquals("[/b, /c]", this.index.getDifferences(INT, 8).toString());
+        assertEquals("[/a, /c]", this.index.getDifferencesFrom(INT, "/b").toString());
+    }
+
+    @Test
+    public void testRemove() {
+        this.index.update("/a", this.snapshot(1));
+        this.index.remove("/a");
+
+        assertTrue(this.index.getServers().isEmpty());
+        assertNull(this.index.getValue("/a", INT));
+    }
+}
@@ -0,0 +1,143 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.server.ReconfigureRecorder;
+import org.ros.dynamic_reconfigure.server.ReconfigureReplayer;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+import org.ros.message.MessageFactory;
+
+import dynamic_reconfigure.Config;
+import dynamic_reconfigure.GroupState;
+
+/**
+ * Test of {@link ReconfigureRecorder} and {@link ReconfigureReplayer}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestReconfigureRecorder {
+
+    private MessageFactory factory;
+    private Path path;
+
+    @Before
+    public void setUp() throws Exception {
+        this.factory = MockConnectedNode.factory();
+        this.path = Files.createTempFile("reconfigure", ".drlg");
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Files.deleteIfExists(this.path);
+    }
+
+    private Config request(int rate, boolean enabled) {
+        Config result = MockConnectedNode.newConfig();
+        Utils.appendConfig(this.factory, "enabled", Utils.TYPE_BOOL, enabled, result);
+        Utils.appendConfig(this.factory, "rate", Utils.TYPE_INT, rate, result);
+        Utils.appendConfig(this.factory, "frame", Utils.TYPE_STR, "map", result);
+        Utils.appendConfig(this.factory, "kp", Utils.TYPE_DBL, -1.5d, result);
+
+        GroupState state = this.factory.newFromType(GroupState._TYPE);
+        state.setName("advanced");
+        state.setState(enabled);
+        result.getGroups().add(state);
+
+        return result;
+    }
+
+    private void record(Config... requests) throws Exception {
+        ReconfigureRecorder recorder = new ReconfigureRecorder(this.path);
+        try {
+            for (Config request : requests) {
+                recorder.record(request);
+            }
+        } finally {
+            recorder.close();
+        }
+    }
+
+    private void assertSame(Config expected, Config actual) {
+        assertEquals(expected.getBools().get(0).getValue(), actual.getBools().get(0).getValue());
+        assertEquals(expected.getInts().get(0).getValue(), actual.getInts().get(0).getValue());
+        assertEquals(expected.getStrs().get(0).getValue(), actual.getStrs().get(0).getValue());
+        assertEquals(expected.getDoubles().get(0).getValue(), actual.getDoubles().get(0).getValue(), 0);
+        assertEquals(1, actual.getGroups().size());
+        assertEquals("advanced", actual.getGroups().get(0).getName());
+        assertEquals(expected.getGroups().get(0).getState(), actual.getGroups().get(0).getState());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Config first = this.request(-7, true);
+        Config second = this.request(300, false);
+        this.record(first, second);
+
+        ReconfigureReplayer replayer = new ReconfigureReplayer(this.factory, this.path);
+        this.assertSame(first, replayer.next());
+        this.assertSame(second, replayer.next());
+        assertNull(replayer.next());
+        assertFalse(replayer.isTruncated());
+    }
+
+    @Test
+    public void testTransportTagsNotRecorded() throws Exception {
+        Config request = this.request(1, true);
+        Utils.appendConfig(this.factory, Utils.BASE_REVISION, Utils.TYPE_INT, 4, request);
+        Utils.appendConfig(this.factory, Utils.PRESET, Utils.TYPE_STR, "docking", request);
+        Utils.appendConfig(this.factory, Utils.CALLER, Utils.TYPE_STR, "/caller", request);
+        Utils.appendConfig(this.factory, Utils.TRACE, Utils.TYPE_STR, "trace", request);
+        this.record(request);
+
+        Config replayed = new ReconfigureReplayer(this.factory, this.path).next();
+        assertEquals(4, Utils.getInt(replayed, Utils.BASE_REVISION, -1));
+        assertEquals("docking", Utils.getString(replayed, Utils.PRESET, null));
+        assertNull(Utils.getString(replayed, Utils.CALLER, null));
+        assertNull(Utils.getString(replayed, Utils.TRACE, null));
+        assertEquals(2, replayed.getStrs().size());
+    }
+
+    @Test
+    public void testTruncatedTail() throws Exception {
+        Config first = this.request(1, true);
+        this.record(first, this.request(2, false));
+
+        FileChannel channel = FileChannel.open(this.path, StandardOpenOption.WRITE);
+        try {
+            channel.truncate(channel.size() - 3);
+        } finally {
+            channel.close();
+        }
+
+        ReconfigureReplayer replayer = new ReconfigureReplayer(this.factory, this.path);
+        this.assertSame(first, replayer.next());
+        assertNull(replayer.next());
+        assertNull(replayer.next());
+        assertTrue(replayer.isTruncated());
+    }
+}
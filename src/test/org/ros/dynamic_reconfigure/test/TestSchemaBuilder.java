@@ -0,0 +1,134 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test;
+
+import static org.junit.Assert.*;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.ros.dynamic_reconfigure.DynamicReconfigureParameterException;
+import org.ros.dynamic_reconfigure.SchemaBuilder;
+import org.ros.dynamic_reconfigure.Utils;
+import org.ros.dynamic_reconfigure.test.reference.MockConnectedNode;
+
+import dynamic_reconfigure.ConfigDescription;
+
+/**
+ * Test of {@link SchemaBuilder} and {@link Utils#addFields(SchemaBuilder)}.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public class TestSchemaBuilder {
+
+    private Utils utils;
+
+    @Before
+    public void setUp() throws Exception {
+        this.utils = new Utils(MockConnectedNode.create("/test"), MockConnectedNode.newConfig());
+        this.utils.addGroup("arm", Utils.GROUP_DEFAULT);
+    }
+
+    @Test
+    public void testCount() {
+        SchemaBuilder builder = new SchemaBuilder()
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 1.0d, 0, 10)
+                .add("ki", Utils.TYPE_DBL, 0, "Gain", 0.5d, 0, 10)
+                .add("rate", Utils.TYPE_INT, 1, "Rate", 10, 1, 100);
+
+        assertEquals(3, builder.size());
+        assertEquals(2, builder.count(Utils.TYPE_DBL));
+        assertEquals(1, builder.count(Utils.TYPE_INT));
+        assertEquals(0, builder.count(Utils.TYPE_STR));
+    }
+
+    @Test(expected = DynamicReconfigureParameterException.class)
+    public void testUnknownType() {
+        new SchemaBuilder().add("kp", "float", 0, "Gain", 1.0f, 0, 10);
+    }
+
+    @Test
+    public void testAddFields() {
+        this.utils.addFields(new SchemaBuilder()
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 1.0d, 0, 10)
+                .group("arm")
+                .add("reach", Utils.TYPE_INT, 2, "Reach", 5, 1, 9)
+                .add("frame", Utils.TYPE_STR, 0, "Frame", "map", 0, 0));
+
+        ConfigDescription description = this.utils.makeConfigDescription();
+        assertEquals(1, this.utils.getGroup(Utils.GROUP_DEFAULT).getParameters().size());
+        assertEquals(2, this.utils.getGroup("arm").getParameters().size());
+        assertEquals(2, this.utils.getGroup("arm").getParameters().get(0).getLevel());
+        assertEquals(5, Utils.getInt(description.getDflt(), "reach", 0));
+        assertEquals(1, Utils.getInt(description.getMin(), "reach", 0));
+        assertEquals(9, Utils.getInt(description.getMax(), "reach", 0));
+        assertEquals("map", Utils.getString(this.utils.makeConfigUpdate(), "frame", null));
+    }
+
+    @Test
+    public void testDuplicateInBuilder() {
+        this.assertRejected(new SchemaBuilder()
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 1.0d, 0, 10)
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 2.0d, 0, 10));
+    }
+
+    @Test
+    public void testDuplicateOfDefined() {
+        this.utils.addField("kp", Utils.TYPE_DBL, 0, "Gain", 1.0d, 0, 10);
+
+        this.assertRejected(new SchemaBuilder()
+                .add("rate", Utils.TYPE_INT, 0, "Rate", 1, 0, 10)
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 2.0d, 0, 10));
+    }
+
+    @Test
+    public void testUnknownGroup() {
+        this.assertRejected(new SchemaBuilder()
+                .add("rate", Utils.TYPE_INT, 0, "Rate", 1, 0, 10)
+                .group("nope")
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 2.0d, 0, 10));
+    }
+
+    @Test
+    public void testDefaultOfOtherType() {
+        this.assertRejected(new SchemaBuilder()
+                .add("rate", Utils.TYPE_INT, 0, "Rate", 1, 0, 10)
+                .add("kp", Utils.TYPE_DBL, 0, "Gain", 2, 0, 10));
+    }
+
+    /** Check the builder is rejected, and the description left unchanged. */
+    private void assertRejected(SchemaBuilder builder) {
+        ConfigDescription description = this.utils.makeConfigDescription();
+        int parameters = this.utils.getGroup(Utils.GROUP_DEFAULT).getParameters().size();
+        int ints = description.getDflt().getInts().size();
+        int doubles = description.getDflt().getDoubles().size();
+        int mins = description.getMin().getInts().size();
+
+        try {
+            this.utils.addFields(builder);
+            fail("Builder accepted");
+        } catch (DynamicReconfigureParameterException e) {
+            // Expected.
+        }
+
+        assertEquals(parameters, this.utils.getGroup(Utils.GROUP_DEFAULT).getParameters().size());
+        assertEquals(ints, description.getDflt().getInts().size());
+        assertEquals(doubles, description.getDflt().getDoubles().size());
+        assertEquals(mins, description.getMin().getInts().size());
+        assertEquals(ints, this.utils.makeConfigUpdate().getInts().size());
+        assertEquals(-1, Utils.getInt(description.getDflt(), "rate", -1));
+    }
+}
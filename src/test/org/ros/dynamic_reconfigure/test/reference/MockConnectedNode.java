@@ -0,0 +1,106 @@
+/*
+* Copyright (C) 2014 Mickael Gaillard. All rights reserved.
+*
+* Licensed under the Apache License, Version 2.0 (the "License"); you may not
+* use this file except in compliance with the License. You may obtain a copy of
+* the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+* WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+* License for the specific language governing permissions and limitations under
+* the License.
+*/
+
+package org.ros.dynamic_reconfigure.test.reference;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import org.apache.commons.logging.Log;
+import org.ros.internal.message.DefaultMessageFactory;
+import org.ros.internal.message.definition.MessageDefinitionReflectionProvider;
+import org.ros.message.MessageFactory;
+import org.ros.namespace.GraphName;
+import org.ros.node.ConnectedNode;
+
+import dynamic_reconfigure.Config;
+
+/**
+ * ConnectedNode without master, for unit tests of configs and indexes :
+ * only the message factory, the log and the name are available.
+ *
+ * @author mick.gaillard@gmail.com (Mickael Gaillard)
+ */
+public final class MockConnectedNode {
+
+    private static final MessageFactory FACTORY =
+            new DefaultMessageFactory(new MessageDefinitionReflectionProvider());
+
+    private MockConnectedNode() {
+    }
+
+    public static MessageFactory factory() {
+        return FACTORY;
+    }
+
+    /** New empty Config message. */
+    public static Config newConfig() {
+        return FACTORY.newFromType(Config._TYPE);
+    }
+
+    /**
+     * @param name of the node (eg. "/test").
+     * @return a node answering getTopicMessageFactory, getLog, getName and resolveName.
+     */
+    public static ConnectedNode create(final String name) {
+        final Log log = (Log) Proxy.newProxyInstance(
+                Log.class.getClassLoader(),
+                new Class<?>[] { Log.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        return method.getReturnType() == boolean.class ? Boolean.FALSE : null;
+                    }
+                });
+
+        return (ConnectedNode) Proxy.newProxyInstance(
+                ConnectedNode.class.getClassLoader(),
+                new Class<?>[] { ConnectedNode.class },
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        String methodName = method.getName();
+                        Object result = null;
+
+                        if ("getTopicMessageFactory".equals(methodName)
+                                || "getServiceRequestMessageFactory".equals(methodName)
+                                || "getServiceResponseMessageFactory".equals(methodName)) {
+                            result = FACTORY;
+                        } else if ("getLog".equals(methodName)) {
+                            result = log;
+                        } else if ("getName".equals(methodName)) {
+                            result = GraphName.of(name);
+                        } else if ("resolveName".equals(methodName)) {
+                            String relative = args[0].toString();
+                            result = GraphName.of(relative.startsWith("/") ? relative : name + "/" + relative);
+                        } else if ("hashCode".equals(methodName)) {
+                            result = System.identityHashCode(proxy);
+                        } else if ("equals".equals(methodName)) {
+                            result = proxy == args[0];
+                        } else if ("toString".equals(methodName)) {
+                            result = "MockConnectedNode" + name;
+                        } else if (method.getReturnType() == boolean.class) {
+                            result = Boolean.FALSE;
+                        } else if (method.getReturnType() == int.class) {
+                            result = 0;
+                        }
+
+                        return result;
+                    }
+                });
+    }
+}